@@ -0,0 +1,39 @@
+#!/bin/bash
+# Fast-startup mode: AOT-processed jar (mvn -Pfast-startup), extracted for CDS, with a class data
+# sharing archive from a training run, started with the fast-startup profile.
+#
+#   scripts/fast-startup.sh build          → build, extract to target/fast-startup and train the CDS archive
+#   scripts/fast-startup.sh [app args...]  → build if needed, then run (e.g. --server.port=8082)
+#
+# MVN and JAVA_HOME override the Maven command and the JDK; the archive only works with the JDK
+# and jar it was trained with, so rebuild after changing either.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+MVN="${MVN:-mvn}"
+JAR=RESTAPI_for_AnimalImages-1.0-SNAPSHOT.jar
+DIR=target/fast-startup
+
+build() {
+    $MVN -B -q -Pfast-startup -DskipTests package
+    rm -rf "$DIR"
+    "$JAVA" -Djarmode=tools -jar "target/$JAR" extract --destination "$DIR"
+    # Training run: refreshes the context (all beans, not lazily) on a throwaway in-memory database
+    # and exits before the web server starts, recording every class loaded on the way
+    "$JAVA" -XX:ArchiveClassesAtExit="$DIR/application.jsa" -Dspring.context.exit=onRefresh \
+        -Dspring.aot.enabled=true -jar "$DIR/$JAR" \
+        --spring.profiles.active=fast-startup --spring.main.lazy-initialization=false \
+        --spring.datasource.url=jdbc:h2:mem:training --server.port=0 > "$DIR/training.log" 2>&1
+    echo "Built $DIR/$JAR with CDS archive $DIR/application.jsa"
+}
+
+if [ "${1:-}" = "build" ]; then
+    build
+    exit 0
+fi
+if [ ! -f "$DIR/application.jsa" ]; then
+    build
+fi
+exec "$JAVA" -XX:SharedArchiveFile="$DIR/application.jsa" -Dspring.aot.enabled=true \
+    -jar "$DIR/$JAR" --spring.profiles.active=fast-startup "$@"
@@ -0,0 +1,82 @@
+#!/bin/bash
+# Startup benchmark: time to first request and resident memory at that moment, for the default
+# setup (java -jar, eager beans, ddl-auto=update) and the fast-startup mode (AOT + CDS + lazy
+# beans + fixed schema). Each run gets a fresh database with N images already stored.
+#
+#   scripts/startup-benchmark.sh [runs] [images]      (defaults: 5 runs, 1000 images)
+#
+# The first request is GET /api/animals/last?type=dog (database query + JSON). Linux only (/proc).
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS="${1:-5}"
+IMAGES="${2:-1000}"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+JAR=RESTAPI_for_AnimalImages-1.0-SNAPSHOT.jar
+DIR=target/fast-startup
+PORT=18081
+
+[ -f "$DIR/application.jsa" ] || scripts/fast-startup.sh build
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+# seed database: created once with the default setup, copied for every run
+seed() {
+    "$JAVA" -jar "$DIR/$JAR" --server.port=$PORT --spring.datasource.url="jdbc:h2:file:$WORK/seed/animaldb" \
+        --animal.renditions.directory="$WORK/seed/renditions" --logging.level.root=WARN > "$WORK/seed.log" 2>&1 &
+    local pid=$!
+    until curl -s -o /dev/null "http://127.0.0.1:$PORT/api/animals/db/stats"; do sleep 0.2; done
+    kill $pid; wait $pid || true
+    "$JAVA" -cp "$DIR/lib/*" org.h2.tools.Shell -url "jdbc:h2:file:$WORK/seed/animaldb" -user sa -sql "
+        INSERT INTO animal_image (id, animal_type, image_url, timestamp, size_bytes)
+        SELECT X, CASEWHEN(MOD(X, 2) = 0, 'dog', 'cat'), 'http://seed/' || X,
+               DATEADD(SECOND, X, TIMESTAMP '2026-01-01 00:00:00'), 0
+        FROM SYSTEM_RANGE(1, $IMAGES);
+        ALTER SEQUENCE animal_image_seq RESTART WITH $((IMAGES + 1));" > /dev/null
+}
+
+# prints "<ms to first response> <RSS kB>"
+run_once() {
+    local mode=$1
+    rm -rf "$WORK/run" && cp -r "$WORK/seed" "$WORK/run"
+    local args=(--server.port=$PORT --spring.datasource.url="jdbc:h2:file:$WORK/run/animaldb"
+                --animal.renditions.directory="$WORK/run/renditions" --logging.level.root=WARN)
+    local start
+    start=$(date +%s%N)
+    if [ "$mode" = default ]; then
+        "$JAVA" -jar "$DIR/$JAR" "${args[@]}" > "$WORK/$mode.log" 2>&1 &
+    else
+        "$JAVA" -XX:SharedArchiveFile="$DIR/application.jsa" -Dspring.aot.enabled=true -jar "$DIR/$JAR" \
+            --spring.profiles.active=fast-startup "${args[@]}" > "$WORK/$mode.log" 2>&1 &
+    fi
+    local pid=$!
+    local status
+    until status=$(curl -s -o /dev/null -w "%{http_code}" "http://127.0.0.1:$PORT/api/animals/last?type=dog"); do
+        kill -0 $pid 2> /dev/null || { echo "$mode exited, see:" >&2; cat "$WORK/$mode.log" >&2; exit 1; }
+        sleep 0.01
+    done
+    local elapsed=$(( ($(date +%s%N) - start) / 1000000 ))
+    [ "$status" = 200 ] || { echo "$mode answered $status, see:" >&2; cat "$WORK/$mode.log" >&2; kill $pid; exit 1; }
+    local rss
+    rss=$(awk '/^VmRSS/ {print $2}' /proc/$pid/status)
+    kill $pid; wait $pid || true
+    echo "$elapsed $rss"
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : int((v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+}
+
+seed
+printf "%-13s %8s %12s %12s %14s\n" mode runs "median ms" "min ms" "median RSS MB"
+for mode in default fast-startup; do
+    : > "$WORK/$mode.results"
+    for _ in $(seq "$RUNS"); do
+        run_once $mode >> "$WORK/$mode.results"
+    done
+    printf "%-13s %8d %12d %12d %14d\n" $mode "$RUNS" \
+        "$(cut -d' ' -f1 "$WORK/$mode.results" | median)" \
+        "$(cut -d' ' -f1 "$WORK/$mode.results" | sort -n | head -1)" \
+        "$(( $(cut -d' ' -f2 "$WORK/$mode.results" | median) / 1024 ))"
+done
@@ -0,0 +1,100 @@
+/*
+ * Benchmark Fixtures
+ * ------------------
+ * Shared setup for the JMH benchmarks: starts the application without a web server on a fresh
+ * embedded H2 file database in a temporary directory (which also holds renditions and segment
+ * files) and generates fixture rows and payloads.
+ */
+package com.example.animalimages;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+final class BenchmarkFixtures {
+
+    /* the animal types of application.properties */
+    static final List<String> TYPES = List.of("dog", "cat", "bear", "duck");
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * Starts the application with background work switched off; extra properties as "key=value".
+     * Passed as command-line arguments so they override application.properties.
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return start(WebApplicationType.NONE, properties);
+    }
+
+    /* with WebApplicationType.SERVLET, pass server.port=0 and read local.server.port */
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String... properties) {
+        String directory;
+        try {
+            directory = Files.createTempDirectory("animal-bench").toAbsolutePath().toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<String> all = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:file:" + directory + "/animaldb",
+                "spring.devtools.restart.enabled=false",
+                "logging.level.root=WARN",
+                "animal.storage.filesystem.directory=" + directory + "/images",
+                "animal.renditions.directory=" + directory + "/renditions",
+                "animal.renditions.precompute=",
+                "animal.retention.compact-enabled=false",
+                "animal.retention.initial-delay-ms=3600000"));
+        all.addAll(List.of(properties));
+        return new SpringApplicationBuilder(AnimalImageServiceApplication.class)
+                .web(webApplicationType)
+                .bannerMode(Banner.Mode.OFF)
+                .run(all.stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    /* closes the context, then removes its temporary directory */
+    static void stop(ConfigurableApplicationContext context) {
+        Path directory = Path.of(context.getEnvironment().getProperty("animal.renditions.directory")).getParent();
+        context.close();
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    /**
+     * Inserts metadata rows (no blobs) with one JDBC batch per 1000 rows: types round-robin,
+     * one row per second going back from now, ids 1..rows.
+     */
+    static void insertMetadataRows(DataSource dataSource, int rows) {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> batch = new ArrayList<>(1000);
+        for (int i = 1; i <= rows; i++) {
+            String type = TYPES.get(i % TYPES.size());
+            batch.add(new Object[] {(long) i, type, "http://fixture/" + type + "/" + i,
+                    Timestamp.valueOf(now.minusSeconds(rows - i)), 20_000L});
+            if (batch.size() == 1000 || i == rows) {
+                jdbc.batchUpdate("INSERT INTO animal_image (id, animal_type, image_url, timestamp, size_bytes)"
+                        + " VALUES (?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /* pseudo-random bytes, the same for the same seed */
+    static byte[] payload(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
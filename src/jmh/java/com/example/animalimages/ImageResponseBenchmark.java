@@ -0,0 +1,79 @@
+/*
+ * Image Response Benchmark
+ * ------------------------
+ * Writing one stored image to a response stream, per storage backend and image size:
+ * reading it fully into a byte[] first versus streaming it from the ImageStore, plus
+ * openImageData() as /last/image uses it (small payloads from LatestImageCache).
+ */
+package com.example.animalimages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageResponseBenchmark {
+
+    @Param({"h2", "filesystem"})
+    public String backend;
+
+    @Param({"16384", "262144", "2097152"})
+    public int imageBytes;
+
+    private final OutputStream response = OutputStream.nullOutputStream();
+    private ConfigurableApplicationContext context;
+    private AnimalImageService service;
+    private ImageStore imageStore;
+    private AnimalImage image;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkFixtures.start("animal.storage.backend=" + backend);
+        service = context.getBean(AnimalImageService.class);
+        imageStore = context.getBean(ImageStore.class);
+        image = context.getBean(ImageBatchWriter.class)
+                .submit(new AnimalImage("dog", "http://fixture/dog/1", LocalDateTime.now(),
+                        BenchmarkFixtures.payload(imageBytes, 3)))
+                .join();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        BenchmarkFixtures.stop(context);
+    }
+
+    @Benchmark
+    public void byteArray() throws IOException {
+        response.write(service.getImageData(image));
+    }
+
+    @Benchmark
+    public long streamed() throws IOException {
+        try (InputStream in = imageStore.open(image.getContentHash(), image.getSizeBytes()).getInputStream()) {
+            return in.transferTo(response);
+        }
+    }
+
+    @Benchmark
+    public long openImageData() throws IOException {
+        try (InputStream in = service.openImageData(image).getInputStream()) {
+            return in.transferTo(response);
+        }
+    }
+}
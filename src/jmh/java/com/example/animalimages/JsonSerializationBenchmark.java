@@ -0,0 +1,84 @@
+/*
+ * JSON Serialization Benchmark
+ * ----------------------------
+ * Writing the /fetch and /last response bodies with Jackson: an AnimalImage as loaded from the
+ * database (no bytes), an AnimalImage with its bytes (include=data, base64) at several sizes,
+ * and the AnimalImageSummary returned by default.
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonSerializationBenchmark {
+
+    /* The image with bytes, as returned by POST /fetch?include=data */
+    @State(Scope.Benchmark)
+    public static class WithBytes {
+        @Param({"16384", "262144"})
+        public int imageBytes;
+
+        AnimalImage image;
+
+        @Setup
+        public void create() {
+            image = new AnimalImage("cat", "http://fixture/cat/300/200", LocalDateTime.now(),
+                    BenchmarkFixtures.payload(imageBytes, imageBytes));
+            image.setId(42L);
+        }
+    }
+
+    // configured like Spring Boot's ObjectMapper: JavaTimeModule, ISO dates
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private AnimalImage loaded;
+    private AnimalImageSummary summary;
+
+    @Setup
+    public void create() {
+        AnimalImage fetched = new AnimalImage("cat", "http://fixture/cat/300/200", LocalDateTime.now(),
+                BenchmarkFixtures.payload(20_000, 1));
+        fetched.setId(42L);
+        summary = AnimalImageSummary.of(fetched);
+        loaded = new AnimalImage();
+        loaded.setId(fetched.getId());
+        loaded.setAnimalType(fetched.getAnimalType());
+        loaded.setImageUrl(fetched.getImageUrl());
+        loaded.setTimestamp(fetched.getTimestamp());
+        loaded.setSizeBytes(fetched.getSizeBytes());
+        loaded.setContentHash(fetched.getContentHash());
+    }
+
+    @Benchmark
+    public byte[] imageWithoutBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(loaded);
+    }
+
+    @Benchmark
+    public byte[] imageWithBytes(WithBytes state) throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(state.image);
+    }
+
+    @Benchmark
+    public byte[] summary() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(summary);
+    }
+}
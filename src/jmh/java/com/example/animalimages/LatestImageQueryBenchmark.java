@@ -0,0 +1,53 @@
+/*
+ * Latest Image Query Benchmark
+ * ----------------------------
+ * AnimalImageRepository.findTopByAnimalTypeOrderByTimestampDesc() — the query behind /last on
+ * a LatestImageCache miss — at several table sizes. With the (animalType, timestamp, id) index
+ * the time should stay flat as the table grows.
+ */
+package com.example.animalimages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LatestImageQueryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private AnimalImageRepository repository;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkFixtures.start();
+        BenchmarkFixtures.insertMetadataRows(context.getBean(DataSource.class), rows);
+        repository = context.getBean(AnimalImageRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        BenchmarkFixtures.stop(context);
+    }
+
+    @Benchmark
+    public Optional<AnimalImage> findTopByAnimalTypeOrderByTimestampDesc() {
+        return repository.findTopByAnimalTypeOrderByTimestampDesc("cat");
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Request Threading Benchmark
+ * ---------------------------
+ * Platform-thread versus virtual-thread request handling (spring.threads.virtual.enabled)
+ * under mixed load over real HTTP: slow fetches against a local upstream that answers after
+ * UPSTREAM_DELAY_MS, next to cheap /last reads (cache) and listing reads (database). Tomcat
+ * gets fewer platform threads than there are clients, so in platform mode the fetches hold
+ * every worker and the reads queue behind them. Run with both modes for throughput and the
+ * p0.99 of each request type:
+ *   mvn -Pbenchmarks verify -Djmh.filter=RequestThreading
+ */
+package com.example.animalimages;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RequestThreadingBenchmark {
+
+    private static final int UPSTREAM_DELAY_MS = 200;
+    private static final int TOMCAT_THREADS = 24; // below the 44 client threads; unused in virtual mode
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private HttpServer upstream;
+    private ExecutorService upstreamExecutor;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest lastImage;
+    private HttpRequest listImages;
+    private HttpRequest slowFetch;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, InterruptedException {
+        upstreamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+        upstream.setExecutor(upstreamExecutor);
+        upstream.createContext("/", exchange -> {
+            try (exchange) {
+                Thread.sleep(UPSTREAM_DELAY_MS);
+                byte[] body = BenchmarkFixtures.payload(20_000, exchange.getRequestURI().getPath().hashCode());
+                exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        upstream.start();
+        String images = "http://127.0.0.1:" + upstream.getAddress().getPort() + "/";
+
+        context = BenchmarkFixtures.start(WebApplicationType.SERVLET,
+                "server.port=0",
+                "spring.threads.virtual.enabled=" + threads.equals("virtual"),
+                "server.tomcat.threads.max=" + TOMCAT_THREADS,
+                "animal.image.url.dog=" + images + "dog/",
+                "animal.image.url.cat=" + images + "cat/",
+                "animal.image.url.bear=" + images + "bear/",
+                "animal.image.url.duck=" + images + "duck",
+                // the upstream is not the bottleneck being measured
+                "animal.fetch.max-concurrency=256",
+                "animal.fetch.host.initial-limit=128",
+                "animal.fetch.host.max-limit=128");
+        String api = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port") + "/api/animals";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        lastImage = HttpRequest.newBuilder(URI.create(api + "/last?type=cat")).build();
+        listImages = HttpRequest.newBuilder(URI.create(api + "?type=dog&limit=20")).build();
+        slowFetch = HttpRequest.newBuilder(URI.create(api + "/fetch?type=dog&count=1"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        send(HttpRequest.newBuilder(URI.create(api + "/fetch?type=cat&count=1"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build()); // something for /last to return
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        BenchmarkFixtures.stop(context);
+        upstream.stop(0);
+        upstreamExecutor.close();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public int lastImage() throws IOException, InterruptedException {
+        return send(lastImage);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public int listImages() throws IOException, InterruptedException {
+        return send(listImages);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(32)
+    public int slowFetch() throws IOException, InterruptedException {
+        return send(slowFetch);
+    }
+
+    /* errors fail the run instead of being measured as fast responses */
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " answered " + response.statusCode());
+        }
+        return response.body().length;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Save Throughput Benchmark
+ * -------------------------
+ * Images stored per second through ImageBatchWriter (hashing, blob deduplication, one
+ * transaction per batch), with one image per transaction versus the default batch of 50,
+ * for distinct payloads (new blob each) and repeated payloads (reference count only).
+ */
+package com.example.animalimages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SaveThroughputBenchmark {
+
+    private static final int IMAGES_PER_INVOCATION = 100;
+    private static final int IMAGE_BYTES = 2048;
+
+    @Param({"1", "50"})
+    public int persistBatchSize;
+
+    @Param({"distinct", "repeated"})
+    public String payloads;
+
+    private ConfigurableApplicationContext context;
+    private ImageBatchWriter batchWriter;
+    private byte[] template;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkFixtures.start("animal.persist.batch-size=" + persistBatchSize);
+        batchWriter = context.getBean(ImageBatchWriter.class);
+        template = BenchmarkFixtures.payload(IMAGE_BYTES, 7);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        BenchmarkFixtures.stop(context);
+    }
+
+    /* submits like a fetch does, then waits until every image is committed */
+    @Benchmark
+    @OperationsPerInvocation(IMAGES_PER_INVOCATION)
+    public void saveImages() {
+        CompletableFuture<?>[] saved = new CompletableFuture<?>[IMAGES_PER_INVOCATION];
+        for (int i = 0; i < IMAGES_PER_INVOCATION; i++) {
+            byte[] data = template;
+            if (payloads.equals("distinct")) {
+                data = template.clone();
+                ByteBuffer.wrap(data).putLong(++sequence);
+            }
+            saved[i] = batchWriter.submit(new AnimalImage("cat", "http://fixture/cat/" + i, LocalDateTime.now(), data));
+        }
+        CompletableFuture.allOf(saved).join();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Arrival Rate Workload
+ * ---------------------
+ * One request type sent at a fixed arrival rate (open loop): request n is due at start + n/rate
+ * whether or not earlier ones have answered, each on its own virtual thread. Latency is taken
+ * from the due time, not the send time, so a stalled server shows up in the percentiles instead
+ * of silently lowering the request rate (coordinated omission). Requests beyond maxInFlight are
+ * counted as shed rather than queued.
+ */
+package com.example.animalimages;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+final class ArrivalRateWorkload {
+
+    private final String name;
+    private final double ratePerSecond;
+    private final LongFunction<HttpRequest> requests; // request number → request
+    private final HttpClient client;
+    private final Semaphore inFlight;
+    private final Recorder latencies = new Recorder(3); // microseconds
+
+    private final LongAdder informational = new LongAdder();
+    private final LongAdder success = new LongAdder();
+    private final LongAdder redirect = new LongAdder();
+    private final LongAdder clientError = new LongAdder();
+    private final LongAdder serverError = new LongAdder();
+    private final LongAdder ioErrors = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder bodyBytes = new LongAdder();
+
+    private volatile boolean running;
+    private Thread scheduler;
+
+    ArrivalRateWorkload(String name, double ratePerSecond, LongFunction<HttpRequest> requests,
+                        HttpClient client, int maxInFlight) {
+        this.name = name;
+        this.ratePerSecond = ratePerSecond;
+        this.requests = requests;
+        this.client = client;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    String name() {
+        return name;
+    }
+
+    double ratePerSecond() {
+        return ratePerSecond;
+    }
+
+    void start() {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        running = true;
+        scheduler = Thread.ofPlatform().name("load-" + name).daemon().start(this::schedule);
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        if (scheduler != null) {
+            scheduler.join();
+        }
+    }
+
+    /* forgets everything recorded so far (end of warm-up) */
+    void reset() {
+        latencies.reset();
+        for (LongAdder counter : counters().values()) {
+            counter.reset();
+        }
+    }
+
+    /* latencies recorded since the last reset or snapshot */
+    Histogram histogram() {
+        return latencies.getIntervalHistogram();
+    }
+
+    Map<String, Long> counts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counters().forEach((key, counter) -> counts.put(key, counter.sum()));
+        return counts;
+    }
+
+    private Map<String, LongAdder> counters() {
+        Map<String, LongAdder> counters = new LinkedHashMap<>();
+        counters.put("1xx", informational);
+        counters.put("2xx", success);
+        counters.put("3xx", redirect);
+        counters.put("4xx", clientError);
+        counters.put("5xx", serverError);
+        counters.put("ioErrors", ioErrors);
+        counters.put("shed", shed);
+        counters.put("bodyBytes", bodyBytes);
+        return counters;
+    }
+
+    private void schedule() {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long start = System.nanoTime();
+        for (long n = 0; running; n++) {
+            long due = start + n * intervalNanos;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                return;
+            }
+            if (!inFlight.tryAcquire()) {
+                shed.increment();
+                continue;
+            }
+            long number = n;
+            Thread.ofVirtual().start(() -> {
+                try {
+                    send(requests.apply(number), due);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private void send(HttpRequest request, long due) {
+        try {
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+            bodyBytes.add(response.body().length);
+            switch (response.statusCode() / 100) {
+                case 1 -> informational.increment();
+                case 2 -> success.increment();
+                case 3 -> redirect.increment();
+                case 4 -> clientError.increment();
+                default -> serverError.increment();
+            }
+        } catch (IOException e) {
+            latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+            ioErrors.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
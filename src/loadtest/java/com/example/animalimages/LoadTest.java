@@ -0,0 +1,348 @@
+/*
+ * Load Test
+ * ---------
+ * Offline load test: starts a StubImageServer, forks the application in its own JVM with every
+ * animal.image.url.* pointed at the stub and a fresh H2 file database in a temporary directory,
+ * then drives fetch, /last and /last/image requests at fixed arrival rates. After a warm-up it
+ * measures for the given duration and reports per workload throughput, status counts and
+ * HdrHistogram latency percentiles, plus the application's allocation rate and GC pauses
+ * (Micrometer, counted at each GC) and how much the database file and data directory grew.
+ *
+ *   mvn -Ploadtest verify
+ *   mvn -Ploadtest verify -Dloadtest.options="--duration=300 --fetch-rate=20 --stub-error-rate=0.05"
+ *
+ * Options are --key=value (see DEFAULTS); options with a dot are passed to the application,
+ * e.g. --spring.threads.virtual.enabled=true. Results go to --output: loadtest-result.json,
+ * one {workload}.hgrm latency distribution per workload (milliseconds) and app.log.
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public final class LoadTest {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("duration", "60");             // measured seconds
+        DEFAULTS.put("warmup", "15");               // seconds before measuring (JIT, caches, pool)
+        DEFAULTS.put("fetch-rate", "10");           // POST /api/animals/fetch per second
+        DEFAULTS.put("fetch-count", "1");           // images per fetch request
+        DEFAULTS.put("last-rate", "200");           // GET /api/animals/last per second
+        DEFAULTS.put("image-rate", "50");           // GET /api/animals/last/image per second
+        DEFAULTS.put("image-width", "0");           // w= of the image requests, 0 = original bytes
+        DEFAULTS.put("types", "dog,cat,bear,duck");   // each one is pointed at the stub, new ones are registered
+        DEFAULTS.put("max-in-flight", "2000");      // per workload; beyond that requests are shed
+        DEFAULTS.put("stub-sizes", "20000,100000,400000");
+        DEFAULTS.put("stub-latency-ms", "50");
+        DEFAULTS.put("stub-jitter-ms", "100");
+        DEFAULTS.put("stub-error-rate", "0.01");
+        DEFAULTS.put("app-jvm-args", "-Xmx1g");     // comma separated
+        DEFAULTS.put("startup-timeout", "120");     // seconds
+        DEFAULTS.put("output", "target/loadtest");
+        DEFAULTS.put("keep-data", "false");         // keep the temporary database directory
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+    private final Map<String, String> appProperties = new LinkedHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private LoadTest(String[] args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            }
+            String key = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            if (key.contains(".")) {
+                appProperties.put(key, value);
+            } else if (DEFAULTS.containsKey(key)) {
+                options.put(key, value);
+            } else {
+                throw new IllegalArgumentException("Unknown option --" + key + ", known: " + DEFAULTS.keySet());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest(args).run();
+        System.exit(0); // HttpClient and stub threads
+    }
+
+    private void run() throws Exception {
+        Path output = Files.createDirectories(Path.of(options.get("output")));
+        Path data = Files.createTempDirectory("animal-loadtest");
+        int[] sizes = Arrays.stream(options.get("stub-sizes").split(",")).mapToInt(Integer::parseInt).toArray();
+
+        try (StubImageServer stub = new StubImageServer(sizes, longOption("stub-latency-ms"),
+                longOption("stub-jitter-ms"), Double.parseDouble(options.get("stub-error-rate")))) {
+            int port = freePort();
+            Process app = startApplication(port, stub.baseUrl(), data, output.resolve("app.log"));
+            Thread killOnExit = new Thread(app::destroyForcibly);
+            Runtime.getRuntime().addShutdownHook(killOnExit);
+            try {
+                String api = awaitStartup(app, port, output.resolve("app.log"));
+                measure(api, stub, data, output);
+            } finally {
+                app.destroy(); // graceful shutdown first: the database file is closed cleanly
+                if (!app.waitFor(30, TimeUnit.SECONDS)) {
+                    app.destroyForcibly();
+                }
+                Runtime.getRuntime().removeShutdownHook(killOnExit);
+            }
+        } finally {
+            if (!Boolean.parseBoolean(options.get("keep-data"))) {
+                FileSystemUtils.deleteRecursively(data);
+            } else {
+                System.out.println("Data kept in " + data);
+            }
+        }
+    }
+
+    private void measure(String api, StubImageServer stub, Path data, Path output) throws Exception {
+        List<String> types = List.of(options.get("types").split(","));
+        for (String type : types) { // so /last has something to return from the start
+            send(HttpRequest.newBuilder(URI.create(api + "/fetch?type=" + type + "&count=1"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build());
+        }
+
+        int maxInFlight = (int) longOption("max-in-flight");
+        long fetchCount = longOption("fetch-count");
+        long width = longOption("image-width");
+        Duration timeout = Duration.ofSeconds(60);
+        List<ArrivalRateWorkload> workloads = List.of(
+                new ArrivalRateWorkload("fetch", doubleOption("fetch-rate"), n -> HttpRequest.newBuilder(
+                        URI.create(api + "/fetch?type=" + types.get((int) (n % types.size())) + "&count=" + fetchCount))
+                        .POST(HttpRequest.BodyPublishers.noBody()).timeout(timeout).build(), client, maxInFlight),
+                new ArrivalRateWorkload("last", doubleOption("last-rate"), n -> HttpRequest.newBuilder(
+                        URI.create(api + "/last?type=" + types.get((int) (n % types.size()))))
+                        .timeout(timeout).build(), client, maxInFlight),
+                new ArrivalRateWorkload("image", doubleOption("image-rate"), n -> HttpRequest.newBuilder(
+                        URI.create(api + "/last/image?type=" + types.get((int) (n % types.size()))
+                                + (width > 0 ? "&w=" + width : "")))
+                        .timeout(timeout).build(), client, maxInFlight));
+
+        System.out.printf("Warming up for %d s, then measuring for %d s%n", longOption("warmup"), longOption("duration"));
+        workloads.forEach(ArrivalRateWorkload::start);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(longOption("warmup")));
+        workloads.forEach(ArrivalRateWorkload::reset);
+
+        Path database = data.resolve("animaldb.mv.db");
+        Map<String, Double> metricsBefore = appMetrics(api);
+        long databaseBefore = Files.size(database);
+        long dataBefore = directorySize(data);
+        long stubServed = stub.served();
+        long stubFailed = stub.failed();
+        long stubBytes = stub.bytes();
+        long start = System.nanoTime();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(longOption("duration")));
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+        for (ArrivalRateWorkload workload : workloads) {
+            histograms.put(workload.name(), workload.histogram());
+            counts.put(workload.name(), workload.counts());
+        }
+        Map<String, Double> metricsAfter = appMetrics(api);
+        long databaseAfter = Files.size(database);
+        long dataAfter = directorySize(data);
+        for (ArrivalRateWorkload workload : workloads) {
+            workload.stop();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("options", options);
+        result.put("appProperties", appProperties);
+        result.put("measuredSeconds", seconds);
+
+        Map<String, Object> workloadResults = new LinkedHashMap<>();
+        System.out.printf("%n%-6s %9s %9s %8s %8s %7s %7s %7s %9s %9s %9s %9s %9s%n", "", "target/s", "done/s",
+                "2xx", "4xx", "5xx", "io-err", "shed", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (ArrivalRateWorkload workload : workloads) {
+            Histogram histogram = histograms.get(workload.name());
+            Map<String, Long> count = counts.get(workload.name());
+            double throughput = histogram.getTotalCount() / seconds;
+            Map<String, Double> latency = new LinkedHashMap<>();
+            for (double percentile : PERCENTILES) {
+                latency.put("p" + formatPercentile(percentile), histogram.getValueAtPercentile(percentile) / 1000.0);
+            }
+            latency.put("max", histogram.getMaxValue() / 1000.0);
+            latency.put("mean", histogram.getMean() / 1000.0);
+            Map<String, Object> workloadResult = new LinkedHashMap<>();
+            workloadResult.put("targetRate", workload.ratePerSecond());
+            workloadResult.put("throughput", throughput);
+            workloadResult.put("counts", count);
+            workloadResult.put("latencyMs", latency);
+            workloadResults.put(workload.name(), workloadResult);
+            System.out.printf("%-6s %9.1f %9.1f %8d %8d %7d %7d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    workload.name(), workload.ratePerSecond(), throughput, count.get("2xx"), count.get("4xx"),
+                    count.get("5xx"), count.get("ioErrors"), count.get("shed"), latency.get("p50"),
+                    latency.get("p90"), latency.get("p99"), latency.get("p99.9"), latency.get("max"));
+            try (PrintStream out = new PrintStream(Files.newOutputStream(output.resolve(workload.name() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        result.put("workloads", workloadResults);
+
+        Map<String, Object> application = new LinkedHashMap<>();
+        double allocated = metricsAfter.get("allocatedBytes") - metricsBefore.get("allocatedBytes");
+        application.put("allocatedBytes", allocated);
+        application.put("allocationRateMBPerSecond", allocated / seconds / (1 << 20));
+        application.put("gcPauses", metricsAfter.get("gcPauses") - metricsBefore.get("gcPauses"));
+        application.put("gcPauseSeconds", metricsAfter.get("gcPauseSeconds") - metricsBefore.get("gcPauseSeconds"));
+        application.put("databaseFileBytesBefore", databaseBefore);
+        application.put("databaseFileBytesAfter", databaseAfter);
+        application.put("databaseFileGrowthBytesPerSecond", (databaseAfter - databaseBefore) / seconds);
+        application.put("dataDirectoryGrowthBytes", dataAfter - dataBefore);
+        result.put("application", application);
+        Map<String, Long> upstream = new LinkedHashMap<>();
+        upstream.put("served", stub.served() - stubServed);
+        upstream.put("failed", stub.failed() - stubFailed);
+        upstream.put("bytes", stub.bytes() - stubBytes);
+        result.put("stub", upstream);
+
+        System.out.printf("%nApplication: %.1f MB/s allocated, %.0f GC pauses (%.3f s), database file %.1f MB -> %.1f MB"
+                        + " (%+.1f MB), data directory %+.1f MB%n",
+                application.get("allocationRateMBPerSecond"), application.get("gcPauses"),
+                application.get("gcPauseSeconds"), databaseBefore / 1e6, databaseAfter / 1e6,
+                (databaseAfter - databaseBefore) / 1e6, (dataAfter - dataBefore) / 1e6);
+        System.out.printf("Stub upstream: %d images served, %d errors injected%n",
+                upstream.get("served"), upstream.get("failed"));
+        Path resultFile = output.resolve("loadtest-result.json");
+        objectMapper.writeValue(resultFile.toFile(), result);
+        System.out.println("Results written to " + resultFile.toAbsolutePath());
+    }
+
+    /* the application in its own JVM, so its allocation and GC figures exclude the load generator */
+    private Process startApplication(int port, String stubUrl, Path data, Path log) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", String.valueOf(port));
+        properties.put("spring.datasource.url", "jdbc:h2:file:" + data.toAbsolutePath() + "/animaldb");
+        properties.put("spring.devtools.restart.enabled", "false");
+        properties.put("logging.level.root", "WARN");
+        properties.put("animal.storage.filesystem.directory", data.toAbsolutePath() + "/images");
+        properties.put("animal.renditions.directory", data.toAbsolutePath() + "/renditions");
+        for (String type : options.get("types").split(",")) {
+            properties.put("animal.image.url." + type, stubUrl + type + "/");
+        }
+        properties.putAll(appProperties);
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        Stream.of(options.get("app-jvm-args").split(",")).filter(arg -> !arg.isBlank()).forEach(command::add);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(AnimalImageServiceApplication.class.getName());
+        properties.forEach((key, value) -> command.add("--" + key + "=" + value));
+        System.out.println("Starting the application on port " + port + ", stub upstream at " + stubUrl);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    private String awaitStartup(Process app, int port, Path log) throws IOException, InterruptedException {
+        String base = "http://127.0.0.1:" + port;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(longOption("startup-timeout"));
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) {
+                throw new IllegalStateException("The application exited with code " + app.exitValue() + ", see " + log);
+            }
+            try {
+                if (send(HttpRequest.newBuilder(URI.create(base + "/actuator/health")).build()).statusCode() == 200) {
+                    return base + "/api/animals";
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException("The application did not start within " + options.get("startup-timeout")
+                + " s, see " + log);
+    }
+
+    private Map<String, Double> appMetrics(String api) throws IOException, InterruptedException {
+        String metrics = api.replace("/api/animals", "/actuator/metrics/");
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("allocatedBytes", measurement(metrics + "jvm.gc.memory.allocated", "COUNT"));
+        values.put("gcPauses", measurement(metrics + "jvm.gc.pause", "COUNT"));
+        values.put("gcPauseSeconds", measurement(metrics + "jvm.gc.pause", "TOTAL_TIME"));
+        return values;
+    }
+
+    /* 0 until the meter exists (jvm.gc.pause appears with the first GC) */
+    private double measurement(String url, String statistic) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return 0;
+        }
+        for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+            if (statistic.equals(measurement.path("statistic").asText())) {
+                return measurement.path("value").asDouble();
+            }
+        }
+        return 0;
+    }
+
+    private HttpResponse<Void> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private long longOption(String key) {
+        return Long.parseLong(options.get(key));
+    }
+
+    private double doubleOption(String key) {
+        return Double.parseDouble(options.get(key));
+    }
+}
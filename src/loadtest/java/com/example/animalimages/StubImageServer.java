@@ -0,0 +1,157 @@
+/*
+ * Stub Image Server
+ * -----------------
+ * In-process stand-in for the image upstreams (placebear, place.dog, ...) on a loopback port,
+ * so load tests run offline. Every path answers with a decodable JPEG of one of the configured
+ * sizes (padded with COM segments), after a fixed latency plus random jitter; a share of the
+ * requests answers 503 instead. Each body starts with a unique counter, so the application's
+ * content deduplication does not hide database growth.
+ */
+package com.example.animalimages;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+final class StubImageServer implements AutoCloseable {
+
+    private static final int MAX_SEGMENT_PAYLOAD = 65_533; // COM length field covers itself
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final byte[] baseJpeg;
+    private final byte[] filler; // random, so padded images do not compress better than real ones
+    private final int[] sizes;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double errorRate;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * @param sizes     body sizes in bytes, one picked at random per request (never below the
+     *                  plain JPEG, about 2 KB)
+     * @param latencyMs delay before every answer
+     * @param jitterMs  extra random delay, 0 to jitterMs
+     * @param errorRate share of requests answered with 503 (0.0 - 1.0)
+     */
+    StubImageServer(int[] sizes, long latencyMs, long jitterMs, double errorRate) throws IOException {
+        this.sizes = sizes.clone();
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.errorRate = errorRate;
+        this.baseJpeg = renderJpeg();
+        this.filler = new byte[MAX_SEGMENT_PAYLOAD];
+        new Random(42).nextBytes(filler);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /* image URL prefixes end with "/" except the duck one, as in application.properties */
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    long served() {
+        return served.sum();
+    }
+
+    long failed() {
+        return failed.sum();
+    }
+
+    long bytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (random.nextDouble() < errorRate) {
+                failed.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            byte[] body = image(sizes[random.nextInt(sizes.length)]);
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            served.increment();
+            bytes.add(body.length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* SOI, COM segments up to the target size (the first starting with a unique counter), rest of the JPEG */
+    private byte[] image(int size) {
+        int padding = Math.max(size - baseJpeg.length, 12);
+        ByteBuffer body = ByteBuffer.allocate(baseJpeg.length + padding + 12); // the last segment may overshoot
+        body.put(baseJpeg, 0, 2);
+        boolean first = true;
+        while (padding > 0) {
+            int payload = Math.min(Math.max(padding - 4, 8), MAX_SEGMENT_PAYLOAD);
+            body.put((byte) 0xFF).put((byte) 0xFE).putShort((short) (payload + 2));
+            if (first) {
+                body.putLong(sequence.incrementAndGet()).put(filler, 0, payload - 8);
+                first = false;
+            } else {
+                body.put(filler, 0, payload);
+            }
+            padding -= payload + 4;
+        }
+        body.put(baseJpeg, 2, baseJpeg.length - 2);
+        byte[] result = new byte[body.position()];
+        body.flip().get(result);
+        return result;
+    }
+
+    private static byte[] renderJpeg() {
+        BufferedImage image = new BufferedImage(280, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(0x8B5A2B), 280, 240, new Color(0xF4E3C1)));
+        graphics.fillRect(0, 0, 280, 240);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
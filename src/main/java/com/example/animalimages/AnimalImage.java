@@ -10,7 +10,9 @@
  * Description    :
  *   JPA Entity class representing an image of an animal. Each image is associated
  *   with a specific animal type (e.g., cat, dog, bear, duck), a source image URL,
- *   a timestamp indicating when it was fetched, and the binary image data itself.
+ *   a timestamp indicating when it was fetched, the payload size and its SHA-256
+ *   content hash (used as the HTTP ETag). The binary image data itself lives in
+ *   the content-addressed ImageBlob table, so metadata queries never load it.
  *
  * ================================================================================
  * Technologies Used:
@@ -18,41 +20,62 @@
  * ☕ Java 22
  * 🌱 Spring Boot 3.4.4
  * 📦 Jakarta Persistence (JPA - Eclipse license)
- * 🧠 @Entity, @Id, @GeneratedValue, @Lob
+ * 🧠 @Entity, @Table/@Index, @Id, @GeneratedValue, @SequenceGenerator, @Transient
  *
  * Key Fields:
  * -----------
- * Long id                → Primary key (auto-generated)
+ * Long id                → Primary key (pooled sequence, batch-insert friendly)
  * String animalType      → Animal type (cat, dog, bear, etc.)
  * String imageUrl        → URL of the fetched image
  * LocalDateTime timestamp→ When the image was fetched
- * byte[] imageData       → Raw binary image stored as a BLOB
+ * Long sizeBytes         → Size of the binary image in bytes
+ * String contentHash     → SHA-256 of the binary image (hex), computed once on creation
+ * byte[] imageData       → Raw binary image, not mapped (only set on freshly fetched images)
  *
  * Notes:
  * ------
  * - Used by AnimalImageRepository for DB operations.
+ * - The BLOB is stored once per distinct content in ImageBlob, keyed by contentHash.
+ * - Rows from before that still had an image_data column; LegacyImageDataMigration
+ *   moves their bytes into ImageBlob on startup.
  * - Serves as the data model returned by the REST API.
+ * - Indexed on (animalType, timestamp, id) and (timestamp, id): latest-per-type lookups
+ *   and keyset-paginated listings walk the index instead of scanning and sorting.
  * ================================================================================
  */
 // --- 2. Entity ---
 package com.example.animalimages;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.*; /* to map Java classes directly to database tables */
 import java.time.LocalDateTime;
 
 @Entity // Marks this class as a JPA entity, representing a table in the database.
+@Table(indexes = {
+        @Index(name = "idx_animal_image_type_ts_id", columnList = "animalType, timestamp, id"),
+        @Index(name = "idx_animal_image_ts_id", columnList = "timestamp, id")
+})
 public final class AnimalImage {
 
+    static final String ID_SEQUENCE = "animal_image_seq";
+    static final int ID_ALLOCATION_SIZE = 50; // ids reserved per sequence call
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // Configures the primary key to be generated automatically by the database.
+    // Pooled sequence instead of IDENTITY: Hibernate reserves ids in blocks of 50, so INSERTs can be JDBC-batched.
+    // ImageBatchWriter moves the sequence past ids stored before it existed (databases from the IDENTITY days).
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id; // Unique identifier for each animal image record.
     private String animalType; // The type of animal the image depicts (e.g., "cat", "dog").
     private String imageUrl; // The URL from which the animal image was fetched.
     private LocalDateTime timestamp;  // The date and time when the animal image was fetched.
+    private Long sizeBytes; // Size of the binary image data in bytes.
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of the binary image data: ImageBlob key and ETag.
 
-    @Lob // Indicates that this field should be persisted as a large object.
-    @Column(columnDefinition = "BLOB") // Specifies the database column type as BLOB (Binary Large Object) for storing binary data.
-    private byte[] imageData; // The actual binary data of the animal image.
+    @Transient // Not a column: the bytes are persisted separately in ImageBlob.
+    @JsonInclude(JsonInclude.Include.NON_NULL) // Omitted from JSON for images loaded from the DB.
+    private byte[] imageData; // The actual binary data of a freshly fetched image.
 
     /**
      * Default constructor required by JPA.
@@ -72,6 +95,8 @@ public final class AnimalImage {
         this.imageUrl = imageUrl;
         this.timestamp = timestamp;
         this.imageData = imageData;
+        this.sizeBytes = imageData == null ? null : (long) imageData.length;
+        this.contentHash = imageData == null ? null : ContentHash.sha256Hex(imageData);
     }
 
     /* getters and setters */
@@ -87,6 +112,12 @@ public final class AnimalImage {
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 
+    public Long getSizeBytes() { return sizeBytes; }
+    public void setSizeBytes(Long sizeBytes) { this.sizeBytes = sizeBytes; }
+
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
     public byte[] getImageData() { return imageData; }
     public void setImageData(byte[] imageData) { this.imageData = imageData; }
 }
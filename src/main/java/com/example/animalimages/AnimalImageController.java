@@ -22,27 +22,116 @@
  *
  * Endpoints:
  * ----------
- * POST /api/animals/fetch?type={animal}&count={count}
- *   → Fetches random animal images and stores them
+ * GET /api/animals?type={animal}&from={iso}&to={iso}&cursor={token}&limit={n}
+ *   → Metadata of stored images, newest first, keyset-paginated
+ *     (type/from/to optional; pass nextCursor back as cursor for the next page)
+ *
+ * GET /api/animals/types
+ *   → Configured animal types (one per animal.image.url.{type} property), alphabetical
+ *
+ * POST /api/animals/fetch?type={animal}&count={count}[&include=data]
+ *   → Fetches random animal images and stores them; returns metadata
+ *     (AnimalImageSummary) unless include=data asks for the base64 bytes too
+ *     With "Accept: application/x-ndjson" one JSON line is streamed per image
+ *     as soon as it is saved (failed downloads as {"url","error"} lines)
+ *
+ * POST /api/animals/fetch?type={animal}&count={count}&async=true
+ *   → Queues a fetch job: 202 Accepted + job status (Location: /api/animals/jobs/{id}),
+ *     429 Too Many Requests when the job queue is full
+ *
+ * GET /api/animals/jobs/{id}
+ *   → Progress of a fetch job (state, done/failed/bytes, images saved so far)
+ *
+ * DELETE /api/animals/jobs/{id}
+ *   → Cancels a queued or running fetch job
  *
  * GET /api/animals/last?type={animal}
  *   → Returns metadata of the last stored image for the given type
+ *     (ETag/Last-Modified; If-None-Match/If-Modified-Since → 304 Not Modified)
+ *
+ * GET /api/animals/last/image?type={animal}[&w={px}&h={px}&q={1-100}]
+ *   → Streams the raw image binary for display/download
+ *     (supports Range requests → 206 Partial Content; the SHA-256 content hash
+ *      is the strong ETag and 304 answers never read the BLOB)
+ *     With w and/or h: a scaled-down JPEG rendition (aspect ratio kept, q = quality)
+ *
+ * GET /api/animals/{id}/image[?w={px}&h={px}&q={1-100}]
+ *   → Same as /last/image for one stored image
+ *
+ * GET /api/animals/random[?type={animal}]
+ *   → Metadata of a uniformly random stored image (of any type if type is omitted)
+ *
+ * GET /api/animals/random/image[?type={animal}&w={px}&h={px}&q={1-100}]
+ *   → 302 to /api/animals/{id}/image of a random stored image (the bytes stay cacheable)
+ *
+ * GET /api/animals/stream[?type={animal}]  (Accept: text/event-stream)
+ *   → Server-Sent Events: one "image" event (metadata, id = event sequence) per newly stored image;
+ *     Last-Event-ID resumes after a reconnect, "reset" means reload /last
+ *
+ * GET /api/animals/stream/stats
+ *   → Open streams and sent/dropped/disconnected counters
+ *
+ * GET /api/animals/renditions/stats
+ *   → Entries, bytes and hit/miss/eviction counters of the rendition cache
  *
- * GET /api/animals/last/image?type={animal}
- *   → Returns the raw image binary for display/download
+ * GET /api/animals/cache/stats
+ *   → Hit/miss/eviction counters of the latest-image cache
+ *
+ * GET /api/animals/prefetch/stats
+ *   → Depth per type and hit rate of the warm prefetch pool
+ *
+ * GET /api/animals/upstreams
+ *   → Per-host adaptive limit, circuit state and counters of the upstream image hosts
+ *
+ * DELETE /api/animals/{id}
+ *   → Deletes one stored image and releases its (shared) blob
+ *
+ * GET /api/animals/storage/stats
+ *   → Logical vs physical bytes stored and the deduplication ratio
+ *
+ * GET /api/animals/retention/stats
+ *   → Images deleted by the retention policy and bytes reclaimed by H2 compaction
+ *
+ * GET /api/animals/db/stats
+ *   → Database permits in use, waiting threads and timed-out acquisitions
+ *
+ * GET /api/animals/export?type={animal}&from={iso}&to={iso}
+ *   → Streams a ZIP archive of the stored images plus manifest.ndjson (all optional filters)
+ *
+ * POST /api/animals/import (body: a ZIP archive from /export)
+ *   → Stores the archive's images; counts of imported, already stored and failed images
  * ================================================================================
  */
 
 // --- 7. Controller ---
 package com.example.animalimages;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 @RestController
 @RequestMapping("/api/animals")
@@ -51,14 +140,64 @@ public class AnimalImageController {
     // Spring REST controller
     // Declares a field to hold the AnimalImageService instance.
     private final AnimalImageService service;
+    private final FetchJobManager jobManager;
+    private final ImageRetention retention;
+    private final ImageArchive archive;
+    private final DatabaseConcurrencyLimiter databaseLimiter;
+    private final ImageEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper; // writes NDJSON records with the app's Jackson settings
+    private final CacheControl cacheControl; // sent with every image and metadata response
+    private final int streamBufferSize; // NDJSON records waiting for a slow client
     // This is where constructor injection happens.
     // Spring automatically provides (injects) an instance of AnimalImageService into the constructor
-    public AnimalImageController(AnimalImageService service) {
+    public AnimalImageController(
+            AnimalImageService service,
+            FetchJobManager jobManager,
+            ImageRetention retention,
+            ImageArchive archive,
+            DatabaseConcurrencyLimiter databaseLimiter,
+            ImageEventPublisher eventPublisher,
+            ObjectMapper objectMapper,
+            @Value("${animal.http.cache-max-age-seconds:0}") long cacheMaxAgeSeconds,
+            @Value("${animal.fetch.max-concurrency-per-request:8}") int maxConcurrencyPerRequest
+    ) {
         this.service = service;
+        this.jobManager = jobManager;
+        this.retention = retention;
+        this.archive = archive;
+        this.databaseLimiter = databaseLimiter;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        // max-age=0 + must-revalidate: clients keep the bytes but ask every time (cheap 304s)
+        this.cacheControl = CacheControl.maxAge(Duration.ofSeconds(cacheMaxAgeSeconds)).mustRevalidate();
+        this.streamBufferSize = Math.max(1, maxConcurrencyPerRequest);
     }
 
+    @GetMapping
+    public AnimalImagePage listImages(
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        return service.listImages(type, from, to, cursor, limit);
+    }
+
+    /* One NDJSON line for an image that could not be fetched or saved */
+    public record FetchFailure(String url, String error) {}
+
     @PostMapping("/fetch")
-    public ResponseEntity<?> fetchAndSave(@RequestParam String type, @RequestParam int count) {
+    public ResponseEntity<?> fetchAndSave(@RequestParam String type, @RequestParam int count,
+                                          @RequestParam(defaultValue = "false") boolean async,
+                                          @RequestParam(required = false) String include) {
+        boolean includeData = includesData(include);
+        if (async) {
+            FetchJob.Status job = jobManager.submit(type, count);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/animals/jobs/" + job.id()))
+                    .body(job); // 202 + where to poll
+        }
         List<AnimalImage> savedImages = service.fetchAndSaveImages(type, count);
 
         if (savedImages.isEmpty()) {
@@ -66,19 +205,288 @@ public class AnimalImageController {
             headers.add("X-Info", "No images were fetched for the given type.");
             return new ResponseEntity<>(headers, HttpStatus.NO_CONTENT); // 204 + custom header
         }
-        return ResponseEntity.ok(savedImages); // 200 OK with body
+        if (includeData) {
+            return ResponseEntity.ok(savedImages); // 200 OK, images with base64 imageData
+        }
+        return ResponseEntity.ok(savedImages.stream().map(AnimalImageSummary::of).toList()); // 200 OK, metadata only
+    }
+
+    /*
+     * Same fetch for clients sending "Accept: application/x-ndjson": streams one NDJSON record per
+     * image while the fetch runs. The fetch itself runs on its own virtual thread and hands records
+     * over through a queue bounded by the download concurrency: a slow client blocks that thread,
+     * which holds back the downloads (never the batch writer), so the batch is never buffered
+     * whole. If the client disconnects, the remaining downloads are interrupted.
+     */
+    @PostMapping(value = "/fetch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFetch(@RequestParam String type, @RequestParam int count,
+                                                             @RequestParam(required = false) String include) {
+        boolean includeData = includesData(include);
+        service.requireSupportedType(type);
+        StreamingResponseBody body = out -> {
+            BlockingQueue<Object> records = new ArrayBlockingQueue<>(streamBufferSize);
+            Object end = new Object();
+            Thread fetcher = Thread.ofVirtual().name("fetch-stream").start(() -> {
+                try {
+                    service.fetchAndSaveImages(type, count, new AnimalImageService.FetchProgress() {
+                        @Override
+                        public void onSaved(AnimalImage image) {
+                            put(records, includeData ? image : AnimalImageSummary.of(image));
+                        }
+
+                        @Override
+                        public void onFailed(String url, Throwable error) {
+                            put(records, new FetchFailure(url, String.valueOf(error.getMessage())));
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    put(records, new FetchFailure(null, e.getMessage()));
+                } finally {
+                    put(records, end);
+                }
+            });
+            try {
+                for (Object record = records.take(); record != end; record = records.take()) {
+                    out.write(objectMapper.writeValueAsBytes(record));
+                    out.write('\n');
+                    out.flush(); // the client sees each image as soon as it is stored
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fetcher.interrupt();
+            } catch (IOException e) {
+                fetcher.interrupt(); // client went away: stop downloading for it
+                throw e;
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /* called on the fetch thread; an interrupt means the client is gone and the fetch stops */
+    private static void put(BlockingQueue<Object> records, Object record) {
+        try {
+            records.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean includesData(String include) {
+        if (include == null || include.isBlank()) {
+            return false;
+        }
+        if (!include.equalsIgnoreCase("data")) {
+            throw new IllegalArgumentException("Unsupported include: " + include + " (only 'data')");
+        }
+        return true;
+    }
+
+    @GetMapping("/types")
+    public List<String> getAnimalTypes() {
+        return service.getAnimalTypes();
+    }
+
+    @GetMapping("/jobs/{id}")
+    public FetchJob.Status getJob(@PathVariable String id) {
+        return jobManager.getStatus(id);
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public FetchJob.Status cancelJob(@PathVariable String id) {
+        return jobManager.cancel(id);
     }
 
     @GetMapping("/last")
-    public AnimalImage getLast(@RequestParam String type) {
-        return service.getLastImage(type);
+    public ResponseEntity<AnimalImage> getLast(@RequestParam String type, WebRequest request) {
+        AnimalImage image = service.getLastImage(type);
+        HttpHeaders headers = validatorHeaders(image, metadataETag(image));
+        if (request.checkNotModified(headers.getETag(), headers.getLastModified())) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<>(image, headers, HttpStatus.OK);
     }
 
     @GetMapping("/last/image")
-    public ResponseEntity<byte[]> getLastImageData(@RequestParam String type) {
-        AnimalImage image = service.getLastImage(type);
+    public ResponseEntity<Resource> getLastImageData(@RequestParam String type,
+                                                     @RequestParam(required = false) Integer w,
+                                                     @RequestParam(required = false) Integer h,
+                                                     @RequestParam(required = false) Integer q,
+                                                     WebRequest request) {
+        return imageResponse(service.getLastImage(type), ImageRenditions.Spec.of(w, h, q), request);
+    }
+
+    @GetMapping("/{id}/image")
+    public ResponseEntity<Resource> getImageData(@PathVariable Long id,
+                                                 @RequestParam(required = false) Integer w,
+                                                 @RequestParam(required = false) Integer h,
+                                                 @RequestParam(required = false) Integer q,
+                                                 WebRequest request) {
+        return imageResponse(service.getImage(id), ImageRenditions.Spec.of(w, h, q), request);
+    }
+
+    /* served from RandomImageIndex; never cached, every request draws again */
+    @GetMapping("/random")
+    public ResponseEntity<AnimalImage> getRandom(@RequestParam(required = false) String type) {
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(randomImage(type));
+    }
+
+    @GetMapping("/random/image")
+    public ResponseEntity<Void> getRandomImageData(@RequestParam(required = false) String type,
+                                                   @RequestParam(required = false) Integer w,
+                                                   @RequestParam(required = false) Integer h,
+                                                   @RequestParam(required = false) Integer q) {
+        ImageRenditions.Spec.of(w, h, q); // reject bad sizes here rather than after the redirect
+        URI location = UriComponentsBuilder.fromPath("/api/animals/{id}/image")
+                .queryParamIfPresent("w", Optional.ofNullable(w))
+                .queryParamIfPresent("h", Optional.ofNullable(h))
+                .queryParamIfPresent("q", Optional.ofNullable(q))
+                .buildAndExpand(randomImage(type).getId())
+                .toUri();
+        return ResponseEntity.status(HttpStatus.FOUND).location(location).cacheControl(CacheControl.noStore()).build();
+    }
+
+    private AnimalImage randomImage(String type) {
+        if (type != null) {
+            service.requireSupportedType(type);
+        }
+        return service.getRandomImage(type);
+    }
+
+    /*
+     * The request thread returns at once; events are written later from ImageEventPublisher.
+     * An unparsable Last-Event-ID is treated like none.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamImages(@RequestParam(required = false) String type,
+                                   @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        if (type != null) {
+            service.requireSupportedType(type);
+        }
+        Long resumeAfter = null;
+        if (lastEventId != null) {
+            try {
+                resumeAfter = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                // not one of our ids: start with live events only
+            }
+        }
+        return eventPublisher.subscribe(type == null ? null : type.toLowerCase(), resumeAfter);
+    }
+
+    @GetMapping("/stream/stats")
+    public ImageEventPublisher.Stats getStreamStats() {
+        return eventPublisher.getStats();
+    }
+
+    @GetMapping("/renditions/stats")
+    public ImageRenditions.Stats getRenditionStats() {
+        return service.getRenditionStats();
+    }
+
+    @GetMapping("/cache/stats")
+    public LatestImageCache.Stats getCacheStats() {
+        return service.getCacheStats();
+    }
+
+    @GetMapping("/prefetch/stats")
+    public ImagePrefetchPool.Stats getPrefetchStats() {
+        return service.getPrefetchStats();
+    }
+
+    @GetMapping("/upstreams")
+    public List<UpstreamGuard.HostState> getUpstreams() {
+        return service.getUpstreamStates();
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteImage(@PathVariable Long id) {
+        service.deleteImage(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/storage/stats")
+    public AnimalImageService.StorageStats getStorageStats() {
+        return service.getStorageStats();
+    }
+
+    @GetMapping("/retention/stats")
+    public ImageRetention.Stats getRetentionStats() {
+        return retention.getStats();
+    }
+
+    @GetMapping("/db/stats")
+    public DatabaseConcurrencyLimiter.Stats getDatabaseStats() {
+        return databaseLimiter.getStats();
+    }
+
+    /*
+     * The archive is written while the rows are read, so its size is unknown up front: the
+     * response is chunked and a failure halfway through can only cut the archive short.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportImages(
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (type != null) {
+            service.requireSupportedType(type);
+        }
+        String fileName = "animal-images-" + (type == null ? "all" : type.toLowerCase()) + ".zip";
+        StreamingResponseBody body = out -> archive.export(type, from, to, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    @PostMapping(value = "/import", consumes = {"application/zip", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ImageArchive.ImportReport importImages(InputStream body) throws IOException, InterruptedException {
+        return archive.importArchive(body);
+    }
+
+    /*
+     * Original bytes (spec == null) or a rendition. Streamed from storage; Spring MVC turns a Range
+     * header on a Resource body into 206 Partial Content.
+     */
+    private ResponseEntity<Resource> imageResponse(AnimalImage image, ImageRenditions.Spec spec, WebRequest request) {
+        String eTag = imageETag(image);
+        if (eTag != null && spec != null) {
+            // one strong validator per rendition: same content hash, different bytes
+            eTag = "\"" + spec.key(image.getContentHash()) + "\"";
+        }
+        HttpHeaders headers = validatorHeaders(image, eTag);
+        // checked before any read, so a 304 never reads the BLOB or renders anything
+        if (request.checkNotModified(headers.getETag(), headers.getLastModified())) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        headers.setContentType(MediaType.IMAGE_JPEG); // or detect type (renditions are always JPEG)
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        Resource body = spec == null
+                ? service.openImageData(image)
+                : new ByteArrayResource(service.getRendition(image, spec));
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /* ETag, Last-Modified (from the fetch timestamp) and Cache-Control for an image response */
+    private HttpHeaders validatorHeaders(AnimalImage image, String eTag) {
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_JPEG); // or detect type
-        return new ResponseEntity<>(image.getImageData(), headers, HttpStatus.OK);
+        if (eTag != null) {
+            headers.setETag(eTag);
+        }
+        headers.setLastModified(image.getTimestamp().atZone(ZoneId.systemDefault()).toInstant());
+        headers.setCacheControl(cacheControl);
+        return headers;
+    }
+
+    /* strong ETag of the image bytes: their SHA-256 (null for rows stored before hashing existed) */
+    private static String imageETag(AnimalImage image) {
+        return image.getContentHash() == null ? null : "\"" + image.getContentHash() + "\"";
+    }
+
+    /* the metadata document changes whenever the latest image (id) changes */
+    private static String metadataETag(AnimalImage image) {
+        return image.getContentHash() == null
+                ? "\"" + image.getId() + "\""
+                : "\"" + image.getId() + "-" + image.getContentHash() + "\"";
     }
 }
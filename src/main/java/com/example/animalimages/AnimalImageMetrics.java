@@ -0,0 +1,178 @@
+/**
+ * ================================================================================
+ * File           : AnimalImageMetrics.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Publishes the counters the caches, pools and queues already keep (the
+ *   same numbers as their /stats endpoints) as Micrometer gauges and function
+ *   counters. They are read when the registry is scraped, so nothing is added
+ *   to the request path. Latency timers are recorded where the work happens:
+ *     - animal.upstream.requests  → UpstreamGuard (per host and outcome)
+ *     - animal.download           → AnimalImageService (per type, with retries)
+ *     - animal.db.batch.save      → ImageBatchWriter (one write transaction)
+ *     - http.server.requests      → Spring MVC (/last, /last/image, ... incl. JSON)
+ *     - spring.data.repository.invocations → Spring Data (each repository query)
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 📈 Micrometer MeterBinder (bound by Spring Boot Actuator)
+ * 🔭 Prometheus scrape endpoint: GET /actuator/prometheus
+ *
+ * Notes:
+ * ------
+ * - Percentile histograms for every animal.* timer are switched on in
+ *   application.properties (management.metrics.distribution.*).
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+@Component
+public class AnimalImageMetrics implements MeterBinder {
+
+    private final LatestImageCache latestImageCache;
+    private final ImagePrefetchPool prefetchPool;
+    private final FetchJobManager jobManager;
+    private final ImageRenditions renditions;
+    private final ImageRetention retention;
+    private final RandomImageIndex randomIndex;
+    private final DatabaseConcurrencyLimiter databaseLimiter;
+    private final ImageEventPublisher eventPublisher;
+    private final ImageUrlFactory urlFactory;
+
+    public AnimalImageMetrics(
+            LatestImageCache latestImageCache,
+            ImagePrefetchPool prefetchPool,
+            FetchJobManager jobManager,
+            ImageRenditions renditions,
+            ImageRetention retention,
+            RandomImageIndex randomIndex,
+            DatabaseConcurrencyLimiter databaseLimiter,
+            ImageEventPublisher eventPublisher,
+            ImageUrlFactory urlFactory
+    ) {
+        this.latestImageCache = latestImageCache;
+        this.prefetchPool = prefetchPool;
+        this.jobManager = jobManager;
+        this.renditions = renditions;
+        this.retention = retention;
+        this.randomIndex = randomIndex;
+        this.databaseLimiter = databaseLimiter;
+        this.eventPublisher = eventPublisher;
+        this.urlFactory = urlFactory;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // latest-image cache: metadata and payload lookups by result
+        cacheCounter(registry, "metadata", "hit", cache -> cache.getStats().metadataHits());
+        cacheCounter(registry, "metadata", "miss", cache -> cache.getStats().metadataMisses());
+        cacheCounter(registry, "payload", "hit", cache -> cache.getStats().payloadHits());
+        cacheCounter(registry, "payload", "miss", cache -> cache.getStats().payloadMisses());
+        FunctionCounter.builder("animal.cache.evictions", latestImageCache, cache -> cache.getStats().evictions())
+                .register(registry);
+        Gauge.builder("animal.cache.payload.bytes", latestImageCache, cache -> cache.getStats().payloadBytes())
+                .baseUnit("bytes")
+                .register(registry);
+
+        // prefetch pool: depth per type and served/missed images
+        for (String type : urlFactory.types()) {
+            Gauge.builder("animal.prefetch.depth", prefetchPool, pool -> pool.getStats().depth().getOrDefault(type, 0))
+                    .description("Downloaded images waiting in the prefetch pool")
+                    .tag("type", type)
+                    .register(registry);
+        }
+        FunctionCounter.builder("animal.prefetch.requests", prefetchPool, pool -> pool.getStats().hits())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("animal.prefetch.requests", prefetchPool, pool -> pool.getStats().misses())
+                .tag("result", "miss")
+                .register(registry);
+
+        // ids per type in the random-image index
+        for (String type : urlFactory.types()) {
+            Gauge.builder("animal.random.index.ids", randomIndex, index -> index.size(type))
+                    .description("Stored image ids indexed for GET /api/animals/random")
+                    .tag("type", type)
+                    .register(registry);
+        }
+
+        // background fetch jobs
+        Gauge.builder("animal.jobs.queued", jobManager, FetchJobManager::getQueuedCount)
+                .description("Fetch jobs waiting for a worker")
+                .register(registry);
+        Gauge.builder("animal.jobs.running", jobManager, FetchJobManager::getRunningCount)
+                .register(registry);
+
+        // rendition cache
+        Gauge.builder("animal.renditions.bytes", renditions, r -> r.getStats().bytes())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("animal.renditions.entries", renditions, r -> r.getStats().entries())
+                .register(registry);
+        FunctionCounter.builder("animal.renditions.requests", renditions, r -> r.getStats().hits())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("animal.renditions.requests", renditions, r -> r.getStats().misses())
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("animal.renditions.evictions", renditions, r -> r.getStats().evictions())
+                .register(registry);
+
+        // retention policy and H2 compaction
+        FunctionCounter.builder("animal.retention.deleted", retention, r -> r.getStats().deletedTotal())
+                .description("Images deleted by the retention policy")
+                .register(registry);
+        FunctionCounter.builder("animal.retention.reclaimed", retention, r -> r.getStats().reclaimedBytesTotal())
+                .description("Bytes given back by compacting the H2 file")
+                .baseUnit("bytes")
+                .register(registry);
+
+        // database permits (hikaricp.* has the pool itself)
+        Gauge.builder("animal.db.permits.in-use", databaseLimiter, l -> l.getStats().inUse())
+                .register(registry);
+        Gauge.builder("animal.db.permits.waiting", databaseLimiter, l -> l.getStats().waiting())
+                .description("Threads queued for a database permit")
+                .register(registry);
+        FunctionCounter.builder("animal.db.permits.timeouts", databaseLimiter, l -> l.getStats().timedOut())
+                .description("Requests that got no database permit in time (503)")
+                .register(registry);
+
+        // SSE image stream
+        Gauge.builder("animal.stream.subscribers", eventPublisher, p -> p.getStats().subscribers())
+                .description("Open GET /api/animals/stream connections")
+                .register(registry);
+        FunctionCounter.builder("animal.stream.events", eventPublisher, p -> p.getStats().sent())
+                .tag("result", "sent")
+                .register(registry);
+        FunctionCounter.builder("animal.stream.events", eventPublisher, p -> p.getStats().dropped())
+                .tag("result", "dropped")
+                .register(registry);
+        FunctionCounter.builder("animal.stream.disconnects", eventPublisher, p -> p.getStats().disconnected())
+                .description("Subscribers disconnected for falling behind")
+                .register(registry);
+    }
+
+    private void cacheCounter(MeterRegistry registry, String area, String result,
+                              ToDoubleFunction<LatestImageCache> count) {
+        FunctionCounter.builder("animal.cache.requests", latestImageCache, count)
+                .description("Lookups in the latest-image cache")
+                .tag("area", area)
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * ================================================================================
+ * File           : AnimalImagePage.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   One page of GET /api/animals, newest first. nextCursor is an opaque token
+ *   naming the last row returned (timestamp + id); pass it back as ?cursor= to
+ *   continue right after that row. It is null on the last page.
+ *
+ *   Keyset pagination: the next page is found with an index range condition
+ *   (timestamp, id) < (cursor), never with OFFSET, so page N costs the same as
+ *   page 1 and rows inserted meanwhile don't shift or repeat entries.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+public record AnimalImagePage(List<AnimalImageSummary> items, String nextCursor) {
+
+    /* Decoded cursor: position of the last row of the previous page */
+    record Cursor(LocalDateTime timestamp, long id) {
+
+        String encode() {
+            String raw = timestamp + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+        }
+    }
+}
@@ -27,6 +27,26 @@
  * findTopByAnimalTypeOrderByTimestampDesc(String animalType)
  *   → Returns the most recent AnimalImage record for the given type
  *
+ * findPageByType(type, from, beforeTimestamp, beforeId, limit)
+ * findPage(from, beforeTimestamp, beforeId, limit)
+ *   → Keyset-paginated metadata listing, newest first (see AnimalImagePage)
+ *
+ * sumSizeBytes()
+ *   → Logical bytes stored, before deduplication (see ImageBlobRepository)
+ *
+ * findOldestIds(limit) / findOldestIdsByType(type, limit) / findIdsOlderThan(before, limit)
+ *   → Ids of the oldest images, one retention batch at a time (see ImageRetention)
+ *
+ * findExportPageByType(type, afterTimestamp, afterId, to, limit)
+ * findExportPage(afterTimestamp, afterId, to, limit)
+ *   → Keyset pages of metadata, oldest first, for archive exports (see ImageArchive)
+ *
+ * existsByAnimalTypeAndImageUrlAndTimestamp(type, url, timestamp)
+ *   → Whether an imported image is already stored
+ *
+ * streamIdsByType(type)
+ *   → All ids of one type, for rebuilding the RandomImageIndex
+ *
  * Inherits:
  * ---------
  * JpaRepository<AnimalImage, Long>
@@ -37,13 +57,101 @@
 package com.example.animalimages;
 
 import com.example.animalimages.AnimalImage;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /* most recently saved image for the given animal type */
 @Repository
 public interface AnimalImageRepository extends JpaRepository<AnimalImage, Long> {
     Optional<AnimalImage> findTopByAnimalTypeOrderByTimestampDesc(String animalType);
+
+    /*
+     * Keyset pages: rows strictly before (beforeTimestamp, beforeId) in (timestamp desc, id desc) order.
+     * "timestamp <= :ts and (timestamp < :ts or id < :id)" is the row-value comparison written so
+     * H2 can turn "timestamp <= :ts" into an index range instead of filtering every row.
+     */
+    @Query("select new com.example.animalimages.AnimalImageSummary(i.id, i.animalType, i.imageUrl, i.timestamp, i.sizeBytes, i.contentHash)"
+            + " from AnimalImage i"
+            + " where i.animalType = :type and i.timestamp >= :from and i.timestamp <= :beforeTimestamp"
+            + " and (i.timestamp < :beforeTimestamp or i.id < :beforeId)"
+            + " order by i.timestamp desc, i.id desc")
+    List<AnimalImageSummary> findPageByType(@Param("type") String type,
+                                            @Param("from") LocalDateTime from,
+                                            @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                            @Param("beforeId") long beforeId,
+                                            Limit limit);
+
+    @Query("select new com.example.animalimages.AnimalImageSummary(i.id, i.animalType, i.imageUrl, i.timestamp, i.sizeBytes, i.contentHash)"
+            + " from AnimalImage i"
+            + " where i.timestamp >= :from and i.timestamp <= :beforeTimestamp"
+            + " and (i.timestamp < :beforeTimestamp or i.id < :beforeId)"
+            + " order by i.timestamp desc, i.id desc")
+    List<AnimalImageSummary> findPage(@Param("from") LocalDateTime from,
+                                      @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                      @Param("beforeId") long beforeId,
+                                      Limit limit);
+
+    @Query("select coalesce(sum(i.sizeBytes), 0) from AnimalImage i")
+    long sumSizeBytes();
+
+    /* null when nothing is stored */
+    @Query("select max(i.id) from AnimalImage i")
+    Long findMaxId();
+
+    long countByAnimalType(String animalType);
+
+    @Query("select distinct i.animalType from AnimalImage i")
+    List<String> findAnimalTypes();
+
+    /* oldest first, served by the (timestamp, id) and (animalType, timestamp, id) indexes */
+    @Query("select i.id from AnimalImage i order by i.timestamp, i.id")
+    List<Long> findOldestIds(Limit limit);
+
+    @Query("select i.id from AnimalImage i where i.animalType = :type order by i.timestamp, i.id")
+    List<Long> findOldestIdsByType(@Param("type") String type, Limit limit);
+
+    @Query("select i.id from AnimalImage i where i.timestamp < :before order by i.timestamp, i.id")
+    List<Long> findIdsOlderThan(@Param("before") LocalDateTime before, Limit limit);
+
+    /*
+     * Export pages: rows of [from, to) strictly after (afterTimestamp, afterId), oldest first.
+     * The mirror image of the listing's keyset pages, served by the same indexes.
+     */
+    @Query("select new com.example.animalimages.AnimalImageSummary(i.id, i.animalType, i.imageUrl, i.timestamp, i.sizeBytes, i.contentHash)"
+            + " from AnimalImage i"
+            + " where i.animalType = :type and i.timestamp >= :afterTimestamp and i.timestamp < :to"
+            + " and (i.timestamp > :afterTimestamp or i.id > :afterId)"
+            + " order by i.timestamp, i.id")
+    List<AnimalImageSummary> findExportPageByType(@Param("type") String type,
+                                                  @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                                  @Param("afterId") long afterId,
+                                                  @Param("to") LocalDateTime to,
+                                                  Limit limit);
+
+    @Query("select new com.example.animalimages.AnimalImageSummary(i.id, i.animalType, i.imageUrl, i.timestamp, i.sizeBytes, i.contentHash)"
+            + " from AnimalImage i"
+            + " where i.timestamp >= :afterTimestamp and i.timestamp < :to"
+            + " and (i.timestamp > :afterTimestamp or i.id > :afterId)"
+            + " order by i.timestamp, i.id")
+    List<AnimalImageSummary> findExportPage(@Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                            @Param("afterId") long afterId,
+                                            @Param("to") LocalDateTime to,
+                                            Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select i.id from AnimalImage i where i.animalType = :type")
+    Stream<Long> streamIdsByType(@Param("type") String type);
+
+    boolean existsByAnimalTypeAndImageUrlAndTimestamp(String animalType, String imageUrl, LocalDateTime timestamp);
 }
@@ -18,103 +18,446 @@
  * ☕ Java 22
  * 🌱 Spring Boot 3.4.4
  * 🧠 Spring Service Layer
- * 🌐 Java URL + InputStream (to fetch remote images)
- * 💾 Spring Data JPA for persistence
+ * 🌐 ImageDownloader (shared HttpClient, parallel downloads on virtual threads)
+ * 💾 Spring Data JPA for persistence (batched through ImageBatchWriter)
  * 📜 SLF4J Logger for logging
+ * 📈 Micrometer: download latency and bytes per animal type
  *
  * Notes:
  * ------
  * - Supported animal types: cat, dog, bear,duck
  * - Image fallback logic and retries handled in frontend
- * - Binary image data is stored as BLOB in the database
+ * - Downloads run concurrently; saved images keep the requested order
+ * - Interactive fetches take already-downloaded images from ImagePrefetchPool first
+ * - Large fetches can run as background jobs (FetchJobManager) reporting FetchProgress
+ * - Binary image data is stored once per distinct content (ImageBlob, reference counted)
+ * - getLastImage() returns metadata only; bytes are streamed by openImageData()
+ * - listImages() pages through history by keyset (timestamp, id), never by OFFSET
+ * - Where the bytes live (H2 BLOB or segment files) is up to the ImageStore backend
+ * - Latest image per type (metadata and small payloads) is served from LatestImageCache
+ * - Resized JPEG renditions come from ImageRenditions; common sizes are rendered on save
+ * - getRandomImage() samples ids from RandomImageIndex, never ORDER BY RAND()
  * ================================================================================
  */
 // --- 6. Service ---
 package com.example.animalimages;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.io.InputStream;
-import java.net.URL;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 public class AnimalImageService {
 
+    /**
+     * Storage usage returned by GET /api/animals/storage/stats.
+     * dedupRatio = logicalBytes / physicalBytes (1.0 means no duplicates).
+     */
+    public record StorageStats(long images, long logicalBytes, long blobs, long physicalBytes, double dedupRatio) {}
+
+    /**
+     * Per-image callbacks of fetchAndSaveImages(), e.g. to track a FetchJob. Called in download
+     * order on the thread running the fetch, never on the batch writer thread, so an
+     * implementation may block (a streaming response waiting for its client) without stalling writes.
+     */
+    public interface FetchProgress {
+        FetchProgress NONE = new FetchProgress() {};
+
+        default void onSaved(AnimalImage image) {}
+
+        default void onFailed(String url, Throwable error) {}
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(AnimalImageService.class);
 
-    private final String dogUrl;
-    private final String catUrl;
-    private final String bearUrl;
-    private final String duckUrl;
+    static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_RANDOM_ATTEMPTS = 5;
+    // open ends of the time filter, inside the range of an H2 TIMESTAMP
+    static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
 
     private final AnimalImageRepository repository;
+    private final ImageBlobRepository blobRepository;
+    private final ImageDownloader downloader;
+    private final ImageBatchWriter batchWriter;
+    private final ImageStore imageStore;
+    private final LatestImageCache latestImageCache;
+    private final ImageUrlFactory urlFactory;
+    private final ImagePrefetchPool prefetchPool;
+    private final UpstreamGuard upstreamGuard;
+    private final ImageRenditions renditions;
+    private final RandomImageIndex randomIndex;
+    private final Map<String, DownloadMeters> downloadMeters = new HashMap<>(); // per type, built once
+    private final AtomicLong deletedImages = new AtomicLong(); // committed deletes, lets ImageRetention skip idle compactions
+
+    /* Meters of live downloads for one animal type */
+    private record DownloadMeters(Timer succeeded, Timer failed, DistributionSummary bytes) {
+
+        static DownloadMeters register(MeterRegistry registry, String type) {
+            return new DownloadMeters(
+                    downloadTimer(registry, type, "success"),
+                    downloadTimer(registry, type, "failure"),
+                    DistributionSummary.builder("animal.download.bytes")
+                            .description("Size of downloaded images")
+                            .baseUnit("bytes")
+                            .tag("type", type)
+                            .register(registry));
+        }
+
+        private static Timer downloadTimer(MeterRegistry registry, String type, String outcome) {
+            return Timer.builder("animal.download")
+                    .description("One image download including retries and backoff")
+                    .tag("type", type)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+
+        void record(ImageDownloader.Download download) {
+            if (download.isSuccess()) {
+                succeeded.record(download.elapsedNanos(), TimeUnit.NANOSECONDS);
+                bytes.record(download.data().length);
+            } else {
+                failed.record(download.elapsedNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
 
     public AnimalImageService(
             AnimalImageRepository repository,
-            @Value("${animal.image.url.dog}") String dogUrl,
-            @Value("${animal.image.url.cat}") String catUrl,
-            @Value("${animal.image.url.bear}") String bearUrl,
-            @Value("${animal.image.url.duck}") String duckUrl
+            ImageBlobRepository blobRepository,
+            ImageDownloader downloader,
+            ImageBatchWriter batchWriter,
+            ImageStore imageStore,
+            LatestImageCache latestImageCache,
+            ImageUrlFactory urlFactory,
+            ImagePrefetchPool prefetchPool,
+            UpstreamGuard upstreamGuard,
+            ImageRenditions renditions,
+            RandomImageIndex randomIndex,
+            MeterRegistry meterRegistry
     ) {
         this.repository = repository;
-        this.dogUrl = dogUrl;
-        this.catUrl = catUrl;
-        this.bearUrl = bearUrl;
-        this.duckUrl = duckUrl;
+        this.blobRepository = blobRepository;
+        this.downloader = downloader;
+        this.batchWriter = batchWriter;
+        this.imageStore = imageStore;
+        this.latestImageCache = latestImageCache;
+        this.urlFactory = urlFactory;
+        this.prefetchPool = prefetchPool;
+        this.upstreamGuard = upstreamGuard;
+        this.renditions = renditions;
+        this.randomIndex = randomIndex;
+        for (String type : urlFactory.types()) {
+            downloadMeters.put(type, DownloadMeters.register(meterRegistry, type));
+        }
     }
-    // ... use dogUrl, catUrl, bearUrl in your switch block
 
     public List<AnimalImage> fetchAndSaveImages(String animalType, int count) {
+        // served from the warm prefetch pool first; only the shortfall is downloaded live
+        List<ImageDownloader.Download> prefetched = prefetchPool.take(animalType, count);
+        return fetchAndSaveImages(animalType, prefetched, imageUrlsFor(animalType, count - prefetched.size()),
+                FetchProgress.NONE, true);
+    }
+
+    /**
+     * Same as fetchAndSaveImages(type, count), but results only go to {@code progress}: nothing is
+     * kept for a combined result, so a streaming caller never holds the whole batch in memory.
+     */
+    public void fetchAndSaveImages(String animalType, int count, FetchProgress progress) {
+        List<ImageDownloader.Download> prefetched = prefetchPool.take(animalType, count);
+        fetchAndSaveImages(animalType, prefetched, imageUrlsFor(animalType, count - prefetched.size()), progress, false);
+    }
+
+    /* random-size image URLs for the given type; rejects unsupported types before any work is queued */
+    public List<String> imageUrlsFor(String animalType, int count) {
+        return urlFactory.urlsFor(animalType, count);
+    }
+
+    /* fails fast for an unsupported type, before a response is committed */
+    public void requireSupportedType(String animalType) {
+        if (!urlFactory.isSupported(animalType)) {
+            throw new IllegalArgumentException("Unsupported animal type: " + animalType);
+        }
+    }
+
+    /* configured animal types (animal.image.url.*), alphabetical */
+    public List<String> getAnimalTypes() {
+        return urlFactory.types();
+    }
+
+    /**
+     * Downloads and stores the given URLs, reporting each saved or failed image to {@code progress}.
+     * Interrupting the calling thread stops the remaining downloads (used to cancel fetch jobs).
+     */
+    public void fetchAndSaveImages(String animalType, List<String> imageUrls, FetchProgress progress) {
+        // jobs bypass the prefetch pool: a large job would drain it for interactive fetches
+        fetchAndSaveImages(animalType, List.of(), imageUrls, progress, false);
+    }
+
+    private List<AnimalImage> fetchAndSaveImages(String animalType, List<ImageDownloader.Download> prefetched,
+                                                 List<String> imageUrls, FetchProgress progress, boolean collect) {
+        Deque<PendingSave> pendingSaves = new ArrayDeque<>(); // submitted, not yet reported
         List<AnimalImage> savedImages = new ArrayList<>();
-        Random random = new Random();
-
-        for (int i = 0; i < count; i++) {
-            int width = 200 + random.nextInt(100);
-            int height = 200 + random.nextInt(100);
-
-            String imageUrl = switch (animalType.toLowerCase()) {
-                case "dog" -> dogUrl + width + "/" + height;
-                case "cat" -> catUrl + width + "/" + height;
-                case "bear" -> bearUrl + width + "/" + height;
-                //case "duck" -> duckUrl + width + "/" + height;
-                case "duck" -> duckUrl;
-                default -> throw new IllegalArgumentException("Unsupported animal type: " + animalType);
-            };
-
-            try {
-                URL url = new URL(imageUrl);
-                InputStream inputStream = url.openStream();
-                byte[] imageBytes = inputStream.readAllBytes();
-                inputStream.close();
-
-                AnimalImage img = new AnimalImage(animalType.toLowerCase(), imageUrl, LocalDateTime.now(), imageBytes);
-                repository.save(img);
-                savedImages.add(img);
-
-                logger.info("Saved image from URL: {} ({} bytes)", imageUrl, imageBytes.length);
-
-            } catch (Exception e) {
-                logger.error("Failed to fetch image from URL: {}", imageUrl, e);
-                continue;
+        Consumer<ImageDownloader.Download> store = download -> {
+            if (!download.isSuccess()) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    logger.error("Failed to fetch image from URL: {}", download.url(), download.error());
+                    progress.onFailed(download.url(), download.error());
+                }
+                return;
                 // Optionally continue loop instead of stopping
                 //throw new RuntimeException("Failed to download image", e);
             }
+            AnimalImage img = new AnimalImage(animalType.toLowerCase(), download.url(), LocalDateTime.now(), download.data());
+            CompletableFuture<AnimalImage> pendingSave = batchWriter.submit(img).whenComplete((saved, error) -> {
+                if (error == null) {
+                    logger.info("Saved image from URL: {} ({} bytes)", saved.getImageUrl(), saved.getSizeBytes());
+                    renditions.precompute(saved); // queued; the bytes are still in memory
+                }
+            });
+            pendingSaves.add(new PendingSave(img.getImageUrl(), pendingSave));
+            // report what has been committed so far from this thread; a blocking progress slows downloads, not writes
+            while (!pendingSaves.isEmpty() && pendingSaves.peek().result().isDone()) {
+                report(pendingSaves.poll(), progress, collect ? savedImages : null);
+            }
+        };
+
+        // Prefetched images are stored right away; downloads run in parallel and arrive in the
+        // same order as imageUrls, each handed to the batch writer while later ones still run
+        prefetched.forEach(store);
+        DownloadMeters meters = downloadMeters.get(animalType.toLowerCase());
+        downloader.downloadAll(imageUrls, meters == null ? store : download -> {
+            meters.record(download);
+            store.accept(download);
+        });
+
+        while (!pendingSaves.isEmpty()) {
+            report(pendingSaves.poll(), progress, collect ? savedImages : null);
         }
         return savedImages;
     }
+
+    /* An image handed to the batch writer, reported to the FetchProgress once committed */
+    private record PendingSave(String url, CompletableFuture<AnimalImage> result) {}
+
+    /* waits for the save, reports it and, with {@code collect}, keeps the saved image */
+    private static void report(PendingSave pendingSave, FetchProgress progress, List<AnimalImage> collect) {
+        try {
+            AnimalImage img = pendingSave.result().join();
+            progress.onSaved(img);
+            if (collect != null) {
+                collect.add(img);
+            }
+        } catch (CompletionException e) {
+            logger.error("Failed to save fetched image", e.getCause());
+            progress.onFailed(pendingSave.url(), e.getCause());
+        }
+    }
 // Debug purposes. Remove or comment if not debugging
 // Print the image URL to the console
 // System.out.println("Fetching image from URL: " + imageUrl);
 
     public AnimalImage getLastImage(String animalType) {
-        return repository.findTopByAnimalTypeOrderByTimestampDesc(animalType.toLowerCase())
+        String type = animalType.toLowerCase();
+        return latestImageCache.getLatest(type, () -> repository.findTopByAnimalTypeOrderByTimestampDesc(type))
                 .orElseThrow(() -> new ImageNotFoundException("No image found for type: " + animalType));
     }
+
+    public AnimalImage getImage(Long id) {
+        return repository.findById(id)
+                .orElseThrow(() -> new ImageNotFoundException("No image found for id: " + id));
+    }
+
+    /**
+     * A uniformly random stored image of the given type, or of any type when type is null.
+     * Ids deleted behind the index's back are dropped from it and another one is drawn.
+     */
+    public AnimalImage getRandomImage(String animalType) {
+        String type = animalType == null ? null : animalType.toLowerCase();
+        for (int attempt = 0; attempt < MAX_RANDOM_ATTEMPTS; attempt++) {
+            long id = type == null ? randomIndex.sampleAny() : randomIndex.sample(type);
+            if (id == RandomImageIndex.NONE) {
+                break;
+            }
+            Optional<AnimalImage> image = repository.findById(id);
+            if (image.isPresent()) {
+                return image.get();
+            }
+            randomIndex.remove(id);
+        }
+        throw new ImageNotFoundException("No image found for type: " + (animalType == null ? "any" : animalType));
+    }
+
+    /**
+     * One page of stored image metadata, newest first.
+     *
+     * @param type   animal type, or null for all types
+     * @param from   inclusive lower bound of the fetch timestamp, or null
+     * @param to     exclusive upper bound of the fetch timestamp, or null
+     * @param cursor nextCursor of the previous page, or null for the first page
+     * @param limit  page size (1..MAX_PAGE_SIZE)
+     */
+    public AnimalImagePage listImages(String type, LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // (to, Long.MIN_VALUE) as the first position excludes "to" itself; a cursor is always before it
+        AnimalImagePage.Cursor position = cursor != null
+                ? AnimalImagePage.Cursor.decode(cursor)
+                : new AnimalImagePage.Cursor(to != null ? to : LATEST, to != null ? Long.MIN_VALUE : Long.MAX_VALUE);
+        LocalDateTime lowerBound = from != null ? from : EARLIEST;
+
+        // one extra row tells whether another page follows
+        Limit fetchLimit = Limit.of(limit + 1);
+        List<AnimalImageSummary> rows = type == null
+                ? repository.findPage(lowerBound, position.timestamp(), position.id(), fetchLimit)
+                : repository.findPageByType(type.toLowerCase(), lowerBound, position.timestamp(), position.id(), fetchLimit);
+
+        if (rows.size() <= limit) {
+            return new AnimalImagePage(rows, null);
+        }
+        List<AnimalImageSummary> page = rows.subList(0, limit);
+        AnimalImageSummary last = page.get(limit - 1);
+        return new AnimalImagePage(List.copyOf(page), new AnimalImagePage.Cursor(last.timestamp(), last.id()).encode());
+    }
+
+    /* serves small cached payloads from memory, streams everything else from the ImageStore */
+    public Resource openImageData(AnimalImage image) {
+        byte[] cached = latestImageCache.getPayload(image, () -> getImageData(image));
+        if (cached != null) {
+            return new ByteArrayResource(cached);
+        }
+        return imageStore.open(image.getContentHash(), image.getSizeBytes());
+    }
+
+    /* resized JPEG of a stored image; the original is only read when the rendition isn't cached */
+    public byte[] getRendition(AnimalImage image, ImageRenditions.Spec spec) {
+        if (image.getContentHash() == null) {
+            throw new ImageNotFoundException("No image data found for id: " + image.getId());
+        }
+        return renditions.get(image.getContentHash(), spec, () -> getImageData(image));
+    }
+
+    public ImageRenditions.Stats getRenditionStats() {
+        return renditions.getStats();
+    }
+
+    public LatestImageCache.Stats getCacheStats() {
+        return latestImageCache.getStats();
+    }
+
+    public ImagePrefetchPool.Stats getPrefetchStats() {
+        return prefetchPool.getStats();
+    }
+
+    public List<UpstreamGuard.HostState> getUpstreamStates() {
+        return upstreamGuard.getStates();
+    }
+
+    /* binary payload of a stored image, read from the ImageStore by content hash */
+    public byte[] getImageData(AnimalImage image) {
+        if (image.getContentHash() == null) {
+            throw new ImageNotFoundException("No image data found for id: " + image.getId());
+        }
+        return imageStore.read(image.getContentHash());
+    }
+
+    @Transactional
+    public void deleteImage(Long id) {
+        if (deleteImages(List.of(id)) == 0) {
+            throw new ImageNotFoundException("No image found for id: " + id);
+        }
+    }
+
+    /**
+     * Deletes images and releases their blobs; a blob is removed with its last reference.
+     *
+     * @return number of images actually deleted
+     */
+    @Transactional
+    public int deleteImages(Collection<Long> ids) {
+        List<AnimalImage> images = repository.findAllById(ids);
+        if (images.isEmpty()) {
+            return 0;
+        }
+        repository.deleteAllInBatch(images);
+
+        Map<String, Long> released = new HashMap<>();
+        Set<String> types = new HashSet<>();
+        Map<Long, String> deletedIds = new HashMap<>();
+        for (AnimalImage image : images) {
+            types.add(image.getAnimalType());
+            deletedIds.put(image.getId(), image.getAnimalType());
+            if (image.getContentHash() != null) {
+                released.merge(image.getContentHash(), 1L, Long::sum);
+            }
+        }
+        Set<String> unreferenced = new HashSet<>();
+        released.forEach((hash, count) -> {
+            blobRepository.decrementRefCount(hash, count);
+            if (blobRepository.deleteIfUnreferenced(hash) > 0) {
+                unreferenced.add(hash);
+            }
+        });
+
+        // only after commit: invalidating earlier would let a reader re-cache a row being deleted
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                types.forEach(latestImageCache::invalidate);
+                deletedIds.forEach((id, type) -> randomIndex.remove(type, id));
+                deletedImages.addAndGet(deletedIds.size());
+                // skip hashes a concurrent batch has registered again; the store re-checks under its write lock
+                unreferenced.stream()
+                        .filter(hash -> !blobRepository.existsById(hash))
+                        .forEach(hash -> {
+                            imageStore.delete(hash);
+                            renditions.evict(hash);
+                        });
+            }
+        });
+        logger.info("Deleted {} images, released {} blobs", images.size(), released.size());
+        return images.size();
+    }
+
+    /* images deleted (and committed) since startup */
+    public long getDeletedCount() {
+        return deletedImages.get();
+    }
+
+    /* logical bytes (what was fetched) vs physical bytes (what is stored after deduplication) */
+    public StorageStats getStorageStats() {
+        long images = repository.count();
+        long logicalBytes = repository.sumSizeBytes();
+        long blobs = blobRepository.count();
+        long physicalBytes = blobRepository.sumSizeBytes();
+        double dedupRatio = physicalBytes == 0 ? 1.0 : (double) logicalBytes / physicalBytes;
+        return new StorageStats(images, logicalBytes, blobs, physicalBytes, dedupRatio);
+    }
 }
@@ -47,6 +47,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -54,6 +55,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * Entry point for the Animal Image Service Spring Boot application.
  */
 @SpringBootApplication
+@EnableScheduling // ImageRetention's background deletes and H2 compaction
 public class AnimalImageServiceApplication {
 
     // Standard logger setup (simpler than using AtomicReference)
@@ -0,0 +1,39 @@
+/**
+ * ================================================================================
+ * File           : AnimalImageSummary.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Metadata-only projection of a stored AnimalImage, selected directly by
+ *   JPQL constructor expression. Listings return these instead of managed
+ *   entities, so large pages never fill the persistence context.
+ *
+ * ================================================================================
+ * Key Fields:
+ * -----------
+ * Long id, String animalType, String imageUrl, LocalDateTime timestamp,
+ * Long sizeBytes, String contentHash (same meaning as on AnimalImage)
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import java.time.LocalDateTime;
+
+public record AnimalImageSummary(
+        Long id,
+        String animalType,
+        String imageUrl,
+        LocalDateTime timestamp,
+        Long sizeBytes,
+        String contentHash
+) {
+
+    static AnimalImageSummary of(AnimalImage image) {
+        return new AnimalImageSummary(image.getId(), image.getAnimalType(), image.getImageUrl(),
+                image.getTimestamp(), image.getSizeBytes(), image.getContentHash());
+    }
+}
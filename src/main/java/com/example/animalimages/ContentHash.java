@@ -0,0 +1,36 @@
+/**
+ * ================================================================================
+ * File           : ContentHash.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Content digest of image bytes (SHA-256, lowercase hex). Computed once when
+ *   an image is created and stored on AnimalImage, then reused as the strong
+ *   HTTP ETag of the image.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public final class ContentHash {
+
+    private ContentHash() {}
+
+    /**
+     * @return the SHA-256 digest of {@code data} as 64 lowercase hex characters
+     */
+    public static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // mandatory in every JRE
+        }
+    }
+}
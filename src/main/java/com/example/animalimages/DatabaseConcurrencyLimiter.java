@@ -0,0 +1,263 @@
+/**
+ * ================================================================================
+ * File           : DatabaseConcurrencyLimiter.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Bounds how many threads use the database at the same time. The Hikari
+ *   DataSource is wrapped so every getConnection() first takes a permit
+ *   (released when the connection is closed). With the default limit of one
+ *   permit per pooled connection, callers beyond the pool size queue on a fair
+ *   semaphore and give up after acquire-timeout-ms (503) instead of waiting
+ *   inside Hikari for its much longer connection timeout.
+ *
+ *   Virtual threads additionally need a carrier-sized limit: H2 still enters
+ *   monitors (synchronized) and blocks on file I/O, which pins the virtual
+ *   thread to its carrier. If every carrier were pinned by a database call
+ *   waiting for a thread that cannot be mounted, the scheduler would stall. So
+ *   at most (carriers - 1) virtual threads are inside JDBC at once and one
+ *   carrier always stays free; platform threads (batch writer, job workers in
+ *   platform mode) only take the pool-sized permit.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22 (virtual threads)
+ * 🚦 Fair Semaphores, java.lang.reflect.Proxy around java.sql.Connection
+ * 🌱 BeanPostProcessor wrapping the auto-configured HikariDataSource
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.db.max-concurrency    → Threads using the database at once (0 = Hikari maximum-pool-size)
+ * animal.db.acquire-timeout-ms → Longest wait for a permit before the request fails with 503
+ * spring.threads.virtual.enabled → Virtual-thread request mode (adds the carrier limit)
+ *
+ * Notes:
+ * ------
+ * - Raise -Djdk.virtualThreadScheduler.parallelism (default: CPU count) above
+ *   the pool size when the carrier limit is lower than the pool; a WARN at
+ *   startup says so.
+ * - Spring resolves a transaction's JDBC work to the same connection, so a
+ *   request holds one permit however many queries it runs.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class DatabaseConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseConcurrencyLimiter.class);
+
+    /**
+     * Permit usage returned by GET /api/animals/db/stats and published as metrics.
+     */
+    public record Stats(int maxConcurrency, int virtualThreadLimit, int inUse, int waiting,
+                        long acquired, long timedOut) {}
+
+    private final int configuredMaxConcurrency;
+    private final long acquireTimeoutNanos;
+    private final boolean virtualThreads;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    // set when the DataSource is wrapped; the pool size is known only then
+    private volatile Semaphore permits;
+    private volatile Semaphore virtualPermits; // null in platform-thread mode
+    private volatile int maxConcurrency;
+    private volatile int virtualThreadLimit;
+
+    public DatabaseConcurrencyLimiter(
+            @Value("${animal.db.max-concurrency:0}") int maxConcurrency,
+            @Value("${animal.db.acquire-timeout-ms:5000}") long acquireTimeoutMs,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.configuredMaxConcurrency = maxConcurrency;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, acquireTimeoutMs));
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Wraps the pool; called once by DatabaseConfiguration's BeanPostProcessor.
+     */
+    DataSource wrap(HikariDataSource pool) {
+        int poolSize = pool.getMaximumPoolSize();
+        maxConcurrency = configuredMaxConcurrency > 0 ? configuredMaxConcurrency : poolSize;
+        permits = new Semaphore(maxConcurrency, true);
+        if (virtualThreads) {
+            int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                    Runtime.getRuntime().availableProcessors());
+            virtualThreadLimit = Math.max(1, Math.min(maxConcurrency, carriers - 1));
+            virtualPermits = new Semaphore(virtualThreadLimit, true);
+            if (virtualThreadLimit < maxConcurrency) {
+                logger.warn("Virtual threads: at most {} of {} database permits usable from virtual threads ({} carriers);"
+                                + " set -Djdk.virtualThreadScheduler.parallelism={} to use the whole pool",
+                        virtualThreadLimit, maxConcurrency, carriers, maxConcurrency + 1);
+            }
+        }
+        logger.info("Database concurrency: {} permits (pool size {}){}", maxConcurrency, poolSize,
+                virtualThreads ? ", " + virtualThreadLimit + " for virtual threads" : "");
+        return new LimitedDataSource(pool);
+    }
+
+    public Stats getStats() {
+        Semaphore current = permits;
+        if (current == null) {
+            return new Stats(0, 0, 0, 0, acquired.sum(), timedOut.sum());
+        }
+        Semaphore virtual = virtualPermits;
+        return new Stats(maxConcurrency, virtualThreadLimit,
+                maxConcurrency - current.availablePermits(),
+                current.getQueueLength() + (virtual == null ? 0 : virtual.getQueueLength()),
+                acquired.sum(), timedOut.sum());
+    }
+
+    /* virtual permit first (so a parked virtual thread holds nothing), then the pool permit */
+    private boolean acquire(boolean virtual) throws SQLException {
+        long deadline = System.nanoTime() + acquireTimeoutNanos;
+        try {
+            if (virtual && !virtualPermits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw busy();
+            }
+            if (!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                if (virtual) {
+                    virtualPermits.release();
+                }
+                throw busy();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database permit", e);
+        }
+        acquired.increment();
+        return virtual;
+    }
+
+    private void release(boolean virtual) {
+        permits.release();
+        if (virtual) {
+            virtualPermits.release();
+        }
+    }
+
+    private SQLException busy() {
+        timedOut.increment();
+        return new SQLTransientConnectionException("Database busy: no permit within "
+                + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + " ms (" + maxConcurrency + " in use)");
+    }
+
+    /**
+     * The wrapped pool. unwrap()/isWrapperFor() reach the HikariDataSource, so Spring Boot's
+     * pool metrics and health checks keep working. close() is the bean's inferred destroy method.
+     */
+    private final class LimitedDataSource extends DelegatingDataSource implements Closeable {
+
+        private final HikariDataSource pool;
+
+        LimitedDataSource(HikariDataSource pool) {
+            super(pool);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() {
+            pool.close();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            boolean virtual = acquire(virtualPermits != null && Thread.currentThread().isVirtual());
+            try {
+                return limited(super.getConnection(), virtual);
+            } catch (SQLException | RuntimeException e) {
+                release(virtual);
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            boolean virtual = acquire(virtualPermits != null && Thread.currentThread().isVirtual());
+            try {
+                return limited(super.getConnection(username, password), virtual);
+            } catch (SQLException | RuntimeException e) {
+                release(virtual);
+                throw e;
+            }
+        }
+
+        private Connection limited(Connection connection, boolean virtual) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new PermitReleasingHandler(connection, virtual));
+        }
+    }
+
+    /* delegates every call; the first close() gives the permit back */
+    private final class PermitReleasingHandler implements InvocationHandler {
+
+        private final Connection connection;
+        private final boolean virtual;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        PermitReleasingHandler(Connection connection, boolean virtual) {
+            this.connection = connection;
+            this.virtual = virtual;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Limited[" + connection + "]";
+                }
+                case "close" -> {
+                    try {
+                        connection.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            release(virtual);
+                        }
+                    }
+                    return null;
+                }
+                default -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * ================================================================================
+ * File           : DatabaseConfiguration.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Puts DatabaseConcurrencyLimiter in front of the HikariDataSource that
+ *   Spring Boot auto-configures, so JPA, JdbcTemplate and the H2 blob store
+ *   all take a database permit before they get a connection.
+ *
+ * ================================================================================
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * spring.datasource.hikari.*  → Pool size and timeouts (the limiter follows maximum-pool-size)
+ * animal.db.*                 → See DatabaseConcurrencyLimiter
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DatabaseConfiguration {
+
+    // static: post-processors are created before the other beans of this class
+    @Bean
+    public static BeanPostProcessor limitedDataSourcePostProcessor(ObjectProvider<DatabaseConcurrencyLimiter> limiter) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof HikariDataSource pool ? limiter.getObject().wrap(pool) : bean;
+            }
+        };
+    }
+}
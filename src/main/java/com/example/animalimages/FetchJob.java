@@ -0,0 +1,142 @@
+/**
+ * ================================================================================
+ * File           : FetchJob.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   One asynchronous fetch started with POST /api/animals/fetch?async=true.
+ *   Receives per-image FetchProgress callbacks while it runs and exposes a
+ *   snapshot (Status) with counters and the images saved so far.
+ *
+ * ================================================================================
+ * States:
+ * -------
+ * QUEUED → RUNNING → COMPLETED | FAILED
+ * QUEUED | RUNNING → CANCELLED (DELETE /api/animals/jobs/{id})
+ *
+ * Notes:
+ * ------
+ * - COMPLETED means the job ran to the end; single failed downloads are
+ *   counted in "failed", FAILED means the job itself broke off.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FetchJob implements AnimalImageService.FetchProgress {
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /**
+     * Snapshot returned by the job endpoints.
+     */
+    public record Status(
+            String id,
+            String type,
+            int requested,
+            State state,
+            int done,
+            int failed,
+            long bytes,
+            List<AnimalImageSummary> images,
+            LocalDateTime createdAt,
+            LocalDateTime finishedAt,
+            String error
+    ) {}
+
+    private final String id;
+    private final String type;
+    private final List<String> imageUrls;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final ConcurrentLinkedQueue<AnimalImageSummary> images = new ConcurrentLinkedQueue<>();
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+    private volatile Future<?> future;
+
+    FetchJob(String id, String type, List<String> imageUrls) {
+        this.id = id;
+        this.type = type;
+        this.imageUrls = imageUrls;
+    }
+
+    public String getId() { return id; }
+
+    String getType() { return type; }
+
+    List<String> getImageUrls() { return imageUrls; }
+
+    boolean isFinished() { return finishedAt != null; }
+
+    void setFuture(Future<?> future) { this.future = future; }
+
+    @Override
+    public void onSaved(AnimalImage image) {
+        done.incrementAndGet();
+        bytes.addAndGet(image.getSizeBytes() == null ? 0 : image.getSizeBytes());
+        images.add(AnimalImageSummary.of(image));
+    }
+
+    @Override
+    public void onFailed(String url, Throwable error) {
+        if (state.get() != State.CANCELLED) {
+            failed.incrementAndGet();
+        }
+    }
+
+    /* QUEUED → RUNNING; false if the job was cancelled while waiting */
+    boolean start() {
+        return state.compareAndSet(State.QUEUED, State.RUNNING);
+    }
+
+    /* RUNNING → COMPLETED/FAILED, unless it was cancelled meanwhile (then it stays CANCELLED) */
+    void finish(State outcome, String error) {
+        this.error = error;
+        state.compareAndSet(State.RUNNING, outcome);
+        finishedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Cancels a queued or running job; a running one is interrupted, which stops its
+     * remaining downloads. Images already saved stay stored.
+     *
+     * @return false if the job had already finished
+     */
+    boolean cancel() {
+        State current = state.get();
+        while (current == State.QUEUED || current == State.RUNNING) {
+            if (state.compareAndSet(current, State.CANCELLED)) {
+                if (current == State.QUEUED) {
+                    finishedAt = LocalDateTime.now(); // never picked up by a worker
+                }
+                Future<?> running = future;
+                if (running != null) {
+                    running.cancel(true);
+                }
+                return true;
+            }
+            current = state.get();
+        }
+        return false;
+    }
+
+    Status status() {
+        return new Status(id, type, imageUrls.size(), state.get(), done.get(), failed.get(), bytes.get(),
+                List.copyOf(images), createdAt, finishedAt, error);
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * ================================================================================
+ * File           : FetchJobManager.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Runs fetches in the background so large counts don't hold a Tomcat worker
+ *   until every download is done. Jobs wait in a bounded queue for one of a
+ *   fixed number of job threads; when the queue is full new jobs are rejected
+ *   (429 Too Many Requests) instead of piling up. Finished jobs are kept for
+ *   status queries until the retention limit pushes the oldest out.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🧵 ThreadPoolExecutor (fixed workers, ArrayBlockingQueue, AbortPolicy)
+ * 🧠 AnimalImageService.FetchProgress for per-image progress
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.jobs.workers          → Jobs running at the same time
+ * animal.jobs.queue-capacity   → Jobs waiting before new ones get 429
+ * animal.jobs.max-count        → Largest count accepted for one job
+ * animal.jobs.retained         → Finished jobs kept for GET /api/animals/jobs/{id}
+ * spring.threads.virtual.enabled → Job workers are virtual threads (same pool size)
+ *
+ * Notes:
+ * ------
+ * - Downloads inside a job are still bounded by ImageDownloader's limits.
+ * - Virtual workers still run at most animal.jobs.workers jobs; they only stop
+ *   blocking carrier threads while waiting on upstream I/O.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class FetchJobManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(FetchJobManager.class);
+
+    private final AnimalImageService service;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final int maxCount;
+    private final int retained;
+    private final Map<String, FetchJob> jobs = new ConcurrentHashMap<>();
+    private final Queue<String> submissionOrder = new ConcurrentLinkedQueue<>(); // oldest first, for retention
+
+    public FetchJobManager(
+            AnimalImageService service,
+            @Value("${animal.jobs.workers:2}") int workers,
+            @Value("${animal.jobs.queue-capacity:16}") int queueCapacity,
+            @Value("${animal.jobs.max-count:1000}") int maxCount,
+            @Value("${animal.jobs.retained:200}") int retained,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.service = service;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxCount = Math.max(1, maxCount);
+        this.retained = Math.max(1, retained);
+        AtomicInteger threadNumber = new AtomicInteger();
+        int poolSize = Math.max(1, workers);
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("fetch-job-", 1).factory()
+                : task -> {
+                    Thread thread = new Thread(task, "fetch-job-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                };
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues a fetch job.
+     *
+     * @throws IllegalArgumentException   for an unsupported type or count
+     * @throws FetchJobRejectedException   when the job queue is full
+     */
+    public FetchJob.Status submit(String type, int count) {
+        if (count < 1 || count > maxCount) {
+            throw new IllegalArgumentException("count must be between 1 and " + maxCount);
+        }
+        FetchJob job = new FetchJob(UUID.randomUUID().toString(), type.toLowerCase(), service.imageUrlsFor(type, count));
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new FetchJobRejectedException("Fetch job queue is full (" + queueCapacity + " waiting), retry later");
+        }
+        submissionOrder.add(job.getId());
+        evictFinishedJobs();
+        logger.info("Queued fetch job {} ({} x {})", job.getId(), count, job.getType());
+        return job.status();
+    }
+
+    /* jobs waiting for a worker */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /* jobs currently running */
+    public int getRunningCount() {
+        return executor.getActiveCount();
+    }
+
+    public FetchJob.Status getStatus(String id) {
+        return find(id).status();
+    }
+
+    /**
+     * Cancels a queued or running job and returns its status; finished jobs are left as they are.
+     */
+    public FetchJob.Status cancel(String id) {
+        FetchJob job = find(id);
+        if (job.cancel()) {
+            executor.purge(); // frees the queue slot of a job that never started
+            logger.info("Cancelled fetch job {}", id);
+        }
+        return job.status();
+    }
+
+    private FetchJob find(String id) {
+        FetchJob job = jobs.get(id);
+        if (job == null) {
+            throw new FetchJobNotFoundException("No fetch job found for id: " + id);
+        }
+        return job;
+    }
+
+    private void run(FetchJob job) {
+        if (!job.start()) {
+            return; // cancelled while queued
+        }
+        try {
+            service.fetchAndSaveImages(job.getType(), job.getImageUrls(), job);
+            job.finish(FetchJob.State.COMPLETED, null);
+        } catch (RuntimeException e) {
+            logger.error("Fetch job {} failed", job.getId(), e);
+            job.finish(FetchJob.State.FAILED, e.getMessage());
+        } finally {
+            Thread.interrupted(); // a cancel must not leak into the next job on this thread
+        }
+    }
+
+    /* drops the oldest finished jobs beyond the retention limit; running/queued jobs are always kept */
+    private void evictFinishedJobs() {
+        int excess = jobs.size() - retained;
+        for (String id : submissionOrder) {
+            if (excess <= 0) {
+                return;
+            }
+            FetchJob job = jobs.get(id);
+            if (job == null || job.isFinished()) {
+                jobs.remove(id);
+                submissionOrder.remove(id);
+                excess--;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        jobs.values().forEach(FetchJob::cancel);
+        executor.shutdownNow();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,9 @@
+// --- Custom Exception ---
+// Unknown (or expired) fetch job id → 404
+package com.example.animalimages;
+
+public class FetchJobNotFoundException extends RuntimeException {
+    public FetchJobNotFoundException(String message) {
+        super(message);
+    }
+}
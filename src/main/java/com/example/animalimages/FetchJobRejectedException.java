@@ -0,0 +1,9 @@
+// --- Custom Exception ---
+// Fetch job queue is full → 429 Too Many Requests
+package com.example.animalimages;
+
+public class FetchJobRejectedException extends RuntimeException {
+    public FetchJobRejectedException(String message) {
+        super(message);
+    }
+}
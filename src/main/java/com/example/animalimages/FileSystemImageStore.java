@@ -0,0 +1,541 @@
+/**
+ * ================================================================================
+ * File           : FileSystemImageStore.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   ImageStore keeping image bytes outside the database, in append-only segment
+ *   files (segment-000001.dat, ...). Every PUT/DELETE is appended as a record;
+ *   an in-memory index (hash → segment, offset, length) is rebuilt by replaying
+ *   the segments at startup. Reads map the record into memory (MappedByteBuffer),
+ *   so serving an image never copies it onto the heap or goes through JDBC.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 📁 java.nio FileChannel (append, force) + memory-mapped reads
+ * 🧵 ConcurrentHashMap index for lock-free lookups
+ *
+ * Record layout:
+ * --------------
+ * int magic | byte kind (1=PUT, 2=DELETE) | 32 bytes SHA-256 | long length | data
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.storage.filesystem.directory           → Where segment files are written
+ * animal.storage.filesystem.segment-size-bytes  → Size at which a new segment starts
+ *
+ * Notes:
+ * ------
+ * - Hashes not found in the segments are read from H2 (blobs stored before the
+ *   switch), until ImageStoreMigration has moved them.
+ * - A batch can reuse the bytes of a blob whose last reference is being deleted
+ *   at the same moment. store() pins the hash until the batch transaction ends,
+ *   and delete() writes its tombstone under the write lock only when the hash is
+ *   neither pinned nor registered again, so reused bytes are never dropped.
+ *   Bytes stored by a batch that rolls back stay in the segment (a leak, not a
+ *   loss) until the hash is stored and deleted again.
+ * - compactSegments() gives the space of deleted records back: the live records
+ *   of a sparse sealed segment are copied to the active one under the write lock
+ *   (the same lock delete() and store() take, so a concurrent delete either comes
+ *   after the copy or makes it skip the record), then the old file is unlinked.
+ *   Its tombstones are carried over while an older segment that may hold the
+ *   deleted bytes survives. Readers holding the old location look it up again.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+public class FileSystemImageStore implements ImageStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemImageStore.class);
+
+    private static final int MAGIC = 0x494D4731; // "IMG1"
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + 1 + HASH_BYTES + 8;
+
+    /* Where the bytes of one blob live */
+    private record Location(int segment, long offset, long length) {}
+
+    /* Called for every complete record of a segment, in file order */
+    private interface RecordVisitor {
+        void visit(byte kind, String hash, long dataOffset, long length) throws IOException;
+    }
+
+    /**
+     * Outcome of one compactSegments() run.
+     */
+    public record SegmentCompaction(int segmentsRemoved, long reclaimedBytes, boolean complete) {}
+
+    private final Path directory;
+    private final long segmentSizeBytes;
+    private final ImageStore fallback; // blobs written before this backend was enabled
+    private final Predicate<String> registered; // is there a committed registry row for the hash?
+
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, FileChannel> readChannels = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private FileChannel activeChannel; // guarded by writeLock
+    private int activeSegment;         // guarded by writeLock
+    private final Map<String, Integer> pinned = new HashMap<>(); // guarded by writeLock: hashes of open batches
+
+    public FileSystemImageStore(Path directory, long segmentSizeBytes, ImageStore fallback) throws IOException {
+        this(directory, segmentSizeBytes, fallback, hash -> false);
+    }
+
+    public FileSystemImageStore(Path directory, long segmentSizeBytes, ImageStore fallback,
+                                Predicate<String> registered) throws IOException {
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.fallback = fallback;
+        this.registered = registered;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    @Override
+    public ImageBlob store(String hash, byte[] data, long refCount) {
+        writeLock.lock();
+        try {
+            pin(hash);
+            if (!index.containsKey(hash)) {
+                append(PUT, hash, data);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return new ImageBlob(hash, null, (long) data.length, refCount); // registry row only
+    }
+
+    /**
+     * Writes bytes for a blob that is already registered (used by the migration).
+     */
+    public void put(String hash, byte[] data) {
+        writeLock.lock();
+        try {
+            if (!index.containsKey(hash)) {
+                append(PUT, hash, data);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean contains(String hash) {
+        return index.containsKey(hash);
+    }
+
+    @Override
+    public void flush() {
+        writeLock.lock();
+        try {
+            if (activeChannel != null) {
+                activeChannel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to flush image segment " + activeSegment, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Resource open(String hash, Long sizeBytes) {
+        Location location = index.get(hash);
+        if (location == null) {
+            return fallback.open(hash, sizeBytes);
+        }
+        return new MappedImageResource(hash, location);
+    }
+
+    @Override
+    public byte[] read(String hash) {
+        Location location = index.get(hash);
+        if (location == null) {
+            return fallback.read(hash);
+        }
+        MappedByteBuffer mapped = mapCurrent(hash, location);
+        byte[] data = new byte[(int) location.length()];
+        mapped.get(data);
+        return data;
+    }
+
+    @Override
+    public void delete(String hash) {
+        writeLock.lock();
+        try {
+            // a batch that has not committed yet reuses the bytes, or one already registered them again
+            if (pinned.containsKey(hash) || !index.containsKey(hash) || registered.test(hash)) {
+                return;
+            }
+            append(DELETE, hash, null);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /* Keeps delete() away from the hash until the surrounding batch transaction has completed */
+    private void pin(String hash) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        pinned.merge(hash, 1, Integer::sum);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                writeLock.lock();
+                try {
+                    pinned.computeIfPresent(hash, (key, count) -> count == 1 ? null : count - 1);
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Rewrites sealed segments whose live records fill less than {@code minLivePercent} of the
+     * file, oldest first, until {@code deadlineNanos} (System.nanoTime()). A segment cut off by
+     * the deadline is kept; the records already copied just leave it sparser for the next run.
+     */
+    public SegmentCompaction compactSegments(int minLivePercent, long deadlineNanos) {
+        Map<Integer, Long> liveBytes = new HashMap<>();
+        index.values().forEach(location -> liveBytes.merge(location.segment(), HEADER_BYTES + location.length(), Long::sum));
+        int active;
+        writeLock.lock();
+        try {
+            active = activeSegment;
+        } finally {
+            writeLock.unlock();
+        }
+        int removed = 0;
+        long reclaimed = 0;
+        boolean olderSurvives = false; // tombstones must outlive the PUTs they hide
+        try {
+            for (Map.Entry<Integer, Path> segment : listSegments().headMap(active).entrySet()) {
+                if (System.nanoTime() >= deadlineNanos) {
+                    return new SegmentCompaction(removed, reclaimed, false);
+                }
+                long size = Files.size(segment.getValue());
+                if (liveBytes.getOrDefault(segment.getKey(), 0L) * 100 >= size * minLivePercent) {
+                    olderSurvives = true;
+                    continue;
+                }
+                long copied = rewriteSegment(segment.getKey(), olderSurvives, deadlineNanos);
+                if (copied < 0) {
+                    return new SegmentCompaction(removed, reclaimed, false);
+                }
+                removed++;
+                reclaimed += Math.max(0, size - copied);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact image segments in " + directory, e);
+        }
+        if (removed > 0) {
+            logger.info("Compacted {} image segments, {} bytes reclaimed", removed, reclaimed);
+        }
+        return new SegmentCompaction(removed, reclaimed, true);
+    }
+
+    /* Copies the live records of a sealed segment to the active one and unlinks it; -1 if out of time */
+    private long rewriteSegment(int segment, boolean keepTombstones, long deadlineNanos) throws IOException {
+        long[] copied = {0};
+        boolean[] cutOff = {false};
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            scan(channel, (kind, hash, dataOffset, length) -> {
+                if (cutOff[0] || System.nanoTime() >= deadlineNanos) {
+                    cutOff[0] = true;
+                    return;
+                }
+                writeLock.lock();
+                try {
+                    if (kind == PUT) {
+                        // only the record the index points at is live; a concurrent delete() already dropped it
+                        if (new Location(segment, dataOffset, length).equals(index.get(hash))) {
+                            ByteBuffer data = ByteBuffer.allocate((int) length);
+                            while (data.hasRemaining() && channel.read(data, dataOffset + data.position()) > 0) {
+                                // keep reading until the record is complete
+                            }
+                            append(PUT, hash, data.array());
+                            copied[0] += HEADER_BYTES + length;
+                        }
+                    } else if (keepTombstones && !index.containsKey(hash)) {
+                        append(DELETE, hash, null);
+                        copied[0] += HEADER_BYTES;
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            });
+        }
+        if (cutOff[0]) {
+            return -1;
+        }
+        flush(); // the copies must be durable before the originals go
+        Files.delete(segmentPath(segment));
+        // after the unlink no reader can open it again; an open channel would keep its space allocated
+        FileChannel reader = readChannels.remove(segment);
+        if (reader != null) {
+            reader.close(); // existing mappings stay valid
+        }
+        return copied[0];
+    }
+
+    /* Callers hold writeLock */
+    private void append(byte kind, String hash, byte[] data) {
+        long length = data == null ? 0 : data.length;
+        try {
+            if (activeChannel == null || activeChannel.size() + HEADER_BYTES + length > segmentSizeBytes) {
+                rollSegment();
+            }
+            long recordOffset = activeChannel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .put(kind)
+                    .put(HexFormat.of().parseHex(hash))
+                    .putLong(length)
+                    .flip();
+            writeFully(header, recordOffset);
+            if (data != null) {
+                writeFully(ByteBuffer.wrap(data), recordOffset + HEADER_BYTES);
+            }
+            if (kind == PUT) {
+                index.put(hash, new Location(activeSegment, recordOffset + HEADER_BYTES, length));
+            } else {
+                index.remove(hash);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to image segment " + activeSegment, e);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += activeChannel.write(buffer, position);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.force(false);
+            activeChannel.close();
+        }
+        activeSegment++;
+        activeChannel = FileChannel.open(segmentPath(activeSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        logger.info("Writing images to segment {}", segmentPath(activeSegment));
+    }
+
+    /* Segment files by number */
+    private TreeMap<Integer, Path> listSegments() throws IOException {
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.matches("segment-\\d{6}\\.dat")) {
+                    segments.put(Integer.parseInt(name.substring(8, 14)), file);
+                }
+            });
+        }
+        return segments;
+    }
+
+    /* Replays every segment in order to rebuild the index; cuts off a torn record at the tail */
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> segments = listSegments();
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long validEnd = replay(segment.getKey(), channel);
+                if (validEnd < channel.size()) {
+                    logger.warn("Truncating torn record at {} in {}", validEnd, segment.getValue());
+                    channel.truncate(validEnd);
+                }
+            }
+            activeSegment = segment.getKey();
+        }
+        if (!segments.isEmpty()) {
+            activeChannel = FileChannel.open(segmentPath(activeSegment), StandardOpenOption.WRITE, StandardOpenOption.READ);
+        }
+        logger.info("Image store at {}: {} blobs in {} segments", directory, index.size(), segments.size());
+    }
+
+    private long replay(int segment, FileChannel channel) throws IOException {
+        return scan(channel, (kind, hash, dataOffset, length) -> {
+            if (kind == PUT) {
+                index.put(hash, new Location(segment, dataOffset, length));
+            } else {
+                index.remove(hash);
+            }
+        });
+    }
+
+    /* Visits every complete record; returns where the valid part of the segment ends */
+    private long scan(FileChannel channel, RecordVisitor visitor) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        byte[] hash = new byte[HASH_BYTES];
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, position + header.position()) > 0) {
+                // keep reading until the header is complete
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+            byte kind = header.get();
+            header.get(hash);
+            long length = header.getLong();
+            long dataOffset = position + HEADER_BYTES;
+            if (dataOffset + length > size) {
+                break; // data of the last record was not fully written
+            }
+            visitor.visit(kind, HexFormat.of().formatHex(hash), dataOffset, length);
+            position = dataOffset + length;
+        }
+        return position;
+    }
+
+    /* Maps the location, or where compaction has moved the record to since it was looked up */
+    private MappedByteBuffer mapCurrent(String hash, Location location) {
+        try {
+            return map(location);
+        } catch (UncheckedIOException e) {
+            Location moved = index.get(hash);
+            if (moved == null || moved.equals(location)) {
+                throw e;
+            }
+            return map(moved);
+        }
+    }
+
+    private MappedByteBuffer map(Location location) {
+        try {
+            FileChannel channel = readChannels.computeIfAbsent(location.segment(), segment -> {
+                try {
+                    return FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return channel.map(FileChannel.MapMode.READ_ONLY, location.offset(), location.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map image segment " + location.segment(), e);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (activeChannel != null) {
+                activeChannel.force(false);
+                activeChannel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        for (FileChannel channel : readChannels.values()) {
+            channel.close();
+        }
+    }
+
+    /* Resource over a memory-mapped record; each stream gets its own view of the mapping */
+    private final class MappedImageResource extends AbstractResource {
+        private final String hash;
+        private final Location location;
+
+        MappedImageResource(String hash, Location location) {
+            this.hash = hash;
+            this.location = location;
+        }
+
+        @Override
+        public String getDescription() {
+            return "image segment " + location.segment() + " [hash=" + hash + "]";
+        }
+
+        @Override
+        public long contentLength() {
+            return location.length();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteBufferInputStream(mapCurrent(hash, location));
+        }
+    }
+
+    /* InputStream reading straight from a (mapped) ByteBuffer */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * ================================================================================
+ * File           : H2BlobImageStore.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   ImageStore keeping image bytes in the image_blob.data BLOB column of the H2
+ *   database, i.e. inside the registry row itself. This is the default backend
+ *   and the fallback FileSystemImageStore reads from until blobs are migrated.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 💾 H2 BLOB column + plain JDBC streaming (ImageDataResource)
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.core.io.Resource;
+
+import javax.sql.DataSource;
+
+public class H2BlobImageStore implements ImageStore {
+
+    private final DataSource dataSource;
+    private final ImageBlobRepository blobRepository;
+
+    public H2BlobImageStore(DataSource dataSource, ImageBlobRepository blobRepository) {
+        this.dataSource = dataSource;
+        this.blobRepository = blobRepository;
+    }
+
+    @Override
+    public ImageBlob store(String hash, byte[] data, long refCount) {
+        return new ImageBlob(hash, data, refCount); // bytes are INSERTed with the registry row
+    }
+
+    @Override
+    public Resource open(String hash, Long sizeBytes) {
+        return new ImageDataResource(dataSource, hash, sizeBytes);
+    }
+
+    @Override
+    public byte[] read(String hash) {
+        return blobRepository.findById(hash)
+                .map(ImageBlob::getData)
+                .orElseThrow(() -> new ImageNotFoundException("No image data found for hash: " + hash));
+    }
+
+    @Override
+    public void delete(String hash) {
+        // nothing to do: the bytes were deleted together with the registry row
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * ================================================================================
+ * File           : H2FileCompactor.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Online compaction of an H2 database file, used by ImageRetention. H2 has
+ *   no SQL for this short of SHUTDOWN COMPACT, which closes the database, so
+ *   this class drives the MVStore directly: it rewrites sparse chunks, then
+ *   moves live chunks to the front of the file and truncates it.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🪞 java.lang.reflect (H2 stays a runtime-only dependency)
+ * 🗜️ H2 MVStore compact() + RandomAccessStore.compactMoveChunks()
+ *
+ * Notes:
+ * ------
+ * - The MVStore calls are H2 internals, not public API, and may change in any
+ *   H2 release. They are all looked up once, when the class is loaded; if one
+ *   is missing, forConnection() returns null and only H2 compaction is skipped.
+ * - While compacting, the MVStore retention time is 0 so freed chunks can be
+ *   reused at once; it is restored afterwards (H2's own compactFile() would
+ *   leave it at 0 for the rest of the run, weakening crash safety).
+ * - Chunks are rewritten and moved at most REWRITE_BYTES_PER_STEP at a time,
+ *   with the deadline checked between steps, so writers are never held up by
+ *   a whole-file rewrite.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+final class H2FileCompactor {
+
+    private static final Logger logger = LoggerFactory.getLogger(H2FileCompactor.class);
+
+    // chunks less full than this are rewritten (H2's own default for background compaction)
+    private static final int REWRITE_FILL_RATE = 90;
+    private static final int REWRITE_BYTES_PER_STEP = 16 * 1024 * 1024;
+
+    private static final Api API = Api.resolve(); // null when this H2 version lacks one of the calls
+
+    /* The H2 classes and methods used, resolved by name */
+    private record Api(Class<?> jdbcConnection, Method getSession, Method getDatabase, Method getStore,
+                       Method getMvStore, Method getFileStore, Class<?> randomAccessStore, Method isReadOnly,
+                       Method size, Method getChunksFillRate, Method compactMoveChunks, Method getRetentionTime,
+                       Method setRetentionTime, Method compact, Method commit) {
+
+        static Api resolve() {
+            try {
+                Class<?> jdbcConnection = Class.forName("org.h2.jdbc.JdbcConnection");
+                Class<?> sessionLocal = Class.forName("org.h2.engine.SessionLocal");
+                Class<?> database = Class.forName("org.h2.engine.Database");
+                Class<?> store = Class.forName("org.h2.mvstore.db.Store");
+                Class<?> mvStore = Class.forName("org.h2.mvstore.MVStore");
+                Class<?> fileStore = Class.forName("org.h2.mvstore.FileStore");
+                Class<?> randomAccessStore = Class.forName("org.h2.mvstore.RandomAccessStore");
+                return new Api(jdbcConnection,
+                        jdbcConnection.getMethod("getSession"),
+                        sessionLocal.getMethod("getDatabase"),
+                        database.getMethod("getStore"),
+                        store.getMethod("getMvStore"),
+                        mvStore.getMethod("getFileStore"),
+                        randomAccessStore,
+                        fileStore.getMethod("isReadOnly"),
+                        fileStore.getMethod("size"),
+                        fileStore.getMethod("getChunksFillRate"),
+                        randomAccessStore.getMethod("compactMoveChunks", int.class, long.class, mvStore),
+                        mvStore.getMethod("getRetentionTime"),
+                        mvStore.getMethod("setRetentionTime", int.class),
+                        mvStore.getMethod("compact", int.class, int.class),
+                        mvStore.getMethod("commit"));
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.warn("H2 file compaction is not available with this H2 version: {}", e.toString());
+                return null;
+            }
+        }
+    }
+
+    private final Object mvStore;
+    private final Object fileStore;
+
+    private H2FileCompactor(Object mvStore, Object fileStore) {
+        this.mvStore = mvStore;
+        this.fileStore = fileStore;
+    }
+
+    /**
+     * Compactor for the database behind {@code connection}.
+     *
+     * @return null for in-memory, read-only or non-H2 databases, or when H2's internals have changed
+     */
+    static H2FileCompactor forConnection(Connection connection) throws SQLException {
+        if (API == null || !connection.isWrapperFor(API.jdbcConnection())) {
+            return null;
+        }
+        Object session = invoke(API.getSession(), connection.unwrap(API.jdbcConnection()));
+        if (!API.getDatabase().getDeclaringClass().isInstance(session)) {
+            return null; // client/server connection: the file belongs to another process
+        }
+        Object store = invoke(API.getStore(), invoke(API.getDatabase(), session));
+        Object mvStore = store == null ? null : invoke(API.getMvStore(), store);
+        Object fileStore = mvStore == null ? null : invoke(API.getFileStore(), mvStore);
+        if (!API.randomAccessStore().isInstance(fileStore) || (Boolean) invoke(API.isReadOnly(), fileStore)) {
+            return null; // in-memory or read-only database
+        }
+        return new H2FileCompactor(mvStore, fileStore);
+    }
+
+    long fileSize() {
+        return (Long) invoke(API.size(), fileStore);
+    }
+
+    /* whether H2 reports chunks worth rewriting, e.g. BLOBs of deleted rows it dropped in the background */
+    boolean hasSparseChunks() {
+        return (Integer) invoke(API.getChunksFillRate(), fileStore) < REWRITE_FILL_RATE;
+    }
+
+    /**
+     * Rewrites sparse chunks, then moves live chunks to the front and truncates the file,
+     * step by step until nothing is left to do or {@code deadlineNanos} has passed.
+     *
+     * @return the file size before
+     */
+    long compact(Connection connection, long deadlineNanos) throws SQLException {
+        int retentionTime = (Integer) invoke(API.getRetentionTime(), mvStore);
+        try (Statement statement = connection.createStatement()) {
+            invoke(API.setRetentionTime(), mvStore, 0);
+            statement.execute("CHECKPOINT"); // persist pending changes, so their chunks can be rewritten
+            long before = fileSize();
+            while ((Boolean) invoke(API.compact(), mvStore, REWRITE_FILL_RATE, REWRITE_BYTES_PER_STEP)
+                    && System.nanoTime() < deadlineNanos) {
+                invoke(API.commit(), mvStore);
+            }
+            statement.execute("CHECKPOINT");
+            // one bounded move per step, while the file shrinks
+            long size;
+            do {
+                size = fileSize();
+                invoke(API.compactMoveChunks(), fileStore, 100, (long) REWRITE_BYTES_PER_STEP, mvStore);
+            } while (fileSize() < size && System.nanoTime() < deadlineNanos);
+            return before;
+        } finally {
+            invoke(API.setRetentionTime(), mvStore, retentionTime);
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(method.getName() + " failed", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
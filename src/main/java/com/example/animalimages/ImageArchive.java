@@ -0,0 +1,322 @@
+/**
+ * ================================================================================
+ * File           : ImageArchive.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Bulk export and import of stored images as ZIP archives. An export reads
+ *   the metadata in keyset pages, oldest first, and copies each image from
+ *   the ImageStore straight into the response stream; a
+ *   manifest.ndjson (one metadata line per image) closes the archive. An
+ *   import reads the manifest line by line and hands every image to the
+ *   ImageBatchWriter, which stores them in batched transactions. Memory use
+ *   does not grow with the size of the archive.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🗜️ java.util.zip (ZipOutputStream / ZipFile)
+ * 💾 Spring Data JPA keyset queries (EXPORT_PAGE_SIZE rows per page)
+ * 🌱 Spring TransactionTemplate (one short read-only transaction per page)
+ * 📬 ImageBatchWriter (batched, deduplicating writes)
+ *
+ * Archive layout:
+ * ---------------
+ * images/{id}.{ext}   → Original image bytes (stored uncompressed, entry time = fetch time)
+ * manifest.ndjson     → One ManifestEntry per image, in archive order
+ *
+ * Notes:
+ * ------
+ * - No transaction is open while the response is written: a slow client
+ *   holds neither a pooled connection nor a DatabaseConcurrencyLimiter permit.
+ * - The manifest is spooled to a temporary file while the images are written
+ *   and appended last, so it is complete without a second query.
+ * - Uploads are spooled to a temporary file too: ZipFile needs random access
+ *   to look up each image entry named in the manifest.
+ * - Imports skip images already stored (same type, URL and fetch time) and
+ *   reject entries whose bytes don't match the manifest's SHA-256.
+ * - Images are renumbered on import; ids in the manifest are only entry names.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+@Component
+public class ImageArchive {
+
+    /**
+     * One line of manifest.ndjson: the image's metadata and the name of its ZIP entry.
+     */
+    public record ManifestEntry(String entry, Long id, String animalType, String imageUrl,
+                                LocalDateTime timestamp, Long sizeBytes, String contentHash) {}
+
+    /**
+     * Outcome of an import, returned by POST /api/animals/import.
+     * errors holds the first MAX_REPORTED_ERRORS failure reasons.
+     */
+    public record ImportReport(int imported, int skipped, int failed, List<String> errors, long durationMs) {}
+
+    static final String MANIFEST = "manifest.ndjson";
+    static final int EXPORT_PAGE_SIZE = 200; // rows read per short transaction
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageArchive.class);
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int MAX_IMPORTS_IN_FLIGHT = 256; // submitted to the batch writer, not yet committed
+
+    private final AnimalImageRepository repository;
+    private final ImageStore imageStore;
+    private final ImageBatchWriter batchWriter;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+    private final ImageUrlFactory urlFactory;
+
+    public ImageArchive(
+            AnimalImageRepository repository,
+            ImageStore imageStore,
+            ImageBatchWriter batchWriter,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            ImageUrlFactory urlFactory
+    ) {
+        this.repository = repository;
+        this.imageStore = imageStore;
+        this.batchWriter = batchWriter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.urlFactory = urlFactory;
+    }
+
+    /**
+     * Writes a ZIP archive of the images fetched in [from, to) to {@code out}, oldest first.
+     *
+     * @param type animal type, or null for all types
+     * @param from inclusive lower bound of the fetch timestamp, or null
+     * @param to   exclusive upper bound of the fetch timestamp, or null
+     * @return number of images written
+     */
+    public int export(String type, LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        LocalDateTime lower = from != null ? from : AnimalImageService.EARLIEST;
+        LocalDateTime upper = to != null ? to : AnimalImageService.LATEST;
+        Path manifest = Files.createTempFile("animal-export", ".ndjson");
+        try (BufferedWriter manifestWriter = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            zip.setLevel(Deflater.NO_COMPRESSION); // images are compressed already; don't burn CPU on them
+            int written = 0;
+            LocalDateTime afterTimestamp = lower;
+            long afterId = Long.MIN_VALUE;
+            List<AnimalImageSummary> page;
+            do {
+                page = readPage(type, afterTimestamp, afterId, upper);
+                for (AnimalImageSummary row : page) { // outside the page's transaction
+                    if (writeImage(row, zip, manifestWriter)) {
+                        written++;
+                    }
+                }
+                if (!page.isEmpty()) {
+                    AnimalImageSummary last = page.get(page.size() - 1);
+                    afterTimestamp = last.timestamp();
+                    afterId = last.id();
+                }
+            } while (page.size() == EXPORT_PAGE_SIZE);
+            manifestWriter.flush();
+
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            Files.copy(manifest, zip);
+            zip.closeEntry();
+            zip.finish(); // the response stream itself is closed by the caller
+            logger.info("Exported {} images (type {}, {} → {})", written, type == null ? "all" : type, from, to);
+            return written;
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    /* the next export page, in a read-only transaction that ends before any of it is written */
+    private List<AnimalImageSummary> readPage(String type, LocalDateTime afterTimestamp, long afterId, LocalDateTime to) {
+        Limit limit = Limit.of(EXPORT_PAGE_SIZE);
+        return readOnlyTransaction.execute(status -> type == null
+                ? repository.findExportPage(afterTimestamp, afterId, to, limit)
+                : repository.findExportPageByType(type.toLowerCase(), afterTimestamp, afterId, to, limit));
+    }
+
+    /**
+     * Stores the images of a ZIP archive written by export(). The archive is read from {@code in}
+     * into a temporary file first; its images are then saved through the batch writer.
+     *
+     * @throws IllegalArgumentException if the upload is not a ZIP archive with a manifest
+     */
+    public ImportReport importArchive(InputStream in) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Path upload = Files.createTempFile("animal-import", ".zip");
+        try {
+            Files.copy(in, upload, StandardCopyOption.REPLACE_EXISTING);
+            try (ZipFile zip = new ZipFile(upload.toFile())) {
+                ZipEntry manifest = zip.getEntry(MANIFEST);
+                if (manifest == null) {
+                    throw new IllegalArgumentException("Not an image archive: " + MANIFEST + " is missing");
+                }
+                ImportReport report = importEntries(zip, manifest, start);
+                logger.info("Imported {} images ({} already stored, {} failed) in {} ms",
+                        report.imported(), report.skipped(), report.failed(), report.durationMs());
+                return report;
+            } catch (ZipException e) {
+                throw new IllegalArgumentException("Not a ZIP archive: " + e.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    /* streams the manifest; at most MAX_IMPORTS_IN_FLIGHT images are held in memory at once */
+    private ImportReport importEntries(ZipFile zip, ZipEntry manifest, long start) throws IOException, InterruptedException {
+        AtomicInteger imported = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<String> errors = new ArrayList<>();
+        int skipped = 0;
+        Semaphore inFlight = new Semaphore(MAX_IMPORTS_IN_FLIGHT);
+
+        try (BufferedReader lines = new BufferedReader(
+                new InputStreamReader(zip.getInputStream(manifest), StandardCharsets.UTF_8))) {
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                AnimalImage image;
+                try {
+                    image = readImage(zip, objectMapper.readValue(line, ManifestEntry.class));
+                } catch (IOException | IllegalArgumentException e) {
+                    failed.incrementAndGet();
+                    addError(errors, e.getMessage());
+                    continue;
+                }
+                if (repository.existsByAnimalTypeAndImageUrlAndTimestamp(
+                        image.getAnimalType(), image.getImageUrl(), image.getTimestamp())) {
+                    skipped++;
+                    continue;
+                }
+                inFlight.acquire();
+                batchWriter.submit(image).whenComplete((saved, error) -> {
+                    if (error == null) {
+                        imported.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                        addError(errors, image.getImageUrl() + ": " + error.getMessage());
+                    }
+                    inFlight.release();
+                });
+            }
+        }
+        inFlight.acquire(MAX_IMPORTS_IN_FLIGHT); // every submitted batch has committed (or failed)
+        synchronized (errors) {
+            return new ImportReport(imported.get(), skipped, failed.get(), List.copyOf(errors),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /* the manifest entry's image, with its bytes checked against size and hash */
+    private AnimalImage readImage(ZipFile zip, ManifestEntry entry) throws IOException {
+        if (entry.animalType() == null || !urlFactory.types().contains(entry.animalType())) {
+            throw new IllegalArgumentException(entry.entry() + ": unsupported animal type " + entry.animalType());
+        }
+        if (entry.timestamp() == null || entry.contentHash() == null) {
+            throw new IllegalArgumentException(entry.entry() + ": timestamp and contentHash are required");
+        }
+        ZipEntry data = entry.entry() == null ? null : zip.getEntry(entry.entry());
+        if (data == null) {
+            throw new IllegalArgumentException(entry.entry() + ": entry not found in archive");
+        }
+        byte[] bytes;
+        try (InputStream in = zip.getInputStream(data)) {
+            bytes = in.readAllBytes();
+        }
+        AnimalImage image = new AnimalImage(entry.animalType(), entry.imageUrl(), entry.timestamp(), bytes);
+        if (!image.getContentHash().equals(entry.contentHash())) {
+            throw new IllegalArgumentException(entry.entry() + ": content does not match its SHA-256");
+        }
+        return image;
+    }
+
+    /* one image entry plus its manifest line; images whose bytes are gone (deleted meanwhile) are left out */
+    private boolean writeImage(AnimalImageSummary row, ZipOutputStream zip, BufferedWriter manifest) throws IOException {
+        if (row.contentHash() == null) {
+            return false; // stored before hashing existed: no blob to export
+        }
+        InputStream data;
+        try {
+            data = imageStore.open(row.contentHash(), row.sizeBytes()).getInputStream();
+        } catch (ImageNotFoundException | IOException e) {
+            logger.warn("Skipping image {} in export: {}", row.id(), e.getMessage());
+            return false;
+        }
+        String name = "images/" + row.id() + "." + extensionOf(row.imageUrl());
+        try (data) {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTimeLocal(row.timestamp());
+            zip.putNextEntry(entry);
+            data.transferTo(zip);
+            zip.closeEntry();
+        }
+        manifest.write(objectMapper.writeValueAsString(new ManifestEntry(name, row.id(), row.animalType(),
+                row.imageUrl(), row.timestamp(), row.sizeBytes(), row.contentHash())));
+        manifest.newLine();
+        return true;
+    }
+
+    /* file extension for an entry name, taken from the source URL when it names a known image type */
+    private static String extensionOf(String imageUrl) {
+        if (imageUrl != null) {
+            String path = imageUrl.toLowerCase(Locale.ROOT).replaceAll("[?#].*$", "");
+            for (String extension : List.of("jpg", "jpeg", "png", "gif", "webp")) {
+                if (path.endsWith("." + extension)) {
+                    return extension;
+                }
+            }
+        }
+        return "jpg"; // what the API serves images as
+    }
+
+    private static void addError(List<String> errors, String error) {
+        synchronized (errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/**
+ * ================================================================================
+ * File           : ImageBatchWriter.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Write-behind persistence stage for fetched images. Callers submit images to
+ *   a bounded queue and get a CompletableFuture back. Images are partitioned by
+ *   animal type: each type has its own queue and writer thread (created with
+ *   the first image of the type), so a large bear ingest does not hold up dog
+ *   writes. A writer drains its queue into batches and stores each batch
+ *   (metadata rows plus their content-addressed ImageBlob rows) with saveAll()
+ *   in one transaction, so Hibernate can group the INSERTs into JDBC batches. Payloads that are
+ *   already stored only get their reference count raised; new payloads go to the
+ *   configured ImageStore, which is flushed before the commit. After each commit the
+ *   LatestImageCache and the RandomImageIndex are updated before any caller sees its result,
+ *   and the batch is handed to the ImageEventPublisher for SSE subscribers.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🌱 Spring TransactionTemplate (one transaction per batch)
+ * 💾 Spring Data JPA saveAll() + hibernate.jdbc.batch_size
+ * 📬 ArrayBlockingQueue per animal type (bounded hand-off between downloads and DB writes)
+ * 📈 Micrometer: batch transaction latency, batch sizes, queue depth (total and per type)
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.persist.batch-size       → Max images per transaction
+ * animal.persist.queue-capacity   → Max images waiting to be written, per animal type
+ * animal.persist.linger-ms        → How long a partial batch waits for more images
+ *
+ * Notes:
+ * ------
+ * - Partitions share the tables: H2 locks rows, not tables, so their inserts
+ *   do not block each other, and ids stay unique across types (/api/animals/{id}).
+ * - On startup animal_image_seq is moved past the stored ids. ddl-auto=update
+ *   creates it at 1 on databases whose ids came from the former IDENTITY
+ *   column, and the first batch would collide with them.
+ * - Two partitions storing the same new payload at once both insert its blob
+ *   row; the later commit fails on the primary key and is retried once, then
+ *   only raises the reference count.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class ImageBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBatchWriter.class);
+
+    /* An image waiting in the queue, completed once its batch is committed */
+    private record PendingImage(AnimalImage image, CompletableFuture<AnimalImage> result) {}
+
+    private final AnimalImageRepository repository;
+    private final ImageBlobRepository blobRepository;
+    private final ImageStore imageStore;
+    private final LatestImageCache latestImageCache;
+    private final RandomImageIndex randomIndex;
+    private final ImageEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>(); // by animal type
+    private final int batchSize;
+    private final int queueCapacity;
+    private final long lingerMs;
+    private volatile boolean running = true;
+    private final Timer savedBatches;
+    private final Timer failedBatches;
+    private final DistributionSummary batchSizes;
+
+    public ImageBatchWriter(
+            AnimalImageRepository repository,
+            ImageBlobRepository blobRepository,
+            ImageStore imageStore,
+            LatestImageCache latestImageCache,
+            RandomImageIndex randomIndex,
+            ImageEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${animal.persist.batch-size:50}") int batchSize,
+            @Value("${animal.persist.queue-capacity:256}") int queueCapacity,
+            @Value("${animal.persist.linger-ms:10}") long lingerMs
+    ) {
+        this.repository = repository;
+        this.blobRepository = blobRepository;
+        this.imageStore = imageStore;
+        this.latestImageCache = latestImageCache;
+        this.randomIndex = randomIndex;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.batchSize = Math.max(1, batchSize);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.lingerMs = Math.max(0, lingerMs);
+        this.savedBatches = batchTimer(meterRegistry, "success");
+        this.failedBatches = batchTimer(meterRegistry, "failure");
+        this.batchSizes = DistributionSummary.builder("animal.db.batch.size")
+                .description("Images per write transaction")
+                .register(meterRegistry);
+        Gauge.builder("animal.db.queue.depth", this, ImageBatchWriter::getQueueDepth)
+                .description("Images waiting to be written")
+                .register(meterRegistry);
+        alignIdSequence(jdbcTemplate, repository.findMaxId());
+    }
+
+    /*
+     * The pooled optimizer turns sequence value V into ids V-49..V, so V must be at least
+     * max(id) + 50. Only ever moves the sequence forward; runs before the first batch.
+     */
+    static void alignIdSequence(JdbcTemplate jdbcTemplate, Long maxId) {
+        if (maxId == null) {
+            return;
+        }
+        Long next = jdbcTemplate.queryForObject("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES"
+                + " WHERE SEQUENCE_SCHEMA = SCHEMA() AND UPPER(SEQUENCE_NAME) = ?", Long.class,
+                AnimalImage.ID_SEQUENCE.toUpperCase());
+        long required = maxId + AnimalImage.ID_ALLOCATION_SIZE;
+        if (next == null || next < required) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + AnimalImage.ID_SEQUENCE + " RESTART WITH " + required);
+            logger.info("Moved {} from {} to {}, past the highest stored image id {}",
+                    AnimalImage.ID_SEQUENCE, next, required, maxId);
+        }
+    }
+
+    /**
+     * Queues an image for persistence in the partition of its type. Blocks while that
+     * queue is full, which keeps memory bounded if H2 falls behind the downloads.
+     *
+     * @return future completed with the saved image (id assigned) once its batch commits
+     */
+    public CompletableFuture<AnimalImage> submit(AnimalImage image) {
+        if (!running) {
+            throw new IllegalStateException("Image writer is shut down");
+        }
+        PendingImage pending = new PendingImage(image, new CompletableFuture<>());
+        try {
+            partitions.computeIfAbsent(image.getAnimalType(), Partition::new).queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result().completeExceptionally(e);
+        }
+        return pending.result();
+    }
+
+    /**
+     * Number of images currently waiting to be written, over all partitions.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Partition partition : partitions.values()) {
+            depth += partition.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Images waiting per animal type, for the partitions created so far.
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        partitions.forEach((type, partition) -> depths.put(type, partition.queue.size()));
+        return depths;
+    }
+
+    /* One animal type's queue and the thread writing it */
+    private final class Partition {
+
+        private final BlockingQueue<PendingImage> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Thread writerThread;
+
+        Partition(String animalType) {
+            Gauge.builder("animal.db.partition.queue.depth", queue, BlockingQueue::size)
+                    .description("Images of one animal type waiting to be written")
+                    .tag("type", animalType)
+                    .register(meterRegistry);
+            writerThread = new Thread(this::runWriter, "image-batch-writer-" + animalType);
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+
+        private void runWriter() {
+            List<PendingImage> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    PendingImage first = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    fillBatch(batch);
+                    writeBatch(batch);
+                } catch (InterruptedException e) {
+                    // stop waiting for stragglers, write what we have and drain the rest
+                    running = false;
+                    if (!batch.isEmpty()) {
+                        writeBatch(batch);
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        /* Tops the batch up from the queue, waiting at most lingerMs for stragglers */
+        private void fillBatch(List<PendingImage> batch) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+            while (batch.size() < batchSize) {
+                queue.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0) {
+                    return;
+                }
+                PendingImage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingImage> batch) {
+        List<AnimalImage> images = new ArrayList<>(batch.size());
+        for (PendingImage pending : batch) {
+            images.add(pending.image());
+        }
+        long start = System.nanoTime();
+        try {
+            try {
+                save(images);
+            } catch (DataIntegrityViolationException e) {
+                // another partition committed the same new payload first: count a reference to it instead
+                logger.debug("Retrying batch of {} images after a concurrent blob insert", images.size());
+                for (AnimalImage image : images) {
+                    image.setId(null); // ids assigned by the rolled-back attempt
+                }
+                save(images);
+            }
+            savedBatches.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(images.size());
+            logger.debug("Stored batch of {} images", images.size());
+            latestImageCache.onSaved(images); // write-through, before callers see the result
+            randomIndex.onSaved(images);
+            eventPublisher.onSaved(images); // SSE subscribers, sent from another thread
+            for (PendingImage pending : batch) {
+                pending.result().complete(pending.image());
+            }
+        } catch (RuntimeException e) {
+            failedBatches.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            logger.error("Failed to store batch of {} images", images.size(), e);
+            for (PendingImage pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    private void save(List<AnimalImage> images) {
+        transactionTemplate.executeWithoutResult(status -> {
+            storeBlobs(images);
+            repository.saveAll(images);
+        });
+    }
+
+    private static Timer batchTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("animal.db.batch.save")
+                .description("One write transaction: blobs, ImageStore flush and metadata rows")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /* Stores each distinct payload once and counts one reference per image using it */
+    private void storeBlobs(List<AnimalImage> images) {
+        Map<String, Long> references = new LinkedHashMap<>();
+        Map<String, byte[]> payloads = new HashMap<>();
+        for (AnimalImage image : images) {
+            references.merge(image.getContentHash(), 1L, Long::sum);
+            payloads.putIfAbsent(image.getContentHash(), image.getImageData());
+        }
+
+        Set<String> existing = new HashSet<>(blobRepository.findExistingHashes(references.keySet()));
+        List<ImageBlob> newBlobs = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : references.entrySet()) {
+            String hash = entry.getKey();
+            // a concurrent delete may have dropped the blob since the lookup: store it again
+            if (!existing.contains(hash) || blobRepository.incrementRefCount(hash, entry.getValue()) == 0) {
+                newBlobs.add(imageStore.store(hash, payloads.get(hash), entry.getValue()));
+            }
+        }
+        imageStore.flush(); // bytes must be durable before their registry rows commit
+        blobRepository.saveAll(newBlobs);
+    }
+
+    /**
+     * Stops accepting new images and flushes the queues before the context closes.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (Partition partition : partitions.values()) {
+            partition.writerThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * ================================================================================
+ * File           : ImageBlob.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 3
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   JPA Entity holding image bytes in a content-addressed table. Each distinct
+ *   payload is stored once, keyed by its SHA-256 hash, and reference counted:
+ *   every AnimalImage row with the same contentHash shares the same blob, and
+ *   the blob is deleted when the last referencing image is deleted.
+ *   With the filesystem ImageStore the row is only the registry entry and
+ *   data stays null; the bytes live in the segment files.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 📦 Jakarta Persistence (JPA)
+ * 🧠 @Entity, @Id, @Lob, Spring Data Persistable
+ *
+ * Key Fields:
+ * -----------
+ * String hash            → SHA-256 of the bytes (same as AnimalImage.contentHash)
+ * Long sizeBytes         → Size of the bytes
+ * long refCount          → Number of AnimalImage rows referencing this blob
+ * byte[] data            → Raw binary image stored as a BLOB (null when stored on disk)
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+@Entity
+public class ImageBlob implements Persistable<String> {
+
+    @Id
+    @Column(length = 64)
+    private String hash; // SHA-256 of data, never generated.
+
+    private Long sizeBytes; // Size of data, so stats never read the BLOB.
+
+    private long refCount; // AnimalImage rows pointing at this blob.
+
+    @Lob // Indicates that this field should be persisted as a large object.
+    @Column(columnDefinition = "BLOB") // Specifies the database column type as BLOB (Binary Large Object) for storing binary data.
+    private byte[] data; // The actual binary data of the animal image.
+
+    @Transient
+    private boolean isNew = true; // Lets saveAll() persist directly instead of merging (SELECT first) an assigned id.
+
+    /**
+     * Default constructor required by JPA.
+     */
+    protected ImageBlob() {}
+
+    /**
+     * @param hash     SHA-256 of the data (see ContentHash).
+     * @param data     The binary data of the image.
+     * @param refCount Number of images referencing it when first stored.
+     */
+    public ImageBlob(String hash, byte[] data, long refCount) {
+        this.hash = hash;
+        this.data = data;
+        this.sizeBytes = (long) data.length;
+        this.refCount = refCount;
+    }
+
+    /**
+     * @param hash      SHA-256 of the data (see ContentHash).
+     * @param data      The binary data, or null when an ImageStore keeps it elsewhere.
+     * @param sizeBytes Size of the data.
+     * @param refCount  Number of images referencing it when first stored.
+     */
+    public ImageBlob(String hash, byte[] data, Long sizeBytes, long refCount) {
+        this.hash = hash;
+        this.data = data;
+        this.sizeBytes = sizeBytes;
+        this.refCount = refCount;
+    }
+
+    @Override
+    public String getId() { return hash; }
+
+    public String getHash() { return hash; }
+
+    public Long getSizeBytes() { return sizeBytes; }
+
+    public long getRefCount() { return refCount; }
+
+    public byte[] getData() { return data; }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+}
@@ -0,0 +1,71 @@
+/**
+ * ================================================================================
+ * File           : ImageBlobRepository.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 2
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Spring Data JPA repository for ImageBlob, the content-addressed table
+ *   holding image bytes. Reference counts are changed with bulk UPDATE/DELETE
+ *   queries, so the BLOB column is never loaded just to adjust a counter.
+ *
+ * ================================================================================
+ * Key Methods:
+ * ------------
+ * findExistingHashes(hashes)          → Which of the given hashes are already stored
+ * incrementRefCount(hash, by)         → Adds references to an existing blob
+ * decrementRefCount(hash, by)         → Removes references
+ * deleteIfUnreferenced(hash)          → Deletes the blob once no image uses it
+ * sumSizeBytes()                      → Physical bytes stored (dedup-ratio metric)
+ * findHashesWithData(pageable)        → Blobs whose bytes are still in H2 (migration)
+ * clearData(hashes)                   → Drops the H2 copy once moved to another store
+ *
+ * Inherits:
+ * ---------
+ * JpaRepository<ImageBlob, String>
+ *   → Provides standard methods like saveAll(), findById(), count(), etc.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+
+    @Query("select b.hash from ImageBlob b where b.hash in :hashes")
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    @Modifying
+    @Query("update ImageBlob b set b.refCount = b.refCount + :by where b.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash, @Param("by") long by);
+
+    @Modifying
+    @Query("update ImageBlob b set b.refCount = b.refCount - :by where b.hash = :hash")
+    int decrementRefCount(@Param("hash") String hash, @Param("by") long by);
+
+    @Modifying
+    @Query("delete from ImageBlob b where b.hash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    @Query("select coalesce(sum(b.sizeBytes), 0) from ImageBlob b")
+    long sumSizeBytes();
+
+    @Query("select b.hash from ImageBlob b where b.data is not null order by b.hash")
+    List<String> findHashesWithData(Pageable pageable);
+
+    @Modifying
+    @Query("update ImageBlob b set b.data = null where b.hash in :hashes")
+    int clearData(@Param("hashes") Collection<String> hashes);
+}
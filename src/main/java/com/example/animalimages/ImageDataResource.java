@@ -0,0 +1,228 @@
+/**
+ * ================================================================================
+ * File           : ImageDataResource.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Spring Resource that streams an image BLOB from H2 instead of loading it
+ *   into a byte[]. The stream reads the BLOB in chunks of CHUNK_BYTES, each
+ *   with its own short database call, so a slow client never holds a pooled
+ *   connection (or a database permit) while it reads. Every getInputStream()
+ *   call starts a new stream, so Spring MVC can serve full responses as well
+ *   as HTTP Range requests (206 Partial Content, one stream per region; skip()
+ *   moves the read position without fetching the skipped bytes).
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🌱 Spring Core Resource abstraction, DataSourceUtils
+ * 💾 Plain JDBC (java.sql.Blob#getBytes)
+ *
+ * Notes:
+ * ------
+ * - Chunks are read with DataSourceUtils: inside a transaction (ZIP export)
+ *   they use its connection, otherwise a pooled one that is returned after
+ *   each chunk.
+ * - A blob deleted while it is streamed ends the stream with an IOException.
+ *   Rows are content-addressed, so the bytes never change under a reader.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class ImageDataResource extends AbstractResource {
+
+    static final int CHUNK_BYTES = 256 * 1024; // bytes read per database call
+
+    private static final String SELECT_DATA = "SELECT data FROM image_blob WHERE hash = ?";
+    private static final String SELECT_LENGTH = "SELECT OCTET_LENGTH(data) FROM image_blob WHERE hash = ?";
+
+    private final DataSource dataSource;
+    private final String hash;
+    private final Long knownLength; // AnimalImage.sizeBytes, null for rows stored before it existed
+
+    public ImageDataResource(DataSource dataSource, String hash, Long knownLength) {
+        this.dataSource = dataSource;
+        this.hash = hash;
+        this.knownLength = knownLength;
+    }
+
+    @Override
+    public String getDescription() {
+        return "image blob [hash=" + hash + "]";
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        if (knownLength != null) {
+            return knownLength;
+        }
+        Connection connection = connection();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_LENGTH)) {
+            statement.setString(1, hash);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    throw new ImageNotFoundException("No image data found for hash: " + hash);
+                }
+                return rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read size of " + getDescription(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * @throws ImageNotFoundException when no bytes are stored for the hash (checked before
+     *                                anything is returned, so no response has been started)
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        ChunkedBlobInputStream stream = new ChunkedBlobInputStream();
+        stream.fill(); // first chunk now: a missing blob fails before the response is committed
+        return stream;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof ImageDataResource that && hash.equals(that.hash));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    private Connection connection() throws IOException {
+        try {
+            return DataSourceUtils.getConnection(dataSource);
+        } catch (RuntimeException e) { // CannotGetJdbcConnectionException: pool or permit timeout
+            throw new IOException("No database connection for " + getDescription(), e);
+        }
+    }
+
+    /*
+     * Reads up to CHUNK_BYTES starting at position (0-based), holding the connection for this
+     * call only. Returns null when the blob row is gone.
+     */
+    private byte[] readChunk(long position) throws IOException {
+        Connection connection = connection();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_DATA)) {
+            statement.setString(1, hash);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Blob blob = rs.getBlob(1);
+                if (blob == null) {
+                    return null; // registry row whose bytes live in another store
+                }
+                try {
+                    long remaining = blob.length() - position;
+                    return remaining <= 0
+                            ? new byte[0]
+                            : blob.getBytes(position + 1, (int) Math.min(CHUNK_BYTES, remaining));
+                } finally {
+                    blob.free();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read " + getDescription() + " at " + position, e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /* Refills its buffer one chunk at a time; no database resources are held between reads */
+    private final class ChunkedBlobInputStream extends InputStream {
+        private byte[] chunk = new byte[0];
+        private int offset;
+        private long position; // blob offset of the next chunk
+        private boolean end;
+
+        /* returns false at the end of the blob */
+        boolean fill() throws IOException {
+            if (end) {
+                return false;
+            }
+            byte[] next = readChunk(position);
+            if (next == null) {
+                if (position == 0) {
+                    throw new ImageNotFoundException("No image data found for hash: " + hash);
+                }
+                throw new IOException(getDescription() + " was deleted while being streamed");
+            }
+            chunk = next;
+            offset = 0;
+            position += next.length;
+            end = next.length < CHUNK_BYTES;
+            return next.length > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (offset == chunk.length && !fill()) {
+                return -1;
+            }
+            return chunk[offset++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (offset == chunk.length && !fill()) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.length - offset);
+            System.arraycopy(chunk, offset, buffer, off, count);
+            offset += count;
+            return count;
+        }
+
+        /* Range requests skip to their start: move the position, don't fetch the bytes */
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            int buffered = chunk.length - offset;
+            if (n <= buffered) {
+                offset += (int) n;
+                return n;
+            }
+            long skipped = buffered;
+            offset = chunk.length;
+            if (!end) {
+                long length = knownLength != null ? knownLength : contentLength();
+                long target = Math.min(length, position + (n - skipped));
+                skipped += target - position;
+                position = target;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - offset;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * ================================================================================
+ * File           : ImageDownloader.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Concurrent download stage used by AnimalImageService. Downloads a batch of
+ *   image URLs in parallel on virtual threads through one shared HttpClient
+ *   (connection reuse), bounded by a per-request and a global concurrency limit.
+ *   Results are returned in the same order as the requested URLs.
+ *   Every attempt also goes through UpstreamGuard (per-host adaptive limit and
+ *   circuit breaker); failed attempts are retried with jittered backoff while
+ *   the download's time budget lasts.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22 (virtual threads)
+ * 🌐 java.net.http.HttpClient
+ * 🚦 java.util.concurrent.Semaphore for concurrency limits
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.fetch.connect-timeout-ms            → TCP connect timeout per host
+ * animal.fetch.read-timeout-ms               → Max time for one full download
+ * animal.fetch.max-concurrency-per-request   → Parallel downloads per fetch call
+ * animal.fetch.max-concurrency               → Parallel downloads across all calls
+ * animal.fetch.host.* / breaker.* / retry.*  → Per-host limits and retries (see UpstreamGuard)
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+@Component
+public class ImageDownloader {
+
+    /**
+     * Outcome of one download: either {@code data} or {@code error} is set.
+     * {@code elapsedNanos} covers all attempts, host permit waits and backoff.
+     */
+    public record Download(String url, byte[] data, Exception error, long elapsedNanos) {
+        public boolean isSuccess() { return error == null; }
+    }
+
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final int maxConcurrencyPerRequest;
+    private final Semaphore globalPermits; // shared by every fetch call in the JVM
+    private final UpstreamGuard upstreamGuard;
+
+    /* Non-2xx answer from an upstream */
+    public static class UpstreamStatusException extends IOException {
+        private final int status;
+
+        public UpstreamStatusException(int status, String url) {
+            super("Unexpected HTTP status " + status + " from " + url);
+            this.status = status;
+        }
+
+        /* 5xx and 429 mean the host is struggling: worth a retry and counted against its health */
+        boolean isRetryable() {
+            return status >= 500 || status == 429;
+        }
+    }
+
+    public ImageDownloader(
+            @Value("${animal.fetch.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${animal.fetch.read-timeout-ms:15000}") long readTimeoutMs,
+            @Value("${animal.fetch.max-concurrency-per-request:8}") int maxConcurrencyPerRequest,
+            @Value("${animal.fetch.max-concurrency:32}") int maxConcurrency,
+            UpstreamGuard upstreamGuard
+    ) {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL) // same behaviour as URL.openStream()
+                .build();
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.maxConcurrencyPerRequest = Math.max(1, maxConcurrencyPerRequest);
+        this.globalPermits = new Semaphore(Math.max(1, maxConcurrency), true);
+        this.upstreamGuard = upstreamGuard;
+    }
+
+    /**
+     * Downloads all URLs concurrently and returns one result per URL, in input order.
+     * Failures are reported per entry and never abort the rest of the batch.
+     */
+    public List<Download> downloadAll(List<String> urls) {
+        List<Download> results = new ArrayList<>(urls.size());
+        downloadAll(urls, results::add);
+        return results;
+    }
+
+    /**
+     * Downloads all URLs concurrently and hands each result to {@code onResult} in input
+     * order, as soon as it and every result before it are available. This lets the caller
+     * start persisting early images while later ones are still downloading. Downloads run at
+     * most two windows of the per-request limit ahead of {@code onResult}, so a slow consumer
+     * holds back the downloads instead of collecting the rest of the batch in memory.
+     */
+    public void downloadAll(List<String> urls, Consumer<Download> onResult) {
+        Semaphore requestPermits = new Semaphore(maxConcurrencyPerRequest);
+        int readAhead = 2 * maxConcurrencyPerRequest; // running or finished, not yet handed to onResult
+        List<Future<Download>> futures = new ArrayList<>(urls.size());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < urls.size(); i++) {
+                while (futures.size() < urls.size() && futures.size() - i < readAhead
+                        && !Thread.currentThread().isInterrupted()) {
+                    String url = urls.get(futures.size());
+                    futures.add(executor.submit(() -> downloadLimited(url, requestPermits)));
+                }
+                if (i >= futures.size()) { // interrupted: the rest is never started
+                    onResult.accept(new Download(urls.get(i), null, new InterruptedException("Download cancelled"), 0));
+                    continue;
+                }
+                onResult.accept(resultOf(urls.get(i), futures.get(i)));
+                futures.set(i, null); // handed on: drop the bytes
+            }
+        } // close() waits for every task; each one is bounded by readTimeout
+    }
+
+    /**
+     * Downloads a single URL, honouring the global limit only.
+     */
+    public Download download(String url) {
+        return downloadLimited(url, null);
+    }
+
+    private Download downloadLimited(String url, Semaphore requestPermits) {
+        boolean requestAcquired = false;
+        long start = 0; // set after the per-request permit: elapsed time is upstream time only
+        try {
+            if (requestPermits != null) {
+                requestPermits.acquire();
+                requestAcquired = true;
+            }
+            start = System.nanoTime();
+            return new Download(url, fetchWithRetries(url), null, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Download(url, null, e, start == 0 ? 0 : System.nanoTime() - start);
+        } catch (Exception e) {
+            return new Download(url, null, e, start == 0 ? 0 : System.nanoTime() - start);
+        } finally {
+            if (requestAcquired) requestPermits.release();
+        }
+    }
+
+    /* retries transient failures with jittered backoff until attempts or the time budget run out */
+    private byte[] fetchWithRetries(String url) throws IOException, InterruptedException, TimeoutException {
+        URI uri = URI.create(url);
+        long deadline = upstreamGuard.deadlineFromNow();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fetchGuarded(uri, url, deadline);
+            } catch (UpstreamGuard.UpstreamUnavailableException e) {
+                throw e; // circuit open: fail fast, retrying would only add load
+            } catch (IOException | TimeoutException e) {
+                boolean retryable = !(e instanceof UpstreamStatusException status) || status.isRetryable();
+                long backoffMs = upstreamGuard.backoffMillis(attempt);
+                if (!retryable || attempt >= upstreamGuard.getMaxAttempts()
+                        || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs) >= deadline) {
+                    throw e;
+                }
+                Thread.sleep(backoffMs);
+            }
+        }
+    }
+
+    /* one attempt, holding a permit of the host and of the global limit */
+    private byte[] fetchGuarded(URI uri, String url, long deadline) throws IOException, InterruptedException, TimeoutException {
+        UpstreamGuard.Permit permit = upstreamGuard.acquire(uri, deadline);
+        boolean globalAcquired = false;
+        try {
+            globalAcquired = globalPermits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } finally {
+            if (!globalAcquired) upstreamGuard.release(permit, UpstreamGuard.Outcome.NEUTRAL); // local wait, not the host's fault
+        }
+        if (!globalAcquired) {
+            throw new TimeoutException("No download slot free within the retry budget: " + url);
+        }
+        // the host's latency clock starts now: time queued behind the global limit is not congestion upstream
+        permit = permit.restart();
+        UpstreamGuard.Outcome outcome = UpstreamGuard.Outcome.NEUTRAL;
+        try {
+            byte[] data = fetch(uri, url, Duration.ofNanos(Math.max(1, Math.min(readTimeout.toNanos(), deadline - System.nanoTime()))));
+            outcome = UpstreamGuard.Outcome.SUCCESS;
+            return data;
+        } catch (UpstreamStatusException e) {
+            outcome = e.isRetryable() ? UpstreamGuard.Outcome.FAILURE : UpstreamGuard.Outcome.SUCCESS;
+            throw e;
+        } catch (IOException | TimeoutException e) {
+            outcome = UpstreamGuard.Outcome.FAILURE;
+            throw e;
+        } finally {
+            globalPermits.release();
+            upstreamGuard.release(permit, outcome);
+        }
+    }
+
+    private byte[] fetch(URI uri, String url, Duration timeout) throws IOException, InterruptedException, TimeoutException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout) // bounds the wait for response headers
+                .GET()
+                .build();
+        CompletableFuture<HttpResponse<byte[]>> pending =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        HttpResponse<byte[]> response;
+        try {
+            // bounds the whole exchange, body included, so a slow host cannot stall us
+            response = pending.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            pending.cancel(true);
+            throw new TimeoutException("Download exceeded " + timeout.toMillis() + " ms: " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(cause);
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new UpstreamStatusException(response.statusCode(), url);
+        }
+        return response.body();
+    }
+
+    private static Download resultOf(String url, Future<Download> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Download(url, null, e, 0);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            return new Download(url, null, cause instanceof Exception ex ? ex : new RuntimeException(cause), 0);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/**
+ * ================================================================================
+ * File           : ImageEventPublisher.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Server-Sent Events for newly stored images (GET /api/animals/stream), so
+ *   clients stop polling /last. ImageBatchWriter hands every committed batch
+ *   to one dispatcher thread, which encodes each image's metadata event once
+ *   and offers the same frame to every matching subscriber.
+ *
+ *   Subscribers cost no thread while idle: each has a small queue that one of
+ *   a few shared writer threads drains only while there is something to write.
+ *   A subscriber whose queue is full is disconnected (default) or misses the
+ *   event (slow-consumer=drop), so one slow client never holds up the others.
+ *
+ *   Event ids are a sequence in publish order (image ids are not: writer
+ *   partitions of different animal types commit out of id order), continuing
+ *   from the highest image id at startup. The last replay-size events are kept, so a reconnecting EventSource (Last-Event-ID header) gets
+ *   what it missed; when its id is older than what is kept it gets a "reset"
+ *   event and should reload /last instead.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🌱 Spring MVC SseEmitter (async requests, no thread per open stream)
+ * 📬 ConcurrentLinkedQueue per subscriber, ArrayDeque replay window
+ * 🧵 Fixed pool of writer threads shared by all subscribers
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.stream.buffer-size     → Events queued per subscriber before slow-consumer applies
+ * animal.stream.slow-consumer   → disconnect (client resumes with Last-Event-ID) | drop
+ * animal.stream.replay-size     → Recent events kept for Last-Event-ID resume
+ * animal.stream.writer-threads  → Threads writing to subscribers (0 = number of cores)
+ * animal.stream.heartbeat-ms    → Comment line sent to idle streams (keeps proxies open, finds dead clients)
+ * animal.stream.timeout-ms      → Stream lifetime; EventSource reconnects and resumes afterwards
+ *
+ * Notes:
+ * ------
+ * - Appending to the replay window and offering to subscribers happen under
+ *   one lock that subscribe() also takes, so a new subscriber gets replayed
+ *   and live events in id order without gaps.
+ * - Writers are platform threads: SseEmitter.send() is synchronized, so a
+ *   virtual thread blocked on a stalled client's socket would pin its carrier.
+ *   A stalled write holds its writer until Tomcat's write timeout at most.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class ImageEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageEventPublisher.class);
+
+    static final String IMAGE_EVENT = "image";
+    static final String RESET_EVENT = "reset";
+    private static final long RECONNECT_MS = 3000;
+
+    /**
+     * Stream counters returned by GET /api/animals/stream/stats and published as metrics.
+     */
+    public record Stats(int subscribers, long published, long sent, long dropped,
+                        long disconnected, long resets) {}
+
+    /* one encoded SSE frame, shared by every subscriber it is sent to */
+    private record Frame(long id, String animalType, Set<ResponseBodyEmitter.DataWithMediaType> data) {}
+
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final boolean dropSlowEvents;
+    private final int replaySize;
+    private final long timeoutMs;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ArrayDeque<Frame> replay = new ArrayDeque<>(); // guarded by this
+    private long replayFloor; // guarded by this; events with id <= floor may no longer be replayed
+    private long eventSequence; // dispatcher thread only
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService heartbeat;
+    private final ExecutorService writers;
+    private static final Frame COMPLETE = new Frame(0, null, Set.of()); // ends the stream after earlier writes
+    private final Frame retryFrame;
+    private final Frame heartbeatFrame;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+
+    public ImageEventPublisher(
+            AnimalImageRepository repository,
+            ObjectMapper objectMapper,
+            @Value("${animal.stream.buffer-size:64}") int bufferSize,
+            @Value("${animal.stream.slow-consumer:disconnect}") String slowConsumer,
+            @Value("${animal.stream.replay-size:1000}") int replaySize,
+            @Value("${animal.stream.writer-threads:0}") int writerThreads,
+            @Value("${animal.stream.heartbeat-ms:30000}") long heartbeatMs,
+            @Value("${animal.stream.timeout-ms:1800000}") long timeoutMs
+    ) {
+        this.objectMapper = objectMapper;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.dropSlowEvents = switch (slowConsumer.toLowerCase()) {
+            case "drop" -> true;
+            case "disconnect" -> false;
+            default -> throw new IllegalArgumentException("animal.stream.slow-consumer must be disconnect or drop");
+        };
+        this.replaySize = Math.max(0, replaySize);
+        this.timeoutMs = timeoutMs;
+        // nothing stored before this start can be replayed
+        Long maxId = repository.findMaxId();
+        this.replayFloor = maxId == null ? 0 : maxId;
+        this.eventSequence = replayFloor; // never above the max image id, so ids of an earlier run are at or below the floor
+        this.retryFrame = new Frame(0, null, SseEmitter.event().reconnectTime(RECONNECT_MS).build());
+        this.heartbeatFrame = new Frame(0, null, SseEmitter.event().comment("keepalive").build());
+        this.dispatcher = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "image-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger writerNumber = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(
+                writerThreads > 0 ? writerThreads : Runtime.getRuntime().availableProcessors(), task -> {
+                    Thread thread = new Thread(task, "image-stream-" + writerNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "image-events-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatMs > 0) {
+            heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Opens a stream of images of the given type (all types when null). lastEventId is the
+     * Last-Event-ID of a reconnecting client: newer kept events are sent first.
+     */
+    public SseEmitter subscribe(String animalType, Long lastEventId) {
+        return subscribe(animalType, lastEventId, new SseEmitter(timeoutMs));
+    }
+
+    SseEmitter subscribe(String animalType, Long lastEventId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(animalType, emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        synchronized (this) {
+            subscriber.offer(retryFrame, true); // first write commits the response headers
+            if (lastEventId != null) {
+                if (lastEventId < replayFloor) {
+                    resets.increment();
+                    subscriber.offer(new Frame(0, null, SseEmitter.event().name(RESET_EVENT).data("{}").build()), true);
+                }
+                for (Frame frame : replay) {
+                    if (frame.id() > lastEventId && subscriber.wants(frame)) {
+                        subscriber.offer(frame, true);
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    /**
+     * Called by ImageBatchWriter after a commit; returns at once, the events are sent by the
+     * dispatcher thread.
+     */
+    public void onSaved(List<AnimalImage> images) {
+        if (images.isEmpty()) {
+            return;
+        }
+        List<AnimalImageSummary> summaries = images.stream().map(AnimalImageSummary::of).toList();
+        dispatcher.execute(() -> publish(summaries));
+    }
+
+    public Stats getStats() {
+        return new Stats(subscribers.size(), published.sum(), sent.sum(), dropped.sum(),
+                disconnected.sum(), resets.sum());
+    }
+
+    private void publish(List<AnimalImageSummary> images) {
+        List<Frame> frames = new ArrayList<>(images.size());
+        for (AnimalImageSummary image : images) {
+            try {
+                long eventId = ++eventSequence;
+                frames.add(new Frame(eventId, image.animalType(), SseEmitter.event()
+                        .id(String.valueOf(eventId))
+                        .name(IMAGE_EVENT)
+                        .data(objectMapper.writeValueAsString(image))
+                        .build()));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        synchronized (this) {
+            for (Frame frame : frames) {
+                replay.addLast(frame);
+                while (replay.size() > replaySize) {
+                    replayFloor = replay.removeFirst().id();
+                }
+                if (replaySize == 0) {
+                    replayFloor = frame.id();
+                }
+                published.increment();
+                for (Subscriber subscriber : subscribers) {
+                    if (subscriber.wants(frame)) {
+                        subscriber.offer(frame, false);
+                    }
+                }
+            }
+        }
+    }
+
+    /* idle streams only; busy ones already write */
+    private void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.queued.get() == 0) {
+                subscriber.offer(heartbeatFrame, true);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        writers.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    /* one open stream: its frames are written in order by at most one writer at a time */
+    private final class Subscriber {
+
+        private final String animalType;
+        private final SseEmitter emitter;
+        private final Queue<Frame> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private volatile boolean closed;
+        private long lastSentId; // written by the current writer only
+
+        Subscriber(String animalType, SseEmitter emitter) {
+            this.animalType = animalType;
+            this.emitter = emitter;
+        }
+
+        boolean wants(Frame frame) {
+            return animalType == null || animalType.equals(frame.animalType());
+        }
+
+        /* control frames (retry, reset, replay, heartbeat) are not limited by the buffer */
+        void offer(Frame frame, boolean unbounded) {
+            if (closed && frame != COMPLETE) {
+                return;
+            }
+            if (!unbounded && queued.get() >= bufferSize) {
+                if (dropSlowEvents) {
+                    dropped.increment();
+                } else {
+                    disconnect();
+                }
+                return;
+            }
+            queued.incrementAndGet();
+            queue.add(frame);
+            if (writing.compareAndSet(false, true)) {
+                writers.execute(this::write);
+            }
+        }
+
+        private void write() {
+            while (true) {
+                Frame frame;
+                while ((frame = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    if (frame == COMPLETE) {
+                        emitter.complete();
+                        continue;
+                    }
+                    if (closed || (frame.id() > 0 && frame.id() <= lastSentId)) {
+                        continue;
+                    }
+                    try {
+                        emitter.send(frame.data());
+                    } catch (IOException | IllegalStateException e) {
+                        close(); // client gone or stream already completed; Spring ends the request
+                        continue;
+                    }
+                    if (frame.id() > 0) {
+                        lastSentId = frame.id();
+                        sent.increment();
+                    }
+                }
+                writing.set(false);
+                // an offer between the last poll and the reset above found writing == true
+                if (queue.isEmpty() || !writing.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+
+        /* complete() would wait for a write in progress, so the writer does it after that write */
+        private void disconnect() {
+            if (closed) {
+                return;
+            }
+            close();
+            disconnected.increment();
+            logger.debug("Disconnecting slow image stream subscriber ({} events queued)", queued.get());
+            offer(COMPLETE, true); // EventSource reconnects with Last-Event-ID
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * ================================================================================
+ * File           : ImagePrefetchPool.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Optional warm pool of already-downloaded images per animal type. A
+ *   background refiller keeps each type's bounded buffer topped up at a fixed
+ *   rate; fetch requests take images from the pool and only download live
+ *   what the pool cannot cover, so they don't pay the upstream latency inline.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * ⏱️ ScheduledExecutorService (refill ticks) + virtual threads (downloads)
+ * 📬 ArrayBlockingQueue per type (bounded buffer)
+ * 📊 LongAdder hit/miss counters
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.prefetch.enabled             → Turns the pool on (off by default)
+ * animal.prefetch.pool-size           → Images kept ready per type
+ * animal.prefetch.refill-per-second   → Max downloads started per second (all types)
+ *
+ * Notes:
+ * ------
+ * - Each refill tick tops up the emptiest type first.
+ * - Hit rate counts requested images served from the pool.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class ImagePrefetchPool {
+
+    /**
+     * Pool counters returned by GET /api/animals/prefetch/stats.
+     */
+    public record Stats(boolean enabled, int poolSize, Map<String, Integer> depth, long hits, long misses, double hitRate) {}
+
+    private static final Logger logger = LoggerFactory.getLogger(ImagePrefetchPool.class);
+
+    private final ImageDownloader downloader;
+    private final ImageUrlFactory urlFactory;
+    private final boolean enabled;
+    private final int poolSize;
+    private final Map<String, BlockingQueue<ImageDownloader.Download>> pools = new LinkedHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new LinkedHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final ScheduledExecutorService refiller;
+
+    public ImagePrefetchPool(
+            ImageDownloader downloader,
+            ImageUrlFactory urlFactory,
+            @Value("${animal.prefetch.enabled:false}") boolean enabled,
+            @Value("${animal.prefetch.pool-size:8}") int poolSize,
+            @Value("${animal.prefetch.refill-per-second:4}") double refillPerSecond
+    ) {
+        this.downloader = downloader;
+        this.urlFactory = urlFactory;
+        this.enabled = enabled;
+        this.poolSize = Math.max(1, poolSize);
+        for (String type : urlFactory.types()) {
+            pools.put(type, new ArrayBlockingQueue<>(this.poolSize));
+            inFlight.put(type, new AtomicInteger());
+        }
+        if (enabled) {
+            long periodMicros = (long) (1_000_000 / Math.max(0.01, refillPerSecond));
+            refiller = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "image-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refiller.scheduleAtFixedRate(this::refillOne, 0, periodMicros, TimeUnit.MICROSECONDS);
+            logger.info("Prefetch pool enabled: {} images per type, {} downloads/s", this.poolSize, refillPerSecond);
+        } else {
+            refiller = null;
+        }
+    }
+
+    /**
+     * Takes up to {@code count} ready images of the given type without waiting.
+     *
+     * @return the images taken (possibly none); the caller downloads the rest live
+     */
+    public List<ImageDownloader.Download> take(String animalType, int count) {
+        BlockingQueue<ImageDownloader.Download> pool = pools.get(animalType.toLowerCase());
+        if (!enabled || pool == null || count <= 0) {
+            return List.of();
+        }
+        List<ImageDownloader.Download> taken = new ArrayList<>(Math.min(count, poolSize));
+        pool.drainTo(taken, count);
+        hits.add(taken.size());
+        misses.add(count - taken.size());
+        return taken;
+    }
+
+    public Stats getStats() {
+        Map<String, Integer> depth = new LinkedHashMap<>();
+        pools.forEach((type, pool) -> depth.put(type, pool.size()));
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        return new Stats(enabled, poolSize, depth, hitCount, missCount, requests == 0 ? 0.0 : (double) hitCount / requests);
+    }
+
+    /* one refill tick: starts a download for the type furthest below its target, if any */
+    private void refillOne() {
+        String emptiest = null;
+        int largestGap = 0;
+        for (Map.Entry<String, BlockingQueue<ImageDownloader.Download>> entry : pools.entrySet()) {
+            int gap = poolSize - entry.getValue().size() - inFlight.get(entry.getKey()).get();
+            if (gap > largestGap) {
+                largestGap = gap;
+                emptiest = entry.getKey();
+            }
+        }
+        if (emptiest == null) {
+            return;
+        }
+        String type = emptiest;
+        AtomicInteger pending = inFlight.get(type);
+        pending.incrementAndGet();
+        Thread.ofVirtual().name("image-prefetch-" + type).start(() -> {
+            try {
+                ImageDownloader.Download download = downloader.download(urlFactory.urlsFor(type, 1).get(0));
+                if (download.isSuccess()) {
+                    pools.get(type).offer(download); // dropped if a concurrent refill filled the slot
+                } else {
+                    logger.warn("Prefetch of {} image failed: {}", type, download.error().toString());
+                }
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refiller != null) {
+            refiller.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,465 @@
+/**
+ * ================================================================================
+ * File           : ImageRenditions.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Resized, re-encoded JPEG renditions of stored images (e.g. the 300px wide
+ *   image the UI shows) for /api/animals/{id}/image?w=&h=&q=. Renditions are
+ *   kept as files in a directory bounded by total size (LRU eviction), so a
+ *   repeated request is a file read instead of a decode/resize/encode, also
+ *   after a restart. Freshly saved images get their common sizes rendered
+ *   ahead of time on a small CPU-bound worker pool.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🖼️ javax.imageio (subsampled decode, JPEG quality control), Java2D resizing
+ * 🗃️ LinkedHashMap in access order (LRU) guarded by a ReentrantLock
+ * 🧵 ThreadPoolExecutor (CPU-sized workers, bounded queue, DiscardPolicy)
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.renditions.directory        → Where rendition files are kept
+ * animal.renditions.max-bytes        → Total size of all renditions before LRU eviction
+ * animal.renditions.precompute       → Sizes rendered for every new image, e.g. 300x0,600x0
+ * animal.renditions.workers          → Precompute threads (0 = half the CPU cores)
+ * animal.renditions.queue-capacity   → Queued precompute tasks; more are dropped
+ *
+ * Notes:
+ * ------
+ * - Keys are content hash + size + quality, so duplicate images share renditions.
+ * - Images are only scaled down; a 0 width or height keeps the aspect ratio.
+ * - Precomputing is best effort: a full queue drops the task, and the
+ *   rendition is then made on its first request instead.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Component
+public class ImageRenditions {
+
+    static final int DEFAULT_QUALITY = 80;
+    static final int MAX_DIMENSION = 2048;
+    // larger sources are refused instead of being decoded (a 10000x10000 image needs 400 MB as pixels)
+    private static final long MAX_SOURCE_PIXELS = 50_000_000L;
+    private static final String SUFFIX = ".jpg";
+
+    /**
+     * Requested size and JPEG quality; 0 width or height means "follow the aspect ratio".
+     */
+    public record Spec(int width, int height, int quality) {
+
+        public Spec {
+            if (width < 0 || height < 0 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+                throw new IllegalArgumentException("w and h must be between 1 and " + MAX_DIMENSION);
+            }
+            if (width == 0 && height == 0) {
+                throw new IllegalArgumentException("A rendition needs w or h");
+            }
+            if (quality < 1 || quality > 100) {
+                throw new IllegalArgumentException("q must be between 1 and 100");
+            }
+        }
+
+        /* request parameters → spec; null when none is given (the original is wanted) */
+        public static Spec of(Integer width, Integer height, Integer quality) {
+            if (width == null && height == null && quality == null) {
+                return null;
+            }
+            if ((width != null && width < 1) || (height != null && height < 1)) {
+                throw new IllegalArgumentException("w and h must be between 1 and " + MAX_DIMENSION);
+            }
+            return new Spec(width != null ? width : 0, height != null ? height : 0,
+                    quality != null ? quality : DEFAULT_QUALITY);
+        }
+
+        /* "300x0" → width 300, height from the aspect ratio, default quality */
+        static Spec parse(String size) {
+            String[] parts = size.trim().toLowerCase().split("x");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Rendition size must look like 300x0: " + size);
+            }
+            return new Spec(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), DEFAULT_QUALITY);
+        }
+
+        String key(String contentHash) {
+            return contentHash + "_" + width + "x" + height + "_q" + quality;
+        }
+    }
+
+    /**
+     * Counters returned by GET /api/animals/renditions/stats.
+     */
+    public record Stats(long entries, long bytes, long maxBytes, long hits, long misses,
+                        long precomputed, long dropped, long evictions) {}
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageRenditions.class);
+
+    private final Path directory;
+    private final long maxBytes;
+    private final List<Spec> precomputeSpecs;
+    private final ThreadPoolExecutor workers;
+
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true); // key → file size
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private long bytes; // guarded by indexLock
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder precomputed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ImageRenditions(
+            @Value("${animal.renditions.directory:./data/renditions}") Path directory,
+            @Value("${animal.renditions.max-bytes:268435456}") long maxBytes,
+            @Value("${animal.renditions.precompute:300x0}") String precompute,
+            @Value("${animal.renditions.workers:0}") int workers,
+            @Value("${animal.renditions.queue-capacity:64}") int queueCapacity
+    ) throws IOException {
+        this.directory = directory;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.precomputeSpecs = Arrays.stream(precompute.split(","))
+                .filter(size -> !size.isBlank())
+                .map(Spec::parse)
+                .toList();
+        int poolSize = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                task -> {
+                    Thread thread = new Thread(task, "rendition-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1); // requests first
+                    return thread;
+                },
+                (task, executor) -> dropped.increment());
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * JPEG bytes of the rendition, read from the cache or rendered (and cached) now.
+     *
+     * @param original loads the original bytes; only called on a cache miss
+     * @throws UnsupportedImageFormatException if the original can't be decoded
+     */
+    public byte[] get(String contentHash, Spec spec, Supplier<byte[]> original) {
+        String key = spec.key(contentHash);
+        byte[] cached = read(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        byte[] rendition = render(original.get(), spec);
+        write(key, rendition);
+        return rendition;
+    }
+
+    /**
+     * Queues the configured sizes of a freshly saved image; returns at once.
+     */
+    public void precompute(AnimalImage image) {
+        byte[] data = image.getImageData();
+        String hash = image.getContentHash();
+        if (data == null || hash == null || precomputeSpecs.isEmpty()) {
+            return;
+        }
+        workers.execute(() -> {
+            try {
+                for (Spec spec : precomputeSpecs) {
+                    String key = spec.key(hash);
+                    if (!contains(key)) {
+                        write(key, render(data, spec));
+                        precomputed.increment();
+                    }
+                }
+            } catch (UnsupportedImageFormatException e) {
+                logger.debug("No renditions for {}: {}", image.getImageUrl(), e.getMessage());
+            } catch (RuntimeException e) {
+                logger.warn("Precomputing renditions of {} failed", image.getImageUrl(), e);
+            }
+        });
+    }
+
+    /* drops every rendition of an image whose bytes were deleted */
+    public void evict(String contentHash) {
+        String prefix = contentHash + "_";
+        List<String> removed = new ArrayList<>();
+        indexLock.lock();
+        try {
+            for (Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Long> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    bytes -= entry.getValue();
+                    removed.add(entry.getKey());
+                    it.remove();
+                }
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        removed.forEach(this::deleteFile);
+    }
+
+    public Stats getStats() {
+        indexLock.lock();
+        try {
+            return new Stats(index.size(), bytes, maxBytes, hits.sum(), misses.sum(),
+                    precomputed.sum(), dropped.sum(), evictions.sum());
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Decodes, scales down and encodes as JPEG. Sources much larger than the target are
+     * decoded subsampled, so a thumbnail of a big photo never materializes all its pixels.
+     */
+    static byte[] render(byte[] original, Spec spec) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new UnsupportedImageFormatException("Image format is not supported for renditions");
+            }
+            ImageReader reader = readers.next();
+            BufferedImage source;
+            int targetWidth;
+            int targetHeight;
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_SOURCE_PIXELS) {
+                    throw new UnsupportedImageFormatException("Image is too large for renditions: " + width + "x" + height);
+                }
+                double scale = Math.min(1.0, Math.min(
+                        spec.width() > 0 ? (double) spec.width() / width : Double.MAX_VALUE,
+                        spec.height() > 0 ? (double) spec.height() / height : Double.MAX_VALUE));
+                targetWidth = Math.max(1, (int) Math.round(width * scale));
+                targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                // keep at least 2x the target resolution for the final filtered scaling step
+                int subsampling = Math.max(1, Math.min(width / targetWidth, height / targetHeight) / 2);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+            return encodeJpeg(scale(source, targetWidth, targetHeight), spec.quality());
+        } catch (IOException e) {
+            throw new UnsupportedImageFormatException("Image could not be decoded: " + e.getMessage());
+        }
+    }
+
+    /* halves with bilinear filtering until close to the target (sharper than one big step) */
+    private static BufferedImage scale(BufferedImage image, int targetWidth, int targetHeight) {
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                // JPEG has no alpha: transparent areas become white
+                graphics.drawImage(current, 0, 0, width, height, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, int quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private boolean contains(String key) {
+        indexLock.lock();
+        try {
+            return index.containsKey(key);
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private byte[] read(String key) {
+        indexLock.lock();
+        try {
+            if (index.get(key) == null) { // get(), unlike containsKey(), marks the entry as recently used
+                return null;
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        try {
+            return Files.readAllBytes(file(key));
+        } catch (NoSuchFileException e) {
+            return null; // evicted between the index lookup and the read
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* temp file + atomic move: a crash or a concurrent reader never sees half a rendition */
+    private void write(String key, byte[] rendition) {
+        if (rendition.length > maxBytes) {
+            return;
+        }
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, rendition);
+            Files.move(temp, file(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Could not cache rendition {}", key, e);
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        indexLock.lock();
+        try {
+            Long previous = index.put(key, (long) rendition.length);
+            bytes += rendition.length - (previous != null ? previous : 0);
+            evictOldest(evicted);
+        } finally {
+            indexLock.unlock();
+        }
+        evicted.forEach(this::deleteFile);
+    }
+
+    /* caller holds indexLock; files are deleted after the lock is released */
+    private void evictOldest(List<String> evicted) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            bytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            evictions.increment();
+            it.remove();
+        }
+    }
+
+    /* rebuilds the index from the directory, oldest file first, and drops leftover temp files */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.toList();
+        }
+        List<Path> renditions = new ArrayList<>();
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.deleteIfExists(path);
+            } else if (name.endsWith(SUFFIX)) {
+                renditions.add(path);
+            }
+        }
+        renditions.sort(Comparator.comparing(ImageRenditions::lastModified));
+        List<String> evicted = new ArrayList<>();
+        indexLock.lock();
+        try {
+            for (Path path : renditions) {
+                String name = path.getFileName().toString();
+                long size = Files.size(path);
+                index.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                bytes += size;
+            }
+            evictOldest(evicted); // max-bytes may have been lowered since the last run
+        } finally {
+            indexLock.unlock();
+        }
+        evicted.forEach(this::deleteFile);
+        logger.info("Rendition cache: {} files, {} bytes in {}", renditions.size(), bytes, directory);
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            logger.warn("Could not delete rendition {}", key, e);
+        }
+    }
+}
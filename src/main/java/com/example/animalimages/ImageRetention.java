@@ -0,0 +1,296 @@
+/**
+ * ================================================================================
+ * File           : ImageRetention.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Keeps the image history bounded. A scheduled task deletes the oldest
+ *   images beyond the configured limits (age, images per type, stored bytes)
+ *   through AnimalImageService.deleteImages(), one small batch per transaction,
+ *   so fetches and reads never wait long for its row locks. A second task
+ *   compacts the H2 database file and, with the filesystem ImageStore, its
+ *   sparse segment files, so the space freed by deletes is given back to the
+ *   file system, and reports how many bytes that reclaimed.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * ⏰ Spring @Scheduled (fixed delay, never overlapping)
+ * 💾 Keyset id batches on the (timestamp, id) indexes + deleteImages()
+ * 🗜️ H2FileCompactor (online; rewrites sparse chunks, moves live chunks to the
+ *    front and truncates the file)
+ * 📁 FileSystemImageStore.compactSegments() (copies live records out of sparse segments)
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.retention.max-age-hours          → Delete images older than this (0 = keep)
+ * animal.retention.max-per-type           → Newest images kept per type (0 = all)
+ * animal.retention.max-total-bytes        → Stored (deduplicated) bytes kept (0 = no limit)
+ * animal.retention.batch-size             → Images deleted per transaction
+ * animal.retention.pause-ms               → Pause between batches, lets other writers in
+ * animal.retention.max-batches-per-run    → Upper bound of work per run; the rest waits
+ * animal.retention.interval-ms            → Delay between retention runs
+ * animal.retention.compact-enabled        → Compact the H2 file and image segments periodically
+ * animal.retention.compact-interval-ms    → Delay between compactions
+ * animal.retention.compact-max-ms         → Time budget of one compaction
+ *
+ * Notes:
+ * ------
+ * - All limits default to 0, so nothing is deleted unless retention is configured.
+ * - Deleting an image only frees its bytes when no other image shares the blob;
+ *   the byte limit is therefore checked again after every batch.
+ * - In-memory databases are not compacted, nor is the H2 file when H2FileCompactor
+ *   finds that H2's internals have changed; segment files are compacted anyway.
+ * - Segment files are rewritten when less than SEGMENT_MIN_LIVE_PERCENT of them
+ *   is live, oldest first, within the same compact-max-ms budget.
+ * - H2 drops the BLOBs of deleted rows in the background once no transaction
+ *   can see them any more; space freed after a compaction started is given
+ *   back by the next one.
+ * - H2 chunks are rewritten and moved in bounded steps, with compact-max-ms
+ *   checked between steps; what is left over is done by the next run.
+ * - A compaction is skipped when nothing was deleted since the last one, it
+ *   finished within its budget and H2 reports no sparse chunks (BLOBs of
+ *   deleted rows that H2 dropped in the background since).
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Component
+public class ImageRetention {
+
+    /**
+     * Outcome of one retention run.
+     */
+    public record RunReport(Instant finishedAt, int deletedByAge, int deletedByCount, int deletedBySize,
+                            boolean complete, long durationMs) {}
+
+    /**
+     * Outcome of one compaction: the H2 file's size before and after, bytes freed by removing
+     * sparse image segments (filesystem ImageStore) and the bytes reclaimed in total.
+     */
+    public record CompactionReport(Instant finishedAt, long fileBytesBefore, long fileBytesAfter,
+                                   long segmentBytesReclaimed, long reclaimedBytes, long durationMs) {}
+
+    /**
+     * Totals and last reports, returned by GET /api/animals/retention/stats.
+     */
+    public record Stats(long deletedTotal, long reclaimedBytesTotal, RunReport lastRun, CompactionReport lastCompaction) {}
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageRetention.class);
+
+    // image segments with less live data than this are rewritten into the active segment
+    private static final int SEGMENT_MIN_LIVE_PERCENT = 50;
+
+    private final AnimalImageService service;
+    private final AnimalImageRepository repository;
+    private final ImageBlobRepository blobRepository;
+    private final ImageStore imageStore;
+    private final DataSource dataSource;
+    private final long maxAgeHours;
+    private final long maxPerType;
+    private final long maxTotalBytes;
+    private final int batchSize;
+    private final long pauseMs;
+    private final int maxBatchesPerRun;
+    private final boolean compactEnabled;
+    private final int compactMaxMs;
+
+    private final AtomicLong deletedTotal = new AtomicLong();
+    private final AtomicLong reclaimedBytesTotal = new AtomicLong();
+    private volatile RunReport lastRun;
+    private volatile CompactionReport lastCompaction;
+    private long deletedAtLastCompaction = -1; // guarded by this: service.getDeletedCount() then
+    private boolean compactionUnfinished;      // guarded by this: last run ran out of its time budget
+
+    public ImageRetention(
+            AnimalImageService service,
+            AnimalImageRepository repository,
+            ImageBlobRepository blobRepository,
+            ImageStore imageStore,
+            DataSource dataSource,
+            @Value("${animal.retention.max-age-hours:0}") long maxAgeHours,
+            @Value("${animal.retention.max-per-type:0}") long maxPerType,
+            @Value("${animal.retention.max-total-bytes:0}") long maxTotalBytes,
+            @Value("${animal.retention.batch-size:100}") int batchSize,
+            @Value("${animal.retention.pause-ms:20}") long pauseMs,
+            @Value("${animal.retention.max-batches-per-run:100}") int maxBatchesPerRun,
+            @Value("${animal.retention.compact-enabled:true}") boolean compactEnabled,
+            @Value("${animal.retention.compact-max-ms:5000}") int compactMaxMs
+    ) {
+        this.service = service;
+        this.repository = repository;
+        this.blobRepository = blobRepository;
+        this.imageStore = imageStore;
+        this.dataSource = dataSource;
+        this.maxAgeHours = Math.max(0, maxAgeHours);
+        this.maxPerType = Math.max(0, maxPerType);
+        this.maxTotalBytes = Math.max(0, maxTotalBytes);
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMs = Math.max(0, pauseMs);
+        this.maxBatchesPerRun = Math.max(1, maxBatchesPerRun);
+        this.compactEnabled = compactEnabled;
+        this.compactMaxMs = Math.max(1, compactMaxMs);
+    }
+
+    /**
+     * Deletes the oldest images beyond the configured limits, at most maxBatchesPerRun batches.
+     *
+     * @return the run's report, or null when no limit is configured
+     */
+    @Scheduled(fixedDelayString = "${animal.retention.interval-ms:300000}",
+               initialDelayString = "${animal.retention.initial-delay-ms:60000}")
+    public synchronized RunReport enforce() throws InterruptedException {
+        if (maxAgeHours == 0 && maxPerType == 0 && maxTotalBytes == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        int[] batches = {0};
+
+        int byAge = 0;
+        if (maxAgeHours > 0) {
+            LocalDateTime cutoff = LocalDateTime.now().minusHours(maxAgeHours);
+            byAge = deleteWhile(batches, () -> repository.findIdsOlderThan(cutoff, Limit.of(batchSize)));
+        }
+
+        int byCount = 0;
+        if (maxPerType > 0) {
+            for (String type : repository.findAnimalTypes()) {
+                long excess = repository.countByAnimalType(type) - maxPerType;
+                while (excess > 0 && batches[0] < maxBatchesPerRun) {
+                    int deleted = deleteBatch(batches,
+                            repository.findOldestIdsByType(type, Limit.of((int) Math.min(batchSize, excess))));
+                    if (deleted == 0) {
+                        break;
+                    }
+                    excess -= deleted;
+                    byCount += deleted;
+                }
+            }
+        }
+
+        int bySize = 0;
+        if (maxTotalBytes > 0) {
+            bySize = deleteWhile(batches, () -> blobRepository.sumSizeBytes() > maxTotalBytes
+                    ? repository.findOldestIds(Limit.of(batchSize))
+                    : List.of());
+        }
+
+        boolean complete = batches[0] < maxBatchesPerRun;
+        RunReport report = new RunReport(Instant.now(), byAge, byCount, bySize, complete,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        deletedTotal.addAndGet(byAge + byCount + bySize);
+        lastRun = report;
+        if (byAge + byCount + bySize > 0) {
+            logger.info("Retention deleted {} images (age {}, per type {}, size {}) in {} ms{}",
+                    byAge + byCount + bySize, byAge, byCount, bySize, report.durationMs(),
+                    complete ? "" : ", more left for the next run");
+        }
+        return report;
+    }
+
+    /**
+     * Compacts the H2 database file and, with the filesystem ImageStore, its sparse segment
+     * files, and records how many bytes that gave back. Skipped when no image was deleted since
+     * the last compaction and that one finished.
+     *
+     * @return the compaction's report, or null when there is nothing to compact
+     */
+    @Scheduled(fixedDelayString = "${animal.retention.compact-interval-ms:3600000}",
+               initialDelayString = "${animal.retention.initial-delay-ms:60000}")
+    public synchronized CompactionReport compact() {
+        if (!compactEnabled) {
+            return null;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(compactMaxMs);
+        try (Connection connection = dataSource.getConnection()) {
+            H2FileCompactor h2 = H2FileCompactor.forConnection(connection);
+            FileSystemImageStore segments = imageStore instanceof FileSystemImageStore fileSystemStore ? fileSystemStore : null;
+            if (h2 == null && segments == null) {
+                return null; // in-memory, read-only or not H2, and no segment files
+            }
+            long deleted = service.getDeletedCount();
+            if (deleted == deletedAtLastCompaction && !compactionUnfinished
+                    && (h2 == null || !h2.hasSparseChunks())) {
+                return null; // nothing deleted since the last run and no sparse chunks left over
+            }
+
+            long before = 0;
+            long after = 0;
+            if (h2 != null) {
+                before = h2.compact(connection, deadline);
+                after = h2.fileSize();
+            }
+            FileSystemImageStore.SegmentCompaction segmentCompaction = segments == null
+                    ? new FileSystemImageStore.SegmentCompaction(0, 0, true)
+                    : segments.compactSegments(SEGMENT_MIN_LIVE_PERCENT, deadline);
+            deletedAtLastCompaction = deleted;
+            // the next run carries on
+            compactionUnfinished = System.nanoTime() >= deadline || !segmentCompaction.complete();
+
+            long reclaimed = Math.max(0, before - after) + segmentCompaction.reclaimedBytes();
+            CompactionReport report = new CompactionReport(Instant.now(), before, after,
+                    segmentCompaction.reclaimedBytes(), reclaimed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            reclaimedBytesTotal.addAndGet(reclaimed);
+            lastCompaction = report;
+            logger.info("Compacted H2 file {} → {} bytes, {} image segments removed ({} bytes reclaimed) in {} ms",
+                    before, after, segmentCompaction.segmentsRemoved(), reclaimed, report.durationMs());
+            return report;
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Compaction failed", e);
+            return null;
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(deletedTotal.get(), reclaimedBytesTotal.get(), lastRun, lastCompaction);
+    }
+
+    /* deletes batch after batch until the query comes back empty or the run's budget is spent */
+    private int deleteWhile(int[] batches, Supplier<List<Long>> nextBatch) throws InterruptedException {
+        int deleted = 0;
+        while (batches[0] < maxBatchesPerRun) {
+            int batchDeleted = deleteBatch(batches, nextBatch.get());
+            if (batchDeleted == 0) {
+                break;
+            }
+            deleted += batchDeleted;
+        }
+        return deleted;
+    }
+
+    /* one short transaction, then a pause so concurrent writers get the locks */
+    private int deleteBatch(int[] batches, List<Long> ids) throws InterruptedException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        batches[0]++;
+        int deleted = service.deleteImages(ids);
+        if (pauseMs > 0) {
+            Thread.sleep(pauseMs);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * ================================================================================
+ * File           : ImageStore.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Storage backend for image bytes, addressed by content hash. The ImageBlob
+ *   table stays the registry of which blobs exist and how many images use them;
+ *   an ImageStore decides where the bytes themselves live.
+ *
+ * ================================================================================
+ * Implementations:
+ * ----------------
+ * H2BlobImageStore        → bytes in the image_blob.data BLOB column (default)
+ * FileSystemImageStore    → bytes in append-only segment files, read via mmap
+ *
+ * Selected with animal.storage.backend=h2|filesystem (see ImageStoreConfiguration).
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.core.io.Resource;
+
+public interface ImageStore {
+
+    /**
+     * Stores the bytes of a new blob and returns the registry row to persist for it.
+     * Called by ImageBatchWriter inside the batch transaction.
+     */
+    ImageBlob store(String hash, byte[] data, long refCount);
+
+    /**
+     * Makes everything stored so far durable. Called before the batch transaction commits.
+     */
+    default void flush() {}
+
+    /**
+     * Opens the bytes of a blob for streaming; every getInputStream() call starts a new stream.
+     */
+    Resource open(String hash, Long sizeBytes);
+
+    /**
+     * Reads the bytes of a blob fully into memory (for caching and small payloads).
+     */
+    byte[] read(String hash);
+
+    /**
+     * Releases the bytes of a blob after its registry row was deleted and committed.
+     * Must keep the bytes if a concurrent batch has stored (reused) the hash again meanwhile.
+     */
+    void delete(String hash);
+}
@@ -0,0 +1,59 @@
+/**
+ * ================================================================================
+ * File           : ImageStoreConfiguration.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Selects the ImageStore backend. The H2 store always exists (it serves blobs
+ *   stored before a switch); with animal.storage.backend=filesystem the segment
+ *   file store is created on top of it and becomes the primary ImageStore.
+ *   The choice is made when the bean is created rather than with a condition,
+ *   because Spring AOT (fast-startup build) evaluates conditions at build time.
+ *
+ * ================================================================================
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.storage.backend                        → h2 (default) | filesystem
+ * animal.storage.filesystem.directory           → Segment file directory
+ * animal.storage.filesystem.segment-size-bytes  → Size at which a new segment starts
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class ImageStoreConfiguration {
+
+    @Bean
+    public H2BlobImageStore h2BlobImageStore(DataSource dataSource, ImageBlobRepository blobRepository) {
+        return new H2BlobImageStore(dataSource, blobRepository);
+    }
+
+    @Bean
+    @Primary
+    public ImageStore imageStore(
+            H2BlobImageStore h2BlobImageStore,
+            ImageBlobRepository blobRepository,
+            @Value("${animal.storage.backend:h2}") String backend,
+            @Value("${animal.storage.filesystem.directory:./data/images}") String directory,
+            @Value("${animal.storage.filesystem.segment-size-bytes:268435456}") long segmentSizeBytes
+    ) throws IOException {
+        if (!backend.equalsIgnoreCase("filesystem")) {
+            return h2BlobImageStore;
+        }
+        return new FileSystemImageStore(Path.of(directory), segmentSizeBytes, h2BlobImageStore,
+                blobRepository::existsById);
+    }
+}
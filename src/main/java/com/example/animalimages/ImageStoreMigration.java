@@ -0,0 +1,114 @@
+/**
+ * ================================================================================
+ * File           : ImageStoreMigration.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   One-off command moving image bytes from the H2 BLOB column into the
+ *   filesystem ImageStore. Blobs are copied in batches; each batch is flushed
+ *   to the segment files before its H2 copies are cleared in the same
+ *   transaction, so an interrupted run can simply be started again.
+ *
+ * ================================================================================
+ * Usage:
+ * ------
+ * java -jar target/RESTAPI_for_AnimalImages-1.0-SNAPSHOT.jar \
+ *      --animal.storage.backend=filesystem --migrate-image-store
+ *
+ * Notes:
+ * ------
+ * - The application exits when the migration is done.
+ * - Until migrated, blobs still in H2 are served from there.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+@Component
+public class ImageStoreMigration implements ApplicationRunner {
+
+    static final String OPTION = "migrate-image-store";
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageStoreMigration.class);
+
+    private final ImageStore imageStore;
+    private final ImageBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConfigurableApplicationContext context;
+    private final int batchSize;
+
+    public ImageStoreMigration(
+            ImageStore imageStore,
+            ImageBlobRepository blobRepository,
+            PlatformTransactionManager transactionManager,
+            ConfigurableApplicationContext context,
+            @Value("${animal.persist.batch-size:50}") int batchSize
+    ) {
+        this.imageStore = imageStore;
+        this.blobRepository = blobRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.context = context;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        if (!(imageStore instanceof FileSystemImageStore target)) {
+            logger.error("--{} requires animal.storage.backend=filesystem", OPTION);
+            System.exit(SpringApplication.exit(context, () -> 1));
+            return;
+        }
+        long moved = migrate(target);
+        logger.info("Moved {} blobs from H2 to the filesystem image store", moved);
+        System.exit(SpringApplication.exit(context, () -> 0));
+    }
+
+    /**
+     * Copies every blob still held in H2 into the target store and clears the H2 copy.
+     *
+     * @return number of blobs moved
+     */
+    long migrate(FileSystemImageStore target) {
+        long moved = 0;
+        while (true) {
+            Integer count = transactionTemplate.execute(status -> {
+                // cleared rows drop out of the query, so the first page is always the next batch
+                List<String> hashes = blobRepository.findHashesWithData(PageRequest.of(0, batchSize));
+                if (hashes.isEmpty()) {
+                    return 0;
+                }
+                for (String hash : hashes) {
+                    blobRepository.findById(hash).ifPresent(blob -> target.put(hash, blob.getData()));
+                }
+                target.flush();
+                blobRepository.clearData(hashes);
+                return hashes.size();
+            });
+            if (count == null || count == 0) {
+                return moved;
+            }
+            moved += count;
+            logger.info("Migrated {} blobs so far", moved);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * ================================================================================
+ * File           : ImageUrlFactory.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Registry of the supported animal types and builder of their upstream
+ *   image URLs (random width/height). Every animal.image.url.{type} property
+ *   registers a type, so a new animal needs one line of configuration and no
+ *   code change. Shared by the service, fetch jobs, the prefetch pool, the
+ *   ZIP import and the UI (GET /api/animals/types).
+ *
+ * ================================================================================
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.image.url.{type} → URL template per animal type: {width} and {height}
+ *                           are replaced by a random size; a URL ending in "/"
+ *                           gets {width}/{height} appended; otherwise used as is
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Component
+public class ImageUrlFactory {
+
+    private final Map<String, String> urlTemplates = new TreeMap<>(); // type → template, alphabetical (the UI order)
+
+    @Autowired
+    public ImageUrlFactory(Environment environment) {
+        this(Binder.get(environment)
+                .bind("animal.image.url", Bindable.mapOf(String.class, String.class))
+                .orElseThrow(() -> new IllegalStateException("No animal types configured (animal.image.url.*)")));
+    }
+
+    /**
+     * @param urlsByType URL (template) per animal type
+     */
+    public ImageUrlFactory(Map<String, String> urlsByType) {
+        urlsByType.forEach((type, url) -> {
+            String template = url.trim();
+            if (template.endsWith("/") && !template.contains("{width}") && !template.contains("{height}")) {
+                template += "{width}/{height}";
+            }
+            urlTemplates.put(type.toLowerCase(), template);
+        });
+    }
+
+    /* Supported animal types, alphabetical */
+    public List<String> types() {
+        return List.copyOf(urlTemplates.keySet());
+    }
+
+    public boolean isSupported(String animalType) {
+        return animalType != null && urlTemplates.containsKey(animalType.toLowerCase());
+    }
+
+    /**
+     * Random-size image URLs for the given type.
+     *
+     * @throws IllegalArgumentException for an unsupported type
+     */
+    public List<String> urlsFor(String animalType, int count) {
+        String template = animalType == null ? null : urlTemplates.get(animalType.toLowerCase());
+        if (template == null) {
+            throw new IllegalArgumentException("Unsupported animal type: " + animalType);
+        }
+        List<String> imageUrls = new ArrayList<>(Math.max(count, 0));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = 0; i < count; i++) {
+            int width = 200 + random.nextInt(100);
+            int height = 200 + random.nextInt(100);
+            imageUrls.add(template
+                    .replace("{width}", String.valueOf(width))
+                    .replace("{height}", String.valueOf(height)));
+        }
+        return imageUrls;
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * ================================================================================
+ * File           : LatestImageCache.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   In-process cache of the latest stored image per animal type, used by
+ *   AnimalImageService for /last and /last/image. Metadata lives in a
+ *   ConcurrentHashMap (lock-free reads); image bytes live in a separate LRU
+ *   area bounded by total size. ImageBatchWriter updates it right after each
+ *   batch commits (write-through), before the fetch call gets its results.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🧵 ConcurrentHashMap, AtomicLong generations, LongAdder counters
+ * 🗃️ LinkedHashMap in access order (LRU) guarded by a ReentrantLock
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.cache.payload.max-bytes        → Total bytes of cached image payloads
+ * animal.cache.payload.max-entry-bytes  → Larger images are always streamed from the DB
+ *
+ * Notes:
+ * ------
+ * - A DB load only installs its result if no write for that type happened
+ *   meanwhile (generation check), so a slow read can't overwrite a newer save.
+ * - Payloads are stored inside the compute() that checks (or installs) the
+ *   latest image of the type, so bytes of an image a concurrent save already
+ *   replaced are never cached after its eviction.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+@Component
+public class LatestImageCache {
+
+    /**
+     * Snapshot of the cache counters, returned by GET /api/animals/cache/stats.
+     */
+    public record Stats(long metadataHits, long metadataMisses,
+                        long payloadHits, long payloadMisses,
+                        long evictions, long payloadEntries, long payloadBytes) {}
+
+    /* newest first: later timestamp wins, id breaks ties */
+    private static final Comparator<AnimalImage> RECENCY =
+            Comparator.comparing(AnimalImage::getTimestamp).thenComparing(AnimalImage::getId);
+
+    private final ConcurrentHashMap<String, AnimalImage> latestByType = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<Long, byte[]> payloads = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock payloadLock = new ReentrantLock();
+    private final long maxPayloadBytes;
+    private final long maxEntryBytes;
+    private long payloadBytes; // guarded by payloadLock
+
+    private final LongAdder metadataHits = new LongAdder();
+    private final LongAdder metadataMisses = new LongAdder();
+    private final LongAdder payloadHits = new LongAdder();
+    private final LongAdder payloadMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LatestImageCache(
+            @Value("${animal.cache.payload.max-bytes:67108864}") long maxPayloadBytes,
+            @Value("${animal.cache.payload.max-entry-bytes:4194304}") long maxEntryBytes
+    ) {
+        this.maxPayloadBytes = Math.max(0, maxPayloadBytes);
+        this.maxEntryBytes = Math.min(Math.max(0, maxEntryBytes), this.maxPayloadBytes);
+    }
+
+    /**
+     * Returns the cached latest image for the type, loading it with {@code loader} on a miss.
+     */
+    public Optional<AnimalImage> getLatest(String animalType, Supplier<Optional<AnimalImage>> loader) {
+        AnimalImage cached = latestByType.get(animalType);
+        if (cached != null) {
+            metadataHits.increment();
+            return Optional.of(cached);
+        }
+        metadataMisses.increment();
+
+        AtomicLong generation = generation(animalType);
+        long seen = generation.get();
+        Optional<AnimalImage> loaded = loader.get().map(LatestImageCache::metadataOf);
+        loaded.ifPresent(image -> latestByType.compute(animalType, (type, current) -> {
+            if (generation.get() != seen) {
+                return current; // a save raced with this load; its own update wins
+            }
+            return current == null || RECENCY.compare(image, current) > 0 ? image : current;
+        }));
+        return loaded;
+    }
+
+    /**
+     * Write-through hook, called by ImageBatchWriter after a batch commits.
+     * Installs each image as the latest of its type if it is newer than the cached one
+     * and keeps its bytes in the payload area when they fit.
+     */
+    public void onSaved(Collection<AnimalImage> savedImages) {
+        for (AnimalImage saved : savedImages) {
+            String type = saved.getAnimalType();
+            generation(type).incrementAndGet();
+            AnimalImage metadata = metadataOf(saved);
+            latestByType.compute(type, (key, current) -> {
+                if (current != null && RECENCY.compare(metadata, current) <= 0) {
+                    return current;
+                }
+                if (saved.getImageData() != null) {
+                    putPayload(saved.getId(), saved.getImageData());
+                }
+                if (current != null) {
+                    evictPayload(current.getId());
+                }
+                return metadata;
+            });
+        }
+    }
+
+    /**
+     * Drops the cached latest image of a type, e.g. after it was deleted.
+     */
+    public void invalidate(String animalType) {
+        generation(animalType).incrementAndGet();
+        AnimalImage removed = latestByType.remove(animalType);
+        if (removed != null) {
+            evictPayload(removed.getId());
+        }
+    }
+
+    /**
+     * Returns the cached bytes of an image, or loads them with {@code loader} when it is the
+     * current latest image of its type and small enough to cache. Returns null for every
+     * other image: those are streamed, never read into a byte[] here.
+     */
+    public byte[] getPayload(AnimalImage image, Supplier<byte[]> loader) {
+        payloadLock.lock();
+        try {
+            byte[] cached = payloads.get(image.getId());
+            if (cached != null) {
+                payloadHits.increment();
+                return cached;
+            }
+        } finally {
+            payloadLock.unlock();
+        }
+        if (!isLatest(image) || image.getSizeBytes() == null || image.getSizeBytes() > maxEntryBytes) {
+            return null;
+        }
+        payloadMisses.increment();
+        byte[] loaded = loader.get();
+        // checked again where onSaved() installs a newer image, so the two can't interleave
+        latestByType.computeIfPresent(image.getAnimalType(), (type, latest) -> {
+            if (latest.getId().equals(image.getId())) {
+                putPayload(image.getId(), loaded);
+            }
+            return latest;
+        });
+        return loaded;
+    }
+
+    private boolean isLatest(AnimalImage image) {
+        AnimalImage latest = latestByType.get(image.getAnimalType());
+        return latest != null && latest.getId().equals(image.getId());
+    }
+
+    public Stats getStats() {
+        payloadLock.lock();
+        try {
+            return new Stats(metadataHits.sum(), metadataMisses.sum(),
+                    payloadHits.sum(), payloadMisses.sum(),
+                    evictions.sum(), payloads.size(), payloadBytes);
+        } finally {
+            payloadLock.unlock();
+        }
+    }
+
+    private void putPayload(Long id, byte[] data) {
+        if (data.length > maxEntryBytes) {
+            return;
+        }
+        payloadLock.lock();
+        try {
+            byte[] previous = payloads.put(id, data);
+            payloadBytes += data.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<Long, byte[]>> eldest = payloads.entrySet().iterator();
+            while (payloadBytes > maxPayloadBytes && eldest.hasNext()) {
+                Map.Entry<Long, byte[]> entry = eldest.next();
+                payloadBytes -= entry.getValue().length;
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            payloadLock.unlock();
+        }
+    }
+
+    private void evictPayload(Long id) {
+        payloadLock.lock();
+        try {
+            byte[] removed = payloads.remove(id);
+            if (removed != null) {
+                payloadBytes -= removed.length;
+                evictions.increment();
+            }
+        } finally {
+            payloadLock.unlock();
+        }
+    }
+
+    private AtomicLong generation(String animalType) {
+        return generations.computeIfAbsent(animalType, type -> new AtomicLong());
+    }
+
+    /* cached entries never carry the image bytes, so /last stays metadata-only */
+    private static AnimalImage metadataOf(AnimalImage image) {
+        if (image.getImageData() == null) {
+            return image;
+        }
+        AnimalImage metadata = new AnimalImage();
+        metadata.setId(image.getId());
+        metadata.setAnimalType(image.getAnimalType());
+        metadata.setImageUrl(image.getImageUrl());
+        metadata.setTimestamp(image.getTimestamp());
+        metadata.setSizeBytes(image.getSizeBytes());
+        metadata.setContentHash(image.getContentHash());
+        return metadata;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * ================================================================================
+ * File           : LegacyImageDataMigration.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   One-time startup migration for images stored before the bytes moved out
+ *   of AnimalImage. Those rows still hold their payload in the unmapped
+ *   animal_image.image_data column and have no content_hash, so they could
+ *   be neither served nor exported. Each such row gets its SHA-256 hash and
+ *   size, a reference in ImageBlob (new blobs go to the configured
+ *   ImageStore) and its old column cleared, in small batches of one
+ *   transaction each. Once no row is left the column is dropped, so later
+ *   starts skip the migration.
+ *
+ * ================================================================================
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.persist.batch-size  → Rows migrated per transaction
+ *
+ * Notes:
+ * ------
+ * - Runs in the constructor, before the web server accepts requests; kept
+ *   eager in the fast-startup profile (StartupConfiguration).
+ * - An interrupted run continues where it stopped: migrated rows have a
+ *   content_hash and drop out of the query.
+ * - The column is read over JDBC: it is no longer part of the entity.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Component
+public class LegacyImageDataMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(LegacyImageDataMigration.class);
+
+    /* A row still holding its bytes in the old column */
+    private record LegacyRow(long id, byte[] data) {}
+
+    private final ImageStore imageStore;
+    private final ImageBlobRepository blobRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public LegacyImageDataMigration(
+            ImageStore imageStore,
+            ImageBlobRepository blobRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${animal.persist.batch-size:50}") int batchSize
+    ) {
+        this.imageStore = imageStore;
+        this.blobRepository = blobRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+        if (hasLegacyColumn()) {
+            long migrated = migrate();
+            jdbcTemplate.execute("ALTER TABLE animal_image DROP COLUMN image_data");
+            logger.info("Moved the bytes of {} images out of animal_image.image_data and dropped the column", migrated);
+        }
+    }
+
+    private boolean hasLegacyColumn() {
+        Integer columns = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE TABLE_SCHEMA = SCHEMA() AND UPPER(TABLE_NAME) = 'ANIMAL_IMAGE'"
+                + " AND UPPER(COLUMN_NAME) = 'IMAGE_DATA'", Integer.class);
+        return columns != null && columns > 0;
+    }
+
+    /**
+     * Migrates every row with bytes in the old column and no content hash.
+     *
+     * @return number of rows migrated
+     */
+    long migrate() {
+        long migrated = 0;
+        while (true) {
+            int count;
+            try {
+                count = migrateBatch();
+            } catch (DataIntegrityViolationException e) {
+                // a writer committed one of the new blobs first: count a reference to it instead
+                count = migrateBatch();
+            }
+            if (count == 0) {
+                return migrated;
+            }
+            migrated += count;
+            logger.info("Migrated {} legacy images so far", migrated);
+        }
+    }
+
+    private int migrateBatch() {
+        Integer count = transactionTemplate.execute(status -> {
+            // migrated rows drop out of the query, so the first page is always the next batch
+            List<LegacyRow> rows = jdbcTemplate.query("SELECT id, image_data FROM animal_image"
+                            + " WHERE image_data IS NOT NULL AND content_hash IS NULL ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new LegacyRow(rs.getLong(1), rs.getBytes(2)), batchSize);
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            Map<String, Long> references = new LinkedHashMap<>();
+            Map<String, byte[]> payloads = new HashMap<>();
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            for (LegacyRow row : rows) {
+                String hash = ContentHash.sha256Hex(row.data());
+                references.merge(hash, 1L, Long::sum);
+                payloads.putIfAbsent(hash, row.data());
+                updates.add(new Object[]{hash, (long) row.data().length, row.id()});
+            }
+            storeBlobs(references, payloads);
+            jdbcTemplate.batchUpdate("UPDATE animal_image SET content_hash = ?, size_bytes = ?, image_data = NULL"
+                    + " WHERE id = ?", updates);
+            return rows.size();
+        });
+        return count == null ? 0 : count;
+    }
+
+    /* Same as ImageBatchWriter: known payloads get references, new ones are stored once */
+    private void storeBlobs(Map<String, Long> references, Map<String, byte[]> payloads) {
+        Set<String> existing = new HashSet<>(blobRepository.findExistingHashes(references.keySet()));
+        List<ImageBlob> newBlobs = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : references.entrySet()) {
+            String hash = entry.getKey();
+            if (!existing.contains(hash) || blobRepository.incrementRefCount(hash, entry.getValue()) == 0) {
+                newBlobs.add(imageStore.store(hash, payloads.get(hash), entry.getValue()));
+            }
+        }
+        imageStore.flush(); // bytes must be durable before their registry rows commit
+        blobRepository.saveAll(newBlobs);
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * ================================================================================
+ * File           : RandomImageIndex.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   In-memory index of the stored image ids per animal type, so
+ *   GET /api/animals/random can pick a uniformly random image in O(1)
+ *   instead of "ORDER BY RAND()" over the whole table. Each type keeps its
+ *   ids in a primitive long[] plus an open-addressing id → position table,
+ *   so adding and removing an id are O(1) too (swap with the last id).
+ *   Rebuilt from the database at startup, then kept current by
+ *   ImageBatchWriter (saves) and AnimalImageService.deleteImages() (deletes).
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🔢 long[] / int[] arrays (no boxing, ~40 bytes per stored image)
+ * 🔒 StampedLock per type (optimistic reads; writers only block each other)
+ * 🎲 ThreadLocalRandom
+ * 💾 Spring Data JPA Stream query for the rebuild
+ *
+ * Notes:
+ * ------
+ * - Samples may run while the startup rebuild is still streaming ids; they
+ *   pick from what is indexed so far.
+ * - An id deleted while the rebuild runs can be re-added by it; the service
+ *   removes such stale ids when it samples one that no longer exists.
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+@Component
+public class RandomImageIndex implements ApplicationRunner {
+
+    /* returned by sample() when there is nothing to pick from */
+    static final long NONE = -1;
+
+    private static final Logger logger = LoggerFactory.getLogger(RandomImageIndex.class);
+
+    private final AnimalImageRepository repository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<String, IdSet> idsByType = new ConcurrentHashMap<>();
+
+    public RandomImageIndex(AnimalImageRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        long indexed = rebuild();
+        logger.info("Indexed {} image ids for random sampling in {} ms", indexed, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Adds the ids of all stored images, type by type, streamed from the database.
+     *
+     * @return number of ids indexed afterwards
+     */
+    public long rebuild() {
+        for (String type : repository.findAnimalTypes()) {
+            IdSet ids = idsOf(type);
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Long> rows = repository.streamIdsByType(type)) {
+                    rows.forEach(ids::add);
+                }
+            });
+        }
+        return size();
+    }
+
+    /**
+     * Indexes freshly committed images.
+     */
+    public void onSaved(Collection<AnimalImage> images) {
+        for (AnimalImage image : images) {
+            add(image.getAnimalType(), image.getId());
+        }
+    }
+
+    public void add(String type, long id) {
+        idsOf(type).add(id);
+    }
+
+    public void remove(String type, long id) {
+        IdSet ids = idsByType.get(type);
+        if (ids != null) {
+            ids.remove(id);
+        }
+    }
+
+    /* for stale ids whose type is unknown: there are only a handful of types */
+    public void remove(long id) {
+        idsByType.values().forEach(ids -> ids.remove(id));
+    }
+
+    /**
+     * A uniformly random id of the given type, or NONE if none is stored.
+     */
+    public long sample(String type) {
+        IdSet ids = idsByType.get(type);
+        return ids == null ? NONE : ids.sample();
+    }
+
+    /**
+     * A uniformly random id over all types (each type weighted by its size), or NONE.
+     */
+    public long sampleAny() {
+        long total = size();
+        if (total == 0) {
+            return NONE;
+        }
+        long target = ThreadLocalRandom.current().nextLong(total);
+        IdSet last = null;
+        for (IdSet ids : idsByType.values()) {
+            int size = ids.size();
+            if (target < size) {
+                return ids.sample();
+            }
+            target -= size;
+            last = size > 0 ? ids : last;
+        }
+        return last == null ? NONE : last.sample(); // a set shrank while we walked the types
+    }
+
+    public int size(String type) {
+        IdSet ids = idsByType.get(type);
+        return ids == null ? 0 : ids.size();
+    }
+
+    public long size() {
+        long total = 0;
+        for (IdSet ids : idsByType.values()) {
+            total += ids.size();
+        }
+        return total;
+    }
+
+    private IdSet idsOf(String type) {
+        return idsByType.computeIfAbsent(type, t -> new IdSet());
+    }
+
+    /*
+     * Ids of one type: dense long[] for sampling, IdPositions to find an id's slot on removal.
+     * Readers validate an optimistic stamp and fall back to the read lock if a writer interfered.
+     */
+    private static final class IdSet {
+        private final StampedLock lock = new StampedLock();
+        private final IdPositions positions = new IdPositions();
+        private long[] ids = new long[16];
+        private int size;
+
+        void add(long id) {
+            long stamp = lock.writeLock();
+            try {
+                if (positions.get(id) >= 0) {
+                    return;
+                }
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size] = id;
+                positions.put(id, size);
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(long id) {
+            long stamp = lock.writeLock();
+            try {
+                int position = positions.remove(id);
+                if (position < 0) {
+                    return;
+                }
+                long last = ids[--size];
+                if (position != size) {
+                    ids[position] = last; // fill the hole with the last id
+                    positions.put(last, position);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        long sample() {
+            long stamp = lock.tryOptimisticRead();
+            long[] array = ids;
+            int n = size;
+            // the bounds check guards against a torn read; validate() rejects it afterwards anyway
+            long id = n > 0 && n <= array.length ? array[ThreadLocalRandom.current().nextInt(n)] : NONE;
+            if (lock.validate(stamp)) {
+                return id;
+            }
+            stamp = lock.readLock();
+            try {
+                return size == 0 ? NONE : ids[ThreadLocalRandom.current().nextInt(size)];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.tryOptimisticRead();
+            int n = size;
+            if (lock.validate(stamp)) {
+                return n;
+            }
+            stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /*
+     * Open-addressing hash table long id → int position with linear probing and backward-shift
+     * deletion (no tombstones), kept at most half full. Not thread-safe: guarded by IdSet's lock.
+     */
+    static final class IdPositions {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys;
+        private int[] values;
+        private int mask;
+        private int count;
+
+        IdPositions() {
+            allocate(32);
+        }
+
+        /* position of the id, or -1 */
+        int get(long key) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                if (keys[i] == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long key, int value) {
+            if ((count + 1) * 2 > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                allocate(keys.length * 2);
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != EMPTY) {
+                        insert(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            insert(key, value);
+        }
+
+        /* removes the id and returns its position, or -1 if it wasn't there */
+        int remove(long key) {
+            int i = slot(key);
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            int value = values[i];
+            // shift later entries of the probe run back, so lookups never hit a false gap
+            int gap = i;
+            for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = EMPTY;
+            count--;
+            return value;
+        }
+
+        int size() {
+            return count;
+        }
+
+        private void insert(long key, int value) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                if (keys[i] == EMPTY) {
+                    keys[i] = key;
+                    values[i] = value;
+                    count++;
+                    return;
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new int[capacity];
+            mask = capacity - 1;
+            count = 0;
+        }
+
+        /* ids are sequential: spread them (Fibonacci hashing) so probe runs stay short */
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * ================================================================================
+ * File           : StartupConfiguration.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Keeps beans that work on their own schedule eager when
+ *   spring.main.lazy-initialization is on (fast-startup profile): nothing
+ *   asks for ImageRetention or ImagePrefetchPool, so as lazy beans their
+ *   scheduled deletes and pool refills would never start. The same holds for
+ *   LegacyImageDataMigration, which must run before the first request.
+ *
+ * ================================================================================
+ * Configuration (application-fast-startup.properties):
+ * ----------------------------------------
+ * spring.main.lazy-initialization  → Other beans are created on first use
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StartupConfiguration {
+
+    // static: read by a BeanFactoryPostProcessor, before the other beans of this class exist
+    @Bean
+    public static LazyInitializationExcludeFilter backgroundWorkExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(ImageRetention.class, ImagePrefetchPool.class,
+                LegacyImageDataMigration.class);
+    }
+}
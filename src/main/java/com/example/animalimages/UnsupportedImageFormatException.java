@@ -0,0 +1,9 @@
+// --- Custom Exception ---
+// Stored bytes can't be decoded into a rendition → 415 Unsupported Media Type
+package com.example.animalimages;
+
+public class UnsupportedImageFormatException extends RuntimeException {
+    public UnsupportedImageFormatException(String message) {
+        super(message);
+    }
+}
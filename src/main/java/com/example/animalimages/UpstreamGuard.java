@@ -0,0 +1,319 @@
+/**
+ * ================================================================================
+ * File           : UpstreamGuard.java
+ * Author         : Hakan Taskin
+ * Version        : 1.0
+ * Revision       : 1
+ * Created Date   : 2026-10-17
+ * Last Updated   : 2026-10-17
+ *
+ * Description    :
+ *   Protects each upstream image host separately. Every download attempt takes
+ *   a permit for its host, so a slow or failing host only uses up its own
+ *   share of the download capacity:
+ *     - Adaptive concurrency (AIMD): the host's limit grows by ~1 per round
+ *       trip while responses are fast and is halved on errors, timeouts or
+ *       responses slower than the latency threshold.
+ *     - Circuit breaker: after N consecutive failures the host is OPEN and
+ *       attempts fail fast; after the open period one probe is let through
+ *       (HALF_OPEN) and its outcome closes or re-opens the circuit.
+ *     - Retry policy: how often and after which jittered backoff ImageDownloader
+ *       retries, within a time budget per download.
+ *
+ * ================================================================================
+ * Technologies Used:
+ * ------------------
+ * ☕ Java 22
+ * 🔒 ReentrantLock + Condition per host (permit waits bounded by the retry budget)
+ * 📈 Micrometer: attempt latency per host/outcome, limit and in-flight gauges per host
+ *
+ * Configuration (application.properties):
+ * ----------------------------------------
+ * animal.fetch.host.initial-limit          → Concurrent downloads per host at start
+ * animal.fetch.host.max-limit              → Upper bound of the adaptive limit
+ * animal.fetch.host.latency-threshold-ms   → Slower responses count as congestion
+ * animal.fetch.breaker.failure-threshold   → Consecutive failures that open the circuit
+ * animal.fetch.breaker.open-ms             → How long an open circuit fails fast
+ * animal.fetch.retry.max-attempts          → Attempts per download (1 = no retry)
+ * animal.fetch.retry.base-backoff-ms       → Backoff before the 1st retry, doubled after
+ * animal.fetch.retry.budget-ms             → Total time one download may take
+ *
+ * Notes:
+ * ------
+ * - A limit decrease ignores outcomes of requests started before the previous
+ *   decrease, so one burst of failures halves the limit once, not per request.
+ * - 4xx answers (except 429) mean the host is up and count as successes.
+ * - The probe is marked on its permit: attempts started before the circuit opened
+ *   may still finish while it runs, but only the probe closes or re-opens it.
+ * - Meters are registered when a host is first seen; the timers are created once
+ *   per host, so recording an attempt is a plain Timer.record().
+ * ================================================================================
+ */
+package com.example.animalimages;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Component
+public class UpstreamGuard {
+
+    public enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    /* How an attempt ended, as far as the host's health is concerned */
+    public enum Outcome { SUCCESS, FAILURE, NEUTRAL }
+
+    /**
+     * Per-host state returned by GET /api/animals/upstreams.
+     */
+    public record HostState(
+            String host,
+            CircuitState circuit,
+            double limit,
+            int inFlight,
+            int consecutiveFailures,
+            long successes,
+            long failures,
+            long rejected,
+            Instant openUntil
+    ) {}
+
+    /**
+     * Thrown when a host's circuit is open; downloads fail fast and are not retried.
+     */
+    public static class UpstreamUnavailableException extends IOException {
+        public UpstreamUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    /* Held for the duration of one attempt; {@code probe} marks the one attempt let through a half-open circuit */
+    public record Permit(Host host, long startNanos, boolean probe) {
+
+        /* Same permit, with the attempt's latency measured from now */
+        public Permit restart() {
+            return new Permit(host, System.nanoTime(), probe);
+        }
+    }
+
+    private final double initialLimit;
+    private final double maxLimit;
+    private final long latencyThresholdNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long budgetNanos;
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public UpstreamGuard(
+            MeterRegistry meterRegistry,
+            @Value("${animal.fetch.host.initial-limit:8}") int initialLimit,
+            @Value("${animal.fetch.host.max-limit:32}") int maxLimit,
+            @Value("${animal.fetch.host.latency-threshold-ms:2000}") long latencyThresholdMs,
+            @Value("${animal.fetch.breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${animal.fetch.breaker.open-ms:10000}") long openMs,
+            @Value("${animal.fetch.retry.max-attempts:3}") int maxAttempts,
+            @Value("${animal.fetch.retry.base-backoff-ms:100}") long baseBackoffMs,
+            @Value("${animal.fetch.retry.budget-ms:20000}") long budgetMs
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.initialLimit = Math.min(this.maxLimit, Math.max(1, initialLimit));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMs = Math.max(0, baseBackoffMs);
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+
+    /**
+     * Waits for a permit to call the host of {@code uri}, at most until {@code deadlineNanos}.
+     *
+     * @throws UpstreamUnavailableException if the host's circuit is open
+     * @throws TimeoutException             if no permit became free before the deadline
+     */
+    public Permit acquire(URI uri, long deadlineNanos)
+            throws UpstreamUnavailableException, TimeoutException, InterruptedException {
+        Host host = hosts.computeIfAbsent(hostKey(uri), Host::new);
+        return host.acquire(deadlineNanos);
+    }
+
+    /**
+     * Returns a permit and feeds the attempt's outcome into the host's limit and circuit.
+     */
+    public void release(Permit permit, Outcome outcome) {
+        permit.host().release(permit.startNanos(), permit.probe(), outcome);
+    }
+
+    public List<HostState> getStates() {
+        return hosts.values().stream()
+                .map(Host::state)
+                .sorted(Comparator.comparing(HostState::host))
+                .toList();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /* deadline of a download starting now */
+    public long deadlineFromNow() {
+        return System.nanoTime() + budgetNanos;
+    }
+
+    /* "full jitter" backoff before the given retry (1 = first retry): random in [0, base * 2^(retry-1)] */
+    public long backoffMillis(int retry) {
+        long cap = baseBackoffMs << Math.min(retry - 1, 16);
+        return cap == 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    /* Limit, in-flight count and circuit of one host; all fields guarded by lock */
+    final class Host {
+        private final String name;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition permitFreed = lock.newCondition();
+        private double limit = initialLimit;
+        private int inFlight;
+        private CircuitState circuit = CircuitState.CLOSED;
+        private long openUntilNanos;
+        private boolean probeInFlight;
+        private int consecutiveFailures;
+        private long lastDecreaseNanos = System.nanoTime() - 1; // before any request to this host
+        private long successes;
+        private long failures;
+        private long rejected;
+        private final Timer[] attemptTimers = new Timer[Outcome.values().length]; // by Outcome ordinal
+
+        Host(String name) {
+            this.name = name;
+            for (Outcome outcome : Outcome.values()) {
+                attemptTimers[outcome.ordinal()] = Timer.builder("animal.upstream.requests")
+                        .description("Download attempts against an upstream image host")
+                        .tag("host", name)
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+            Gauge.builder("animal.upstream.limit", this, host -> host.state().limit())
+                    .description("Adaptive concurrency limit of the host")
+                    .tag("host", name)
+                    .register(meterRegistry);
+            Gauge.builder("animal.upstream.in.flight", this, host -> host.state().inFlight())
+                    .tag("host", name)
+                    .register(meterRegistry);
+            Gauge.builder("animal.upstream.circuit.open", this, host -> host.state().circuit() == CircuitState.CLOSED ? 0 : 1)
+                    .description("1 while the host's circuit breaker is open or half-open")
+                    .tag("host", name)
+                    .register(meterRegistry);
+        }
+
+        Permit acquire(long deadlineNanos) throws UpstreamUnavailableException, TimeoutException, InterruptedException {
+            lock.lock();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    if (circuit == CircuitState.OPEN && now - openUntilNanos >= 0) {
+                        circuit = CircuitState.HALF_OPEN; // let one probe find out whether the host is back
+                    }
+                    if (circuit == CircuitState.OPEN || (circuit == CircuitState.HALF_OPEN && probeInFlight)) {
+                        rejected++;
+                        throw new UpstreamUnavailableException("Circuit open for upstream " + name);
+                    }
+                    if (inFlight < (int) limit) {
+                        inFlight++;
+                        boolean probe = circuit == CircuitState.HALF_OPEN;
+                        if (probe) {
+                            probeInFlight = true;
+                        }
+                        return new Permit(this, now, probe);
+                    }
+                    long remaining = deadlineNanos - now;
+                    if (remaining <= 0) {
+                        rejected++;
+                        throw new TimeoutException("Concurrency limit " + (int) limit + " reached for upstream " + name);
+                    }
+                    permitFreed.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /* only the probe's own permit decides a half-open circuit; attempts started earlier just finish */
+        void release(long startNanos, boolean probe, Outcome outcome) {
+            long now = System.nanoTime();
+            attemptTimers[outcome.ordinal()].record(now - startNanos, TimeUnit.NANOSECONDS);
+            lock.lock();
+            try {
+                inFlight--;
+                if (probe) {
+                    probeInFlight = false;
+                }
+                boolean slow = now - startNanos > latencyThresholdNanos;
+                if (outcome == Outcome.SUCCESS) {
+                    successes++;
+                    consecutiveFailures = 0;
+                    if (probe) {
+                        circuit = CircuitState.CLOSED;
+                    }
+                    if (slow) {
+                        decrease(startNanos, now);
+                    } else {
+                        limit = Math.min(maxLimit, limit + 1.0 / limit); // +1 per full window of fast answers
+                    }
+                } else if (outcome == Outcome.FAILURE) {
+                    failures++;
+                    consecutiveFailures++;
+                    decrease(startNanos, now);
+                    if (probe || (circuit == CircuitState.CLOSED && consecutiveFailures >= failureThreshold)) {
+                        circuit = CircuitState.OPEN;
+                        openUntilNanos = now + openNanos;
+                    }
+                }
+                permitFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void decrease(long startNanos, long now) {
+            if (startNanos - lastDecreaseNanos > 0) { // only once per burst of congestion signals
+                limit = Math.max(1, limit / 2);
+                lastDecreaseNanos = now;
+            }
+        }
+
+        HostState state() {
+            lock.lock();
+            try {
+                Instant openUntil = circuit == CircuitState.OPEN
+                        ? Instant.now().plusNanos(Math.max(0, openUntilNanos - System.nanoTime()))
+                        : null;
+                return new HostState(name, circuit, Math.round(limit * 100) / 100.0, inFlight,
+                        consecutiveFailures, successes, failures, rejected, openUntil);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+-- Fixed schema for the fast-startup profile (spring.jpa.hibernate.ddl-auto=none).
+-- Same tables, sequence and index names as Hibernate generates for AnimalImage and
+-- ImageBlob, so databases created with ddl-auto=update open unchanged.
+-- Change it together with the entities.
+
+CREATE SEQUENCE IF NOT EXISTS animal_image_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS animal_image (
+    id           BIGINT NOT NULL PRIMARY KEY,
+    size_bytes   BIGINT,
+    timestamp    TIMESTAMP(6),
+    content_hash VARCHAR(64),
+    animal_type  VARCHAR(255),
+    image_url    VARCHAR(255)
+);
+
+-- Databases from before the bytes moved out of animal_image (LegacyImageDataMigration)
+ALTER TABLE animal_image ADD COLUMN IF NOT EXISTS size_bytes BIGINT;
+ALTER TABLE animal_image ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+CREATE INDEX IF NOT EXISTS idx_animal_image_type_ts_id ON animal_image (animal_type, timestamp, id);
+CREATE INDEX IF NOT EXISTS idx_animal_image_ts_id ON animal_image (timestamp, id);
+
+CREATE TABLE IF NOT EXISTS image_blob (
+    hash       VARCHAR(64) NOT NULL PRIMARY KEY,
+    ref_count  BIGINT NOT NULL,
+    size_bytes BIGINT,
+    data       BLOB
+);
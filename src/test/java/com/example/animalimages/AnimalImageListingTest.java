@@ -0,0 +1,101 @@
+/*
+ * AnimalImage Listing Test
+ * ------------------------
+ * Stores a history of images on an in-memory H2 database and walks it with the keyset
+ * cursor: every row exactly once, newest first, with type and time-range filters.
+ * Also checks that H2 answers the listing from the composite index.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:listingtest;DB_CLOSE_DELAY=-1")
+public class AnimalImageListingTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 4, 1, 12, 0);
+
+    @Autowired
+    private AnimalImageService service;
+
+    @Autowired
+    private AnimalImageRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void storeHistory() {
+        repository.deleteAllInBatch();
+        List<AnimalImage> images = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            String type = i % 3 == 0 ? "cat" : "dog";
+            // pairs of images share a timestamp, so the id tie-breaker is exercised
+            images.add(new AnimalImage(type, "http://stub/" + i, START.plusMinutes(i / 2), new byte[]{(byte) i}));
+        }
+        repository.saveAll(images);
+    }
+
+    @Test
+    public void shouldWalkAllPagesNewestFirstWithoutRepeats() {
+        List<AnimalImageSummary> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            AnimalImagePage page = service.listImages(null, null, null, cursor, 7);
+            seen.addAll(page.items());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(30, seen.size());
+        assertEquals(5, pages);
+        assertEquals(30, seen.stream().map(AnimalImageSummary::id).distinct().count());
+        for (int i = 1; i < seen.size(); i++) {
+            AnimalImageSummary newer = seen.get(i - 1);
+            AnimalImageSummary older = seen.get(i);
+            assertTrue(newer.timestamp().isAfter(older.timestamp())
+                    || (newer.timestamp().equals(older.timestamp()) && newer.id() > older.id()));
+        }
+    }
+
+    @Test
+    public void shouldFilterByTypeAndTimeRange() {
+        AnimalImagePage cats = service.listImages("CAT", null, null, null, 50);
+        assertEquals(10, cats.items().size());
+        assertTrue(cats.items().stream().allMatch(image -> image.animalType().equals("cat")));
+        assertNull(cats.nextCursor());
+
+        // [START+2min, START+5min) holds images 4..9
+        AnimalImagePage window = service.listImages(null, START.plusMinutes(2), START.plusMinutes(5), null, 4);
+        assertEquals(4, window.items().size());
+        AnimalImagePage rest = service.listImages(null, START.plusMinutes(2), START.plusMinutes(5), window.nextCursor(), 4);
+        assertEquals(2, rest.items().size());
+        assertNull(rest.nextCursor());
+        assertEquals(START.plusMinutes(2), rest.items().get(1).timestamp());
+    }
+
+    @Test
+    public void shouldRejectBadCursorAndLimit() {
+        assertThrows(IllegalArgumentException.class, () -> service.listImages(null, null, null, "not-a-cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> service.listImages(null, null, null, null, 0));
+    }
+
+    @Test
+    public void shouldUseCompositeIndexForTypeListing() {
+        String plan = jdbcTemplate.queryForObject(
+                "EXPLAIN SELECT id FROM animal_image WHERE animal_type = 'dog' AND timestamp >= ? AND timestamp <= ?"
+                        + " ORDER BY timestamp DESC, id DESC LIMIT 10",
+                String.class, START, START.plusDays(1));
+        assertTrue(plan.toUpperCase().contains("IDX_ANIMAL_IMAGE_TYPE_TS_ID"), plan);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * AnimalImage Metrics Test
+ * ------------------------
+ * Fetches images from the shared UpstreamStub into an in-memory H2 database and checks
+ * that the Prometheus scrape endpoint shows the upstream, download, DB and request timers
+ * as well as the cache and queue gauges.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:metricstest;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
+public class AnimalImageMetricsTest {
+
+    private static final UpstreamStub upstream = UpstreamStub.start();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void upstreamUrls(DynamicPropertyRegistry registry) {
+        upstream.registerImageUrls(registry, "bear");
+    }
+
+    @AfterAll
+    public static void stopStub() {
+        upstream.close();
+    }
+
+    @Test
+    public void shouldExposeHotPathTimersAndGaugesForPrometheus() throws Exception {
+        mockMvc.perform(post("/api/animals/fetch").param("type", "bear").param("count", "3"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/animals/last").param("type", "bear"))
+                .andExpect(status().isOk());
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(scrape.lines().anyMatch(line -> line.startsWith("animal_download_seconds_count")
+                && line.contains("type=\"bear\"") && line.contains("outcome=\"success\"") && line.endsWith(" 3")), scrape);
+        assertTrue(scrape.lines().anyMatch(line -> line.startsWith("animal_download_bytes_sum")
+                && line.contains("type=\"bear\"")), scrape);
+        assertTrue(scrape.lines().anyMatch(line -> line.startsWith("animal_upstream_requests_seconds_bucket")
+                && line.contains("host=\"127.0.0.1:" + upstream.port() + "\"")), scrape);
+        assertTrue(scrape.contains("animal_db_batch_save_seconds_count"), scrape);
+        assertTrue(scrape.contains("animal_db_queue_depth"), scrape);
+        assertTrue(scrape.lines().anyMatch(line -> line.startsWith("http_server_requests_seconds_count")
+                && line.contains("uri=\"/api/animals/last\"")), scrape);
+        assertTrue(scrape.contains("spring_data_repository_invocations_seconds_count"), scrape);
+        assertTrue(scrape.contains("animal_cache_requests_total"), scrape);
+        assertTrue(scrape.contains("animal_prefetch_depth"), scrape);
+        assertTrue(scrape.contains("animal_jobs_queued"), scrape);
+        assertTrue(scrape.contains("animal_renditions_bytes"), scrape);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * AnimalImage Streaming Test
+ * --------------------------
+ * Starts the app on a random port with an in-memory H2 database and a large stored image.
+ * Verifies Range support and conditional GET (ETag → 304) on /api/animals/last/image, and
+ * that many concurrent downloads (more than the 10 pooled connections) don't each hold a full
+ * copy of the image on the heap, nor a database connection while the client is not reading.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:streamingtest;DB_CLOSE_DELAY=-1"
+})
+public class AnimalImageStreamingTest {
+
+    private static final int IMAGE_SIZE = 8 * 1024 * 1024; // larger than the kernel socket buffers
+    private static final int PARALLEL_DOWNLOADS = 12; // more than spring.datasource.hikari.maximum-pool-size
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private DatabaseConcurrencyLimiter databaseLimiter;
+
+    private byte[] imageBytes;
+
+    @BeforeEach
+    public void storeLargeImage() {
+        imageBytes = new byte[IMAGE_SIZE];
+        new Random(42).nextBytes(imageBytes);
+        batchWriter.submit(new AnimalImage("bear", "http://stub/bear", LocalDateTime.now(), imageBytes)).join();
+    }
+
+    @Test
+    public void shouldAnswerRangeRequestWithPartialContent() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(imageUrl()))
+                .header("Range", "bytes=100-199")
+                .build();
+
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(206, response.statusCode());
+        assertEquals("bytes 100-199/" + IMAGE_SIZE, response.headers().firstValue("Content-Range").orElse(null));
+        assertArrayEquals(Arrays.copyOfRange(imageBytes, 100, 200), response.body());
+    }
+
+    @Test
+    public void shouldAnswerRangeAcrossChunksWithoutReadingFromTheStart() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        int from = IMAGE_SIZE - ImageDataResource.CHUNK_BYTES - 100; // spans the last two chunks
+        HttpRequest request = HttpRequest.newBuilder(URI.create(imageUrl()))
+                .header("Range", "bytes=" + from + "-")
+                .build();
+
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(206, response.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(imageBytes, from, IMAGE_SIZE), response.body());
+    }
+
+    @Test
+    public void shouldAdvertiseRangesOnFullDownload() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(imageUrl())).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("bytes", response.headers().firstValue("Accept-Ranges").orElse(null));
+        assertArrayEquals(imageBytes, response.body());
+    }
+
+    @Test
+    public void shouldAnswerConditionalGetWithNotModified() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        String eTag = "\"" + ContentHash.sha256Hex(imageBytes) + "\"";
+
+        HttpResponse<Void> first = client.send(HttpRequest.newBuilder(URI.create(imageUrl())).build(),
+                HttpResponse.BodyHandlers.discarding());
+        assertEquals(eTag, first.headers().firstValue("ETag").orElse(null));
+        assertTrue(first.headers().firstValue("Last-Modified").isPresent());
+        assertTrue(first.headers().firstValue("Cache-Control").isPresent());
+
+        HttpResponse<byte[]> revalidated = client.send(HttpRequest.newBuilder(URI.create(imageUrl()))
+                        .header("If-None-Match", eTag).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(304, revalidated.statusCode());
+        assertEquals(0, revalidated.body().length);
+
+        HttpResponse<Void> metadata = client.send(HttpRequest.newBuilder(URI.create(
+                        "http://127.0.0.1:" + port + "/api/animals/last?type=bear"))
+                        .header("If-Modified-Since", first.headers().firstValue("Last-Modified").orElseThrow()).build(),
+                HttpResponse.BodyHandlers.discarding());
+        assertEquals(304, metadata.statusCode());
+    }
+
+    /**
+     * Opens several downloads that stop reading after the first bytes, so the server is stuck
+     * mid-response for all of them at once, then measures live heap. A byte[] response would
+     * pin PARALLEL_DOWNLOADS full copies of the image; a streamed one only pins small buffers.
+     * The stalled downloads must not hold database connections either.
+     */
+    @Test
+    public void shouldKeepHeapFlatForParallelDownloads() throws Exception {
+        long baseline = usedHeapAfterGc();
+
+        List<Socket> stalled = new ArrayList<>();
+        try {
+            for (int i = 0; i < PARALLEL_DOWNLOADS; i++) {
+                Socket socket = new Socket();
+                socket.setReceiveBufferSize(4096);
+                socket.connect(new java.net.InetSocketAddress("127.0.0.1", port));
+                OutputStream out = socket.getOutputStream();
+                out.write(("GET /api/animals/last/image?type=bear HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                InputStream in = socket.getInputStream();
+                assertTrue(in.read(new byte[1024]) > 0, "Download did not start");
+                stalled.add(socket);
+            }
+
+            // the server keeps filling the kernel socket buffers for a moment: measure once that settled
+            long growth = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                growth = Math.min(growth, usedHeapAfterGc() - baseline);
+            }
+            assertTrue(growth < (long) IMAGE_SIZE * PARALLEL_DOWNLOADS / 4, "Heap grew by " + growth + " bytes with "
+                    + PARALLEL_DOWNLOADS + " stalled downloads of " + IMAGE_SIZE + " bytes");
+            assertEquals(0, databaseLimiter.getStats().inUse(), "stalled downloads must not hold connections");
+        } finally {
+            for (Socket socket : stalled) {
+                socket.close();
+            }
+        }
+    }
+
+    private String imageUrl() {
+        return "http://127.0.0.1:" + port + "/api/animals/last/image?type=bear";
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * DatabaseConcurrencyLimiter Test
+ * -------------------------------
+ * The wrapped Hikari pool on an in-memory H2 database with two permits: a third connection
+ * times out (503 through the API), closing gives the permit back exactly once, unwrap() still
+ * reaches Hikari and H2, and in virtual-thread mode virtual threads stop at the carrier limit
+ * while platform threads still get the rest of the pool.
+ */
+package com.example.animalimages;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.h2.jdbc.JdbcConnection;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:limitertest;DB_CLOSE_DELAY=-1",
+        "animal.db.max-concurrency=2",
+        "animal.db.acquire-timeout-ms=200"
+})
+@AutoConfigureMockMvc
+public class DatabaseConcurrencyLimiterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private DatabaseConcurrencyLimiter limiter;
+
+    @Test
+    public void shouldTimeOutBeyondThePermitsAndReleaseOnClose() throws Exception {
+        assertTrue(dataSource.isWrapperFor(HikariDataSource.class));
+        long timedOutBefore = limiter.getStats().timedOut();
+
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertNotNull(second.unwrap(JdbcConnection.class));
+        assertEquals(2, limiter.getStats().inUse());
+
+        long start = System.nanoTime();
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertTrue(System.nanoTime() - start < 5_000_000_000L, "should give up after acquire-timeout-ms");
+        assertEquals(timedOutBefore + 1, limiter.getStats().timedOut());
+
+        // every request needing the database is turned away while the permits are held
+        mockMvc.perform(get("/api/animals?type=cat"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+
+        first.close();
+        first.close(); // a second close must not hand out an extra permit
+        assertEquals(1, limiter.getStats().inUse());
+        try (Connection third = dataSource.getConnection()) {
+            assertEquals(2, limiter.getStats().inUse());
+            assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        }
+        second.close();
+        assertEquals(0, limiter.getStats().inUse());
+
+        mockMvc.perform(get("/api/animals?type=cat")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/animals/db/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.maxConcurrency").value(2))
+                .andExpect(jsonPath("$.inUse").value(0));
+    }
+
+    @Test
+    public void virtualThreadsShouldStopAtTheCarrierLimit() throws Exception {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:limitervirtual;DB_CLOSE_DELAY=-1");
+        pool.setMaximumPoolSize(4);
+        DatabaseConcurrencyLimiter virtualLimiter = new DatabaseConcurrencyLimiter(0, 200, true);
+        DataSource limited = virtualLimiter.wrap(pool);
+        int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        int virtualLimit = Math.max(1, Math.min(4, carriers - 1));
+        assertEquals(4, virtualLimiter.getStats().maxConcurrency());
+        assertEquals(virtualLimit, virtualLimiter.getStats().virtualThreadLimit());
+
+        List<Connection> held = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            Thread.ofVirtual().start(() -> {
+                try {
+                    for (int i = 0; i < virtualLimit; i++) {
+                        held.add(limited.getConnection());
+                    }
+                    assertThrows(SQLTransientConnectionException.class, limited::getConnection);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }).join();
+            assertNull(failure.get());
+
+            // platform threads are only bound by the pool-sized permits
+            while (held.size() < 4) {
+                held.add(limited.getConnection());
+            }
+            assertThrows(SQLTransientConnectionException.class, limited::getConnection);
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+            pool.close();
+        }
+        assertEquals(0, virtualLimiter.getStats().inUse());
+    }
+}
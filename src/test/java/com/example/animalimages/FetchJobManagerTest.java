@@ -0,0 +1,124 @@
+/*
+ * FetchJobManager Test
+ * --------------------
+ * Runs background fetch jobs against the shared UpstreamStub and an in-memory H2 database.
+ * Checks the 202 → poll → COMPLETED flow, 429 when the job queue is full, and cancellation of
+ * queued and running jobs.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:fetchjobtest;DB_CLOSE_DELAY=-1",
+        "animal.jobs.workers=1",
+        "animal.jobs.queue-capacity=1"
+})
+@AutoConfigureMockMvc
+public class FetchJobManagerTest {
+
+    private static final CountDownLatch releaseSlowImages = new CountDownLatch(1);
+    private static final UpstreamStub upstream = UpstreamStub.start()
+            .route("/dog/", exchange -> { // holds every request until the test releases it
+                try {
+                    releaseSlowImages.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(200, 1);
+                exchange.getResponseBody().write(1);
+                exchange.close();
+            });
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FetchJobManager jobManager;
+
+    @DynamicPropertySource
+    static void upstreamUrls(DynamicPropertyRegistry registry) {
+        upstream.registerImageUrls(registry, "bear", "dog");
+    }
+
+    @AfterAll
+    public static void stopStub() {
+        releaseSlowImages.countDown();
+        upstream.close();
+    }
+
+    @Test
+    public void shouldRunJobInBackgroundAndReportProgress() throws Exception {
+        String location = mockMvc.perform(post("/api/animals/fetch").param("type", "bear").param("count", "5").param("async", "true"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.requested").value(5))
+                .andReturn().getResponse().getHeader("Location");
+        assertNotNull(location);
+        String id = location.substring(location.lastIndexOf('/') + 1);
+
+        FetchJob.Status status = awaitFinished(id);
+        assertEquals(FetchJob.State.COMPLETED, status.state());
+        assertEquals(5, status.done());
+        assertEquals(0, status.failed());
+        assertEquals(5, status.images().size());
+        assertTrue(status.bytes() > 0);
+        assertNotNull(status.finishedAt());
+    }
+
+    @Test
+    public void shouldRejectWhenQueueIsFullAndCancelJobs() throws Exception {
+        FetchJob.Status running = jobManager.submit("dog", 2);  // takes the only worker, blocks on the stub
+        awaitState(running.id(), FetchJob.State.RUNNING);
+        FetchJob.Status queued = jobManager.submit("dog", 2);   // takes the only queue slot
+
+        mockMvc.perform(post("/api/animals/fetch").param("type", "dog").param("count", "2").param("async", "true"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+
+        assertEquals(FetchJob.State.CANCELLED, jobManager.cancel(queued.id()).state());
+        // the freed slot accepts a new job again
+        FetchJob.Status next = jobManager.submit("bear", 1);
+
+        assertEquals(FetchJob.State.CANCELLED, jobManager.cancel(running.id()).state());
+        FetchJob.Status cancelled = awaitFinished(running.id());
+        assertEquals(FetchJob.State.CANCELLED, cancelled.state());
+        assertEquals(0, cancelled.done());
+
+        assertEquals(FetchJob.State.COMPLETED, awaitFinished(next.id()).state());
+        assertThrows(FetchJobNotFoundException.class, () -> jobManager.getStatus("no-such-job"));
+    }
+
+    private FetchJob.Status awaitFinished(String id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        FetchJob.Status status = jobManager.getStatus(id);
+        while (status.finishedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            status = jobManager.getStatus(id);
+        }
+        return status;
+    }
+
+    private void awaitState(String id, FetchJob.State state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (jobManager.getStatus(id).state() != state && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(state, jobManager.getStatus(id).state());
+    }
+}
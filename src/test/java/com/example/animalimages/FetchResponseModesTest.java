@@ -0,0 +1,104 @@
+/*
+ * Fetch Response Modes Test
+ * -------------------------
+ * POST /api/animals/fetch against the shared UpstreamStub and an in-memory H2 database:
+ * metadata only by default, base64 bytes with include=data, and one NDJSON line per image
+ * when the client asks for application/x-ndjson.
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:fetchmodestest;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+public class FetchResponseModesTest {
+
+    private static final UpstreamStub upstream = UpstreamStub.start();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @DynamicPropertySource
+    static void upstreamUrls(DynamicPropertyRegistry registry) {
+        upstream.registerImageUrls(registry, "bear");
+    }
+
+    @AfterAll
+    public static void stopStub() {
+        upstream.close();
+    }
+
+    @Test
+    public void shouldReturnMetadataOnlyByDefault() throws Exception {
+        mockMvc.perform(post("/api/animals/fetch").param("type", "bear").param("count", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].contentHash").exists())
+                .andExpect(jsonPath("$[0].sizeBytes").exists())
+                .andExpect(jsonPath("$[0].imageData").doesNotExist());
+    }
+
+    @Test
+    public void shouldIncludeBytesWhenAsked() throws Exception {
+        mockMvc.perform(post("/api/animals/fetch").param("type", "bear").param("count", "2").param("include", "data"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].imageData").isString());
+
+        mockMvc.perform(post("/api/animals/fetch").param("type", "bear").param("count", "2").param("include", "everything"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldStreamOneNdjsonLinePerImage() throws Exception {
+        MvcResult started = mockMvc.perform(post("/api/animals/fetch").param("type", "bear").param("count", "4")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = body.lines().toList();
+        assertEquals(4, lines.size(), body);
+        Set<String> hashes = new HashSet<>();
+        for (String line : lines) {
+            JsonNode record = objectMapper.readTree(line);
+            assertEquals("bear", record.get("animalType").asText());
+            assertFalse(record.has("imageData"));
+            hashes.add(record.get("contentHash").asText());
+        }
+        assertEquals(4, hashes.size());
+
+        mockMvc.perform(post("/api/animals/fetch").param("type", "unicorn").param("count", "1")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * FileSystemImageStore Test
+ * -------------------------
+ * Plain unit tests (no Spring context) for the segment file image store: memory-mapped
+ * reads and Range-style skips, index recovery after a restart (including a torn last
+ * record), tombstones, segment rolling and the fallback for blobs it does not hold, compaction
+ * of sparse segments (tombstones carried over while an older segment survives), and
+ * batches reusing bytes while their last reference is being deleted (the registry is a map
+ * here, batch transactions are plain transaction synchronizations).
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileSystemImageStoreTest {
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] payload(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void shouldStoreOutsideTheRegistryRowAndStreamBack() throws Exception {
+        FileSystemImageStore store = new FileSystemImageStore(directory, SEGMENT_SIZE, new MissingStore());
+        byte[] data = payload(10_000, 1);
+        String hash = ContentHash.sha256Hex(data);
+
+        ImageBlob blob = store.store(hash, data, 3);
+        store.flush();
+
+        assertNull(blob.getData(), "Registry row must not carry the bytes");
+        assertEquals(10_000L, blob.getSizeBytes());
+        assertArrayEquals(data, store.read(hash));
+
+        Resource resource = store.open(hash, blob.getSizeBytes());
+        assertEquals(10_000, resource.contentLength());
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals(100, in.skip(100));
+            assertArrayEquals(Arrays.copyOfRange(data, 100, 200), in.readNBytes(100));
+        }
+        store.close();
+    }
+
+    @Test
+    public void shouldRecoverIndexAndDropTornTailOnRestart() throws Exception {
+        byte[] kept = payload(5_000, 2);
+        byte[] deleted = payload(5_000, 3);
+        FileSystemImageStore store = new FileSystemImageStore(directory, SEGMENT_SIZE, new MissingStore());
+        store.store(ContentHash.sha256Hex(kept), kept, 1);
+        store.store(ContentHash.sha256Hex(deleted), deleted, 1);
+        store.delete(ContentHash.sha256Hex(deleted));
+        store.close();
+
+        // simulate a crash in the middle of appending a record
+        Path segment = directory.resolve("segment-000001.dat");
+        long validSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[]{0x49, 0x4D, 0x47}));
+        }
+
+        FileSystemImageStore reopened = new FileSystemImageStore(directory, SEGMENT_SIZE, new MissingStore());
+        assertEquals(validSize, Files.size(segment), "Torn record must be truncated");
+        assertArrayEquals(kept, reopened.read(ContentHash.sha256Hex(kept)));
+        assertFalse(reopened.contains(ContentHash.sha256Hex(deleted)));
+        reopened.close();
+    }
+
+    @Test
+    public void shouldRollSegmentsAndFallBackForUnknownHashes() throws Exception {
+        byte[] legacy = "still in H2".getBytes();
+        String legacyHash = ContentHash.sha256Hex(legacy);
+        FileSystemImageStore store = new FileSystemImageStore(directory, 1_000, new MissingStore() {
+            @Override
+            public Resource open(String hash, Long sizeBytes) {
+                return hash.equals(legacyHash) ? new ByteArrayResource(legacy) : super.open(hash, sizeBytes);
+            }
+        });
+
+        byte[] first = payload(800, 4);
+        byte[] second = payload(800, 5);
+        store.store(ContentHash.sha256Hex(first), first, 1);
+        store.store(ContentHash.sha256Hex(second), second, 1);
+
+        assertTrue(Files.exists(directory.resolve("segment-000002.dat")), "Second record must start a new segment");
+        assertArrayEquals(first, store.read(ContentHash.sha256Hex(first)));
+        assertArrayEquals(second, store.read(ContentHash.sha256Hex(second)));
+        assertArrayEquals(legacy, store.open(legacyHash, null).getContentAsByteArray());
+        store.close();
+    }
+
+    @Test
+    public void shouldCompactSparseSegmentsAndKeepDeletesAfterRestart() throws Exception {
+        // 3 records of ~3 KB per 10 KB segment
+        FileSystemImageStore store = new FileSystemImageStore(directory, 10_000, new MissingStore());
+        Map<String, byte[]> blobs = new TreeMap<>();
+        for (String name : List.of("a", "b", "x", "c", "d", "h")) { // segment 1: a b x, segment 2: c d h
+            byte[] data = payload(3_000, name.charAt(0));
+            blobs.put(name, data);
+            store.store(ContentHash.sha256Hex(data), data, 1);
+        }
+        for (String name : List.of("a", "c", "d")) { // tombstones land in segment 2
+            store.delete(ContentHash.sha256Hex(blobs.get(name)));
+        }
+        byte[] k = payload(3_000, 'k');
+        store.store(ContentHash.sha256Hex(k), k, 1); // segment 3, the active one
+        String h = ContentHash.sha256Hex(blobs.get("h"));
+        Resource openedBefore = store.open(h, 3_000L);
+
+        FileSystemImageStore.SegmentCompaction result = store.compactSegments(50, System.nanoTime() + 10_000_000_000L);
+
+        assertEquals(1, result.segmentsRemoved(), "Segment 1 is 2/3 live and stays, segment 2 is 1/3 live");
+        assertTrue(result.complete());
+        assertTrue(result.reclaimedBytes() > 5_000);
+        assertTrue(Files.exists(directory.resolve("segment-000001.dat")));
+        assertFalse(Files.exists(directory.resolve("segment-000002.dat")));
+        assertArrayEquals(blobs.get("h"), store.read(h));
+        try (InputStream in = openedBefore.getInputStream()) {
+            assertArrayEquals(blobs.get("h"), in.readAllBytes(), "A resource opened before the move must follow it");
+        }
+        store.close();
+
+        // a's tombstone was carried over: its bytes in segment 1 must not come back
+        FileSystemImageStore reopened = new FileSystemImageStore(directory, 10_000, new MissingStore());
+        for (String name : List.of("b", "x", "h")) {
+            assertArrayEquals(blobs.get(name), reopened.read(ContentHash.sha256Hex(blobs.get(name))));
+        }
+        assertArrayEquals(k, reopened.read(ContentHash.sha256Hex(k)));
+        for (String name : List.of("a", "c", "d")) {
+            assertFalse(reopened.contains(ContentHash.sha256Hex(blobs.get(name))), name + " was deleted");
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void shouldKeepBytesStoredByABatchThatIsStillOpen() throws Exception {
+        Map<String, Integer> registry = new ConcurrentHashMap<>();
+        FileSystemImageStore store = new FileSystemImageStore(directory, SEGMENT_SIZE, new MissingStore(), registry::containsKey);
+        byte[] data = payload(2_000, 6);
+        String hash = ContentHash.sha256Hex(data);
+        store.store(hash, data, 1);
+
+        // the last reference was deleted; a batch reuses the bytes before the tombstone is written
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            store.store(hash, data, 1);
+            store.delete(hash);
+            assertTrue(store.contains(hash), "Bytes of an open batch must survive the delete");
+            registry.put(hash, 1);
+            TransactionSynchronizationUtils.invokeAfterCompletion(
+                    TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        store.delete(hash);
+        assertArrayEquals(data, store.read(hash), "Registered again: the tombstone must be skipped");
+
+        registry.remove(hash);
+        store.delete(hash);
+        assertFalse(store.contains(hash));
+        store.close();
+    }
+
+    @Test
+    public void shouldNeverDropBytesOfRegisteredBlobsUnderConcurrentStoreAndDelete() throws Exception {
+        Map<String, Integer> registry = new ConcurrentHashMap<>(); // hash → reference count
+        FileSystemImageStore store = new FileSystemImageStore(directory, SEGMENT_SIZE, new MissingStore(), registry::containsKey);
+        List<byte[]> payloads = List.of(payload(500, 10), payload(500, 11));
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 6; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 5_000; i++) {
+                    byte[] data = payloads.get(ThreadLocalRandom.current().nextInt(payloads.size()));
+                    String hash = ContentHash.sha256Hex(data);
+                    storeInBatch(store, registry, hash, data);
+                    // while this image references the blob, its bytes must be there
+                    assertArrayEquals(data, store.read(hash), "Registered blob lost its bytes");
+                    if (registry.computeIfPresent(hash, (key, count) -> count == 1 ? null : count - 1) == null) {
+                        store.delete(hash); // afterCommit of the delete that released the last reference
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            store.close();
+        }
+    }
+
+    /* What ImageBatchWriter does: bump an existing registry row, or store the bytes and insert one */
+    private static void storeInBatch(FileSystemImageStore store, Map<String, Integer> registry, String hash, byte[] data) {
+        if (registry.computeIfPresent(hash, (key, count) -> count + 1) != null) {
+            return;
+        }
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            store.store(hash, data, 1);
+            registry.merge(hash, 1, Integer::sum); // commit
+            TransactionSynchronizationUtils.invokeAfterCompletion(
+                    TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    /* Fallback holding nothing, like an empty H2 blob table */
+    private static class MissingStore implements ImageStore {
+        @Override
+        public ImageBlob store(String hash, byte[] data, long refCount) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Resource open(String hash, Long sizeBytes) {
+            throw new ImageNotFoundException("No image data found for hash: " + hash);
+        }
+
+        @Override
+        public byte[] read(String hash) {
+            throw new ImageNotFoundException("No image data found for hash: " + hash);
+        }
+
+        @Override
+        public void delete(String hash) {
+        }
+    }
+}
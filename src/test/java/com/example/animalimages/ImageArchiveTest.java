@@ -0,0 +1,166 @@
+/*
+ * ImageArchive Test
+ * -----------------
+ * Round trip through GET /api/animals/export and POST /api/animals/import on an in-memory
+ * H2 database: the ZIP holds one entry per image plus a manifest, the type/time filter is
+ * applied, an export spanning several pages has every image once, deleted images come back
+ * with their metadata and bytes, a second import skips what is already stored, and uploads
+ * that aren't archives are rejected with 400.
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:archivetest;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+public class ImageArchiveTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2001, 2, 3, 0, 0);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private AnimalImageRepository repository;
+
+    @Autowired
+    private AnimalImageService service;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void shouldExportAndImportImagesWithManifest() throws Exception {
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pending.add(batchWriter.submit(new AnimalImage("duck", "http://stub/duck/" + i + ".png",
+                    DAY.plusHours(i), ("duck bytes " + i).getBytes(StandardCharsets.UTF_8))));
+        }
+        pending.add(batchWriter.submit(new AnimalImage("cat", "http://stub/cat/1", DAY.plusHours(1),
+                "cat bytes".getBytes(StandardCharsets.UTF_8))));
+        pending.add(batchWriter.submit(new AnimalImage("duck", "http://stub/duck/late", DAY.plusDays(1),
+                "late duck".getBytes(StandardCharsets.UTF_8))));
+        List<AnimalImage> stored = pending.stream().map(CompletableFuture::join).toList();
+
+        byte[] archive = export("/api/animals/export?type=duck&from=2001-02-03T00:00:00&to=2001-02-04T00:00:00");
+
+        Map<String, byte[]> entries = unzip(archive);
+        assertEquals(4, entries.size(), "3 ducks of that day plus the manifest");
+        assertArrayEquals("duck bytes 0".getBytes(StandardCharsets.UTF_8),
+                entries.get("images/" + stored.get(0).getId() + ".png"));
+        List<ImageArchive.ManifestEntry> manifest = new String(entries.get(ImageArchive.MANIFEST), StandardCharsets.UTF_8)
+                .lines()
+                .map(line -> read(line, ImageArchive.ManifestEntry.class))
+                .toList();
+        assertEquals(List.of(stored.get(0).getId(), stored.get(1).getId(), stored.get(2).getId()),
+                manifest.stream().map(ImageArchive.ManifestEntry::id).toList(), "oldest first");
+        assertEquals(stored.get(2).getContentHash(), manifest.get(2).contentHash());
+
+        service.deleteImages(List.of(stored.get(0).getId(), stored.get(1).getId()));
+
+        mockMvc.perform(post("/api/animals/import").contentType("application/zip").content(archive))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.skipped").value(1))
+                .andExpect(jsonPath("$.failed").value(0));
+
+        AnimalImage restored = repository.findAll().stream()
+                .filter(image -> image.getImageUrl().equals("http://stub/duck/0.png"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(DAY, restored.getTimestamp());
+        assertArrayEquals("duck bytes 0".getBytes(StandardCharsets.UTF_8), service.getImageData(restored));
+
+        // everything is stored now
+        mockMvc.perform(post("/api/animals/import").contentType("application/zip").content(archive))
+                .andExpect(jsonPath("$.imported").value(0))
+                .andExpect(jsonPath("$.skipped").value(3));
+    }
+
+    @Test
+    public void shouldExportEveryImageAcrossPagesWithEqualTimestamps() throws Exception {
+        LocalDateTime sameTime = DAY.minusYears(1); // only the id orders these rows
+        int count = ImageArchive.EXPORT_PAGE_SIZE + 5;
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            pending.add(batchWriter.submit(new AnimalImage("bear", "http://stub/bear/" + i, sameTime,
+                    ("bear bytes " + i).getBytes(StandardCharsets.UTF_8))));
+        }
+        List<Long> ids = pending.stream().map(future -> future.join().getId()).sorted().toList();
+
+        byte[] archive = export("/api/animals/export?type=bear&from=2000-02-03T00:00:00&to=2000-02-04T00:00:00");
+
+        List<Long> exported = new String(unzip(archive).get(ImageArchive.MANIFEST), StandardCharsets.UTF_8)
+                .lines()
+                .map(line -> read(line, ImageArchive.ManifestEntry.class).id())
+                .toList();
+        assertEquals(ids, exported, "every image once, in id order, across page boundaries");
+    }
+
+    @Test
+    public void shouldRejectUploadsThatAreNotArchives() throws Exception {
+        mockMvc.perform(post("/api/animals/import").contentType("application/zip").content("not a zip".getBytes()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/animals/export?type=lion"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private byte[] export(String url) throws Exception {
+        MvcResult started = mockMvc.perform(get(url))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/zip"))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] archive) throws Exception {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * ImageBatchWriter Test
+ * ---------------------
+ * Uses Hibernate statistics on an in-memory H2 database to show how the write-behind
+ * stage groups images: 25 submitted images with batch size 10 must be stored with
+ * 3 transactions instead of 25, and INSERTs (metadata + payload rows) must be JDBC-batched.
+ * A type added by configuration only (goat) gets its own writer partition, and the same new
+ * payload written by two partitions at once still ends up as one blob with two references.
+ */
+package com.example.animalimages;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:batchwritertest;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "animal.persist.batch-size=10",
+        "animal.persist.linger-ms=500", // long enough for all 25 submissions to be queued
+        "animal.image.url.goat=http://stub/goat/{width}/{height}"
+})
+public class ImageBatchWriterTest {
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ImageBlobRepository blobRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void shouldStoreImagesInOneTransactionPerBatch() {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            pending.add(batchWriter.submit(new AnimalImage("dog", "http://stub/" + i, LocalDateTime.now(), new byte[]{(byte) i})));
+        }
+        for (CompletableFuture<AnimalImage> future : pending) {
+            assertNotNull(future.join().getId(), "Saved image must have an id");
+        }
+
+        long inserts = stats.getEntityInsertCount();
+        long transactions = stats.getSuccessfulTransactionCount();
+        assertEquals(50, inserts, "Expected one metadata and one payload row per image");
+        assertEquals(3, transactions, "Expected 3 transactions of at most 10 inserts each");
+        assertTrue(stats.getPrepareStatementCount() < 25, "INSERTs were not JDBC-batched");
+        assertEquals(0, stats.getEntityStatistics(ImageBlob.class.getName()).getLoadCount(),
+                "Payload rows must be inserted without being read back");
+    }
+
+    @Test
+    public void shouldWriteEachTypeInItsOwnPartitionAndShareNewBlobsAcrossThem() {
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] payload = ("shared-" + i + "-" + System.nanoTime()).getBytes();
+            for (String type : List.of("dog", "goat")) {
+                AnimalImage image = new AnimalImage(type, "http://stub/" + type + "/" + i, LocalDateTime.now(), payload);
+                pending.add(batchWriter.submit(image));
+            }
+            hashes.add(ContentHash.sha256Hex(payload));
+        }
+        for (CompletableFuture<AnimalImage> future : pending) {
+            assertNotNull(future.join().getId(), "Saved image must have an id");
+        }
+
+        assertTrue(batchWriter.getQueueDepths().keySet().containsAll(List.of("dog", "goat")));
+        assertNotNull(meterRegistry.find("animal.db.partition.queue.depth").tag("type", "goat").gauge());
+        for (String hash : hashes) {
+            ImageBlob blob = blobRepository.findById(hash).orElseThrow();
+            assertEquals(2, blob.getRefCount(), "one blob, referenced by the dog and the goat image");
+        }
+    }
+}
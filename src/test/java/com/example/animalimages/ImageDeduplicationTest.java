@@ -0,0 +1,62 @@
+/*
+ * Image Deduplication Test
+ * ------------------------
+ * Stores identical payloads through the batch writer on an in-memory H2 database and checks
+ * that the bytes are kept once with a reference count, that the dedup ratio reflects it, and
+ * that deleting images releases the blob only with its last reference.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:deduptest;DB_CLOSE_DELAY=-1")
+public class ImageDeduplicationTest {
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private AnimalImageService service;
+
+    @Autowired
+    private ImageBlobRepository blobRepository;
+
+    @Test
+    public void shouldStoreIdenticalPayloadsOnceAndReleaseOnDelete() {
+        byte[] payload = "same bear, same size".getBytes();
+        String hash = ContentHash.sha256Hex(payload);
+
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            pending.add(batchWriter.submit(new AnimalImage("bear", "http://stub/bear/250/250", LocalDateTime.now(), payload)));
+        }
+        List<Long> ids = new ArrayList<>();
+        pending.forEach(future -> ids.add(future.join().getId()));
+        // a later batch referencing the same content only bumps the counter
+        ids.add(batchWriter.submit(new AnimalImage("dog", "http://stub/dog/250/250", LocalDateTime.now(), payload)).join().getId());
+
+        assertEquals(1, blobRepository.count());
+        assertEquals(5, blobRepository.findById(hash).orElseThrow().getRefCount());
+
+        AnimalImageService.StorageStats stats = service.getStorageStats();
+        assertEquals(5L * payload.length, stats.logicalBytes());
+        assertEquals(payload.length, stats.physicalBytes());
+        assertEquals(5.0, stats.dedupRatio(), 0.001);
+
+        service.deleteImage(ids.get(0));
+        assertEquals(4, blobRepository.findById(hash).orElseThrow().getRefCount());
+
+        assertEquals(4, service.deleteImages(ids.subList(1, ids.size())));
+        assertFalse(blobRepository.existsById(hash), "Blob must be deleted with its last reference");
+        assertThrows(ImageNotFoundException.class, () -> service.getLastImage("bear"));
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * ImageDownloader Test
+ * --------------------
+ * Runs the download stage against the shared UpstreamStub, so no internet access is needed.
+ * Checks that results keep the requested order, that the per-request limit is honoured
+ * and that a slow upstream is cut off by the read timeout. The stub also injects errors and
+ * latency to exercise UpstreamGuard: retries, the circuit breaker (including which attempt
+ * decides a half-open circuit) and the adaptive host limit.
+ */
+package com.example.animalimages;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageDownloaderTest {
+
+    private UpstreamStub upstream;
+    private String baseUrl;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger flakyCalls = new AtomicInteger();
+    private final AtomicInteger downCalls = new AtomicInteger();
+    private final AtomicInteger imgCalls = new AtomicInteger();
+
+    /**
+     * Stub upstream: /img/{n} answers with the bytes of "n" after a short delay,
+     * /slow sleeps far longer than the client read timeout, /flaky answers 503 twice and then
+     * 200, /down always answers 500 and /lagging answers after 150 ms.
+     */
+    @BeforeEach
+    public void startStub() {
+        upstream = UpstreamStub.start();
+        upstream.route("/img/", exchange -> {
+            imgCalls.incrementAndGet();
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                String n = exchange.getRequestURI().getPath().substring("/img/".length());
+                sleep(50 + (Integer.parseInt(n) % 3) * 40L); // later URLs may finish first
+                byte[] body = n.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        upstream.route("/slow", exchange -> {
+            sleep(3_000);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        upstream.route("/flaky", exchange -> {
+            boolean fail = flakyCalls.incrementAndGet() <= 2;
+            exchange.sendResponseHeaders(fail ? 503 : 200, fail ? -1 : 2);
+            if (!fail) exchange.getResponseBody().write(new byte[]{1, 2});
+            exchange.close();
+        });
+        upstream.route("/down", exchange -> {
+            downCalls.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        upstream.route("/lagging", exchange -> {
+            sleep(150);
+            exchange.sendResponseHeaders(200, 1);
+            exchange.getResponseBody().write(1);
+            exchange.close();
+        });
+        baseUrl = upstream.url("");
+    }
+
+    @AfterEach
+    public void stopStub() {
+        upstream.close();
+    }
+
+    @Test
+    public void shouldReturnResultsInRequestOrder() {
+        ImageDownloader downloader = new ImageDownloader(1_000, 2_000, 4, 32, guard(1));
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            urls.add(baseUrl + "/img/" + i);
+        }
+
+        List<ImageDownloader.Download> results = downloader.downloadAll(urls);
+
+        assertEquals(12, results.size());
+        for (int i = 0; i < 12; i++) {
+            assertTrue(results.get(i).isSuccess());
+            assertEquals(urls.get(i), results.get(i).url());
+            assertEquals(String.valueOf(i), new String(results.get(i).data(), StandardCharsets.UTF_8));
+        }
+        assertTrue(maxInFlight.get() <= 4, "Per-request limit exceeded: " + maxInFlight.get());
+        assertTrue(maxInFlight.get() > 1, "Downloads did not run concurrently");
+    }
+
+    @Test
+    public void shouldFailSlowDownloadWithoutBlockingOthers() {
+        ImageDownloader downloader = new ImageDownloader(1_000, 300, 4, 32, guard(1));
+
+        long start = System.nanoTime();
+        List<ImageDownloader.Download> results = downloader.downloadAll(List.of(baseUrl + "/slow", baseUrl + "/img/1"));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertFalse(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertTrue(elapsedMs < 2_000, "Read timeout not applied, took " + elapsedMs + " ms");
+    }
+
+    @Test
+    public void shouldRetryTransientErrorsWithinBudget() {
+        UpstreamGuard guard = guard(3);
+        ImageDownloader downloader = new ImageDownloader(1_000, 2_000, 4, 32, guard);
+
+        ImageDownloader.Download result = downloader.download(baseUrl + "/flaky");
+
+        assertTrue(result.isSuccess(), () -> "Expected success after retries: " + result.error());
+        assertEquals(3, flakyCalls.get());
+        UpstreamGuard.HostState host = guard.getStates().get(0);
+        assertEquals(2, host.failures());
+        assertEquals(1, host.successes());
+        assertEquals(UpstreamGuard.CircuitState.CLOSED, host.circuit());
+    }
+
+    @Test
+    public void shouldOpenCircuitAndFailFastForUnhealthyHost() throws Exception {
+        // 3 consecutive failures open the circuit for 300 ms; no retries so calls are easy to count
+        UpstreamGuard guard = new UpstreamGuard(new SimpleMeterRegistry(), 4, 32, 2_000, 3, 300, 1, 10, 5_000);
+        ImageDownloader downloader = new ImageDownloader(1_000, 2_000, 4, 32, guard);
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(downloader.download(baseUrl + "/down").isSuccess());
+        }
+        assertEquals(UpstreamGuard.CircuitState.OPEN, guard.getStates().get(0).circuit());
+
+        long start = System.nanoTime();
+        ImageDownloader.Download rejected = downloader.download(baseUrl + "/down");
+        assertInstanceOf(UpstreamGuard.UpstreamUnavailableException.class, rejected.error());
+        assertTrue(System.nanoTime() - start < 50_000_000L, "Open circuit must fail fast");
+        assertEquals(3, downCalls.get(), "Open circuit must not reach the host");
+
+        // after the open period a single probe goes through; it fails, so the circuit opens again
+        Thread.sleep(350);
+        assertFalse(downloader.download(baseUrl + "/down").isSuccess());
+        assertEquals(4, downCalls.get());
+        assertEquals(UpstreamGuard.CircuitState.OPEN, guard.getStates().get(0).circuit());
+    }
+
+    @Test
+    public void shouldLetOnlyTheProbeDecideAHalfOpenCircuit() throws Exception {
+        // one failure opens the circuit for 100 ms
+        UpstreamGuard guard = new UpstreamGuard(new SimpleMeterRegistry(), 8, 32, 2_000, 1, 100, 1, 10, 5_000);
+        URI host = URI.create(baseUrl + "/img/1");
+        long deadline = guard.deadlineFromNow();
+        UpstreamGuard.Permit staleSuccess = guard.acquire(host, deadline);
+        UpstreamGuard.Permit staleFailure = guard.acquire(host, deadline);
+        guard.release(guard.acquire(host, deadline), UpstreamGuard.Outcome.FAILURE);
+        assertEquals(UpstreamGuard.CircuitState.OPEN, guard.getStates().get(0).circuit());
+
+        Thread.sleep(150);
+        UpstreamGuard.Permit probe = guard.acquire(host, deadline);
+        assertTrue(probe.probe());
+        guard.release(staleSuccess, UpstreamGuard.Outcome.SUCCESS);
+        guard.release(staleFailure, UpstreamGuard.Outcome.FAILURE);
+        assertEquals(UpstreamGuard.CircuitState.HALF_OPEN, guard.getStates().get(0).circuit(),
+                "Attempts started before the circuit opened must not decide it");
+        assertThrows(UpstreamGuard.UpstreamUnavailableException.class, () -> guard.acquire(host, deadline),
+                "The probe is still running");
+
+        guard.release(probe, UpstreamGuard.Outcome.SUCCESS);
+        assertEquals(UpstreamGuard.CircuitState.CLOSED, guard.getStates().get(0).circuit());
+    }
+
+    @Test
+    public void shouldHalveLimitForSlowHostAndGrowItForFastOne() {
+        // responses slower than 100 ms count as congestion
+        UpstreamGuard slowGuard = new UpstreamGuard(new SimpleMeterRegistry(), 8, 32, 100, 100, 10_000, 1, 10, 5_000);
+        new ImageDownloader(1_000, 2_000, 8, 32, slowGuard)
+                .downloadAll(List.of(baseUrl + "/lagging", baseUrl + "/lagging", baseUrl + "/lagging"));
+        UpstreamGuard.HostState slow = slowGuard.getStates().get(0);
+        assertEquals(4.0, slow.limit(), 0.001, "A burst of slow answers halves the limit once");
+        assertEquals(UpstreamGuard.CircuitState.CLOSED, slow.circuit());
+
+        UpstreamGuard fastGuard = new UpstreamGuard(new SimpleMeterRegistry(), 8, 32, 2_000, 5, 10_000, 1, 10, 5_000);
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            urls.add(baseUrl + "/img/" + i);
+        }
+        new ImageDownloader(1_000, 2_000, 4, 32, fastGuard).downloadAll(urls);
+        double grown = fastGuard.getStates().get(0).limit();
+        assertTrue(grown > 9.5 && grown < 10.0, "16 fast answers add just under 2 to a limit of 8, got " + grown);
+    }
+
+    @Test
+    public void shouldNotRunFarAheadOfASlowConsumer() {
+        ImageDownloader downloader = new ImageDownloader(1_000, 2_000, 2, 32, guard(1));
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            urls.add(baseUrl + "/img/" + i);
+        }
+        List<Integer> startedWhileBlocked = new ArrayList<>();
+
+        downloader.downloadAll(urls, download -> {
+            if (startedWhileBlocked.isEmpty()) {
+                sleep(800); // long enough for the whole batch at full speed
+                startedWhileBlocked.add(imgCalls.get());
+            }
+        });
+
+        assertTrue(startedWhileBlocked.get(0) <= 4, "Read ahead of 2 x 2 exceeded: " + startedWhileBlocked.get(0));
+        assertEquals(20, imgCalls.get());
+    }
+
+    @Test
+    public void shouldNotCountWaitsForTheGlobalLimitAsHostLatency() {
+        // one global slot: the 3rd answer is ready ~450 ms after it was requested, but each takes ~150 ms
+        UpstreamGuard guard = new UpstreamGuard(new SimpleMeterRegistry(), 8, 32, 300, 5, 10_000, 1, 10, 5_000);
+        List<ImageDownloader.Download> results = new ImageDownloader(1_000, 2_000, 4, 1, guard)
+                .downloadAll(List.of(baseUrl + "/lagging", baseUrl + "/lagging", baseUrl + "/lagging"));
+
+        assertTrue(results.stream().allMatch(ImageDownloader.Download::isSuccess));
+        assertTrue(guard.getStates().get(0).limit() > 8.0, "Local queueing must not halve a healthy host's limit");
+    }
+
+    @Test
+    public void shouldTimeOutWaitingForTheGlobalLimitWithinTheBudget() {
+        // one global slot taken by /slow for 1 s; the other download's budget is 200 ms
+        UpstreamGuard guard = new UpstreamGuard(new SimpleMeterRegistry(), 8, 32, 2_000, 5, 10_000, 1, 10, 200);
+        ImageDownloader downloader = new ImageDownloader(1_000, 1_000, 4, 1, guard);
+
+        long start = System.nanoTime();
+        List<ImageDownloader.Download> results = downloader.downloadAll(List.of(baseUrl + "/slow", baseUrl + "/lagging"));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(elapsedMs < 1_500, "Global wait ignored the budget, took " + elapsedMs + " ms");
+    }
+
+    /* guard with generous limits, as configured by default, and the given attempts per download */
+    static UpstreamGuard guard(int maxAttempts) {
+        return new UpstreamGuard(new SimpleMeterRegistry(), 8, 32, 2_000, 5, 10_000, maxAttempts, 20, 20_000);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * ImageEventPublisher Test
+ * ------------------------
+ * GET /api/animals/stream on a random port with an in-memory H2 database: stored images arrive
+ * as "image" events filtered by type, Last-Event-ID replays what was missed (or sends "reset"
+ * when it is older than the replay window), and a subscriber that stops reading is
+ * disconnected or loses events once its buffer is full, without holding up the others.
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:eventstest;DB_CLOSE_DELAY=-1",
+        "animal.stream.replay-size=3"
+})
+public class ImageEventPublisherTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private AnimalImageRepository repository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ImageEventPublisher eventPublisher;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void shouldPushStoredImagesOfTheSubscribedType() throws Exception {
+        try (EventReader cats = open("?type=cat", null)) {
+            save("dog");
+            AnimalImage cat = save("cat");
+
+            Map<String, String> event = cats.next();
+            assertEquals("image", event.get("event"));
+            assertTrue(Long.parseLong(event.get("id")) > 0, "event ids are a publish sequence");
+            JsonNode data = objectMapper.readTree(event.get("data"));
+            assertEquals(cat.getId(), imageId(event));
+            assertEquals("cat", data.get("animalType").asText());
+            assertEquals(cat.getContentHash(), data.get("contentHash").asText());
+            assertNull(cats.poll(300), "the dog must not reach a cat stream");
+        }
+        assertEquals(400, client.send(HttpRequest.newBuilder(URI.create(streamUrl("?type=unicorn"))).build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    public void shouldReplayMissedEventsAfterLastEventId() throws Exception {
+        long seen;
+        try (EventReader bears = open("?type=bear", null)) {
+            save("bear");
+            seen = Long.parseLong(bears.next().get("id")); // what the client sends back as Last-Event-ID
+        }
+        AnimalImage missed1 = save("bear");
+        save("duck");
+        AnimalImage missed2 = save("bear");
+
+        try (EventReader bears = open("?type=bear", seen)) {
+            assertEquals(missed1.getId(), imageId(bears.next()));
+            assertEquals(missed2.getId(), imageId(bears.next()));
+            AnimalImage live = save("bear");
+            assertEquals(live.getId(), imageId(bears.next()));
+        }
+
+        // replay-size=3: an id from before the window cannot be resumed
+        long published = eventPublisher.getStats().published();
+        for (int i = 0; i < 4; i++) {
+            save("bear");
+        }
+        waitFor(() -> eventPublisher.getStats().published() >= published + 4, 5000); // published asynchronously
+        try (EventReader bears = open("?type=bear", seen)) {
+            assertEquals("reset", bears.next().get("event"));
+            assertEquals("image", bears.next().get("event"));
+        }
+    }
+
+    @Test
+    public void shouldDisconnectOrDropForASubscriberThatDoesNotKeepUp() throws Exception {
+        for (String policy : List.of("disconnect", "drop")) {
+            ImageEventPublisher publisher = new ImageEventPublisher(repository, objectMapper, 4, policy, 10, 2, 0, 0);
+            CountDownLatch unblock = new CountDownLatch(1);
+            AtomicBoolean completed = new AtomicBoolean();
+            SseEmitter stalled = new SseEmitter(0L) {
+                @Override
+                public synchronized void send(Set<DataWithMediaType> items) throws IOException {
+                    try {
+                        unblock.await(); // a client that stopped reading
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.send(items);
+                }
+
+                @Override
+                public synchronized void complete() {
+                    completed.set(true);
+                    super.complete();
+                }
+            };
+            publisher.subscribe(null, null, stalled);
+            publisher.subscribe("dog", null); // a healthy subscriber next to it
+
+            for (long id = 1; id <= 10; id++) {
+                AnimalImage image = new AnimalImage("dog", "http://stub/dog/" + id, LocalDateTime.now(), new byte[] {1});
+                image.setId(100_000 + id);
+                publisher.onSaved(List.of(image));
+                long expected = id;
+                waitFor(() -> publisher.getStats().sent() >= expected, 5000); // the healthy one keeps up
+            }
+
+            if (policy.equals("disconnect")) {
+                assertEquals(1, publisher.getStats().disconnected());
+                assertEquals(1, publisher.getStats().subscribers());
+            } else {
+                assertEquals(6, publisher.getStats().dropped()); // 4 buffered behind the stalled write
+                assertEquals(2, publisher.getStats().subscribers());
+            }
+            assertEquals(10, publisher.getStats().published());
+            assertEquals(10, publisher.getStats().sent());
+            unblock.countDown();
+            if (policy.equals("disconnect")) {
+                waitFor(completed::get, 5000);
+            }
+            publisher.shutdown();
+        }
+    }
+
+    private AnimalImage save(String type) {
+        return batchWriter.submit(new AnimalImage(type, "http://stub/" + type + "/" + System.nanoTime(),
+                LocalDateTime.now(), (type + System.nanoTime()).getBytes())).join();
+    }
+
+    private Long imageId(Map<String, String> event) throws IOException {
+        return objectMapper.readTree(event.get("data")).get("id").asLong();
+    }
+
+    private String streamUrl(String query) {
+        return "http://localhost:" + port + "/api/animals/stream" + query;
+    }
+
+    private EventReader open(String query, Long lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(streamUrl(query)))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", String.valueOf(lastEventId));
+        }
+        HttpResponse<Stream<String>> response =
+                client.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        return new EventReader(response.body());
+    }
+
+    private static void waitFor(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in " + timeoutMs + " ms");
+            Thread.sleep(20);
+        }
+    }
+
+    /* reads SSE lines on a virtual thread; next() returns the fields of one named event */
+    private static final class EventReader implements AutoCloseable {
+
+        private final Stream<String> lines;
+        private final BlockingQueue<Map<String, String>> events = new LinkedBlockingQueue<>();
+
+        EventReader(Stream<String> lines) {
+            this.lines = lines;
+            Thread.ofVirtual().start(() -> {
+                Map<String, String> fields = new HashMap<>();
+                try {
+                    lines.forEach(line -> {
+                        if (line.isEmpty()) {
+                            if (fields.containsKey("event")) { // skips retry: and keepalive comments
+                                events.add(new HashMap<>(fields));
+                            }
+                            fields.clear();
+                        } else if (!line.startsWith(":")) {
+                            int colon = line.indexOf(':');
+                            fields.put(line.substring(0, colon), line.substring(colon + 1).stripLeading());
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // closed by the test
+                }
+            });
+        }
+
+        Map<String, String> next() throws InterruptedException {
+            Map<String, String> event = poll(5000);
+            assertNotNull(event, "no event within 5 s");
+            return event;
+        }
+
+        Map<String, String> poll(long timeoutMs) throws InterruptedException {
+            return events.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void close() {
+            lines.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Image Id Sequence Test
+ * ----------------------
+ * Starts the application on a database written before ids came from animal_image_seq
+ * (IDENTITY column, 120 rows): ddl-auto=update creates the sequence at 1, so the writer
+ * must move it past the stored ids before the first batch, or that batch collides with them.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=" + ImageIdSequenceTest.URL)
+public class ImageIdSequenceTest {
+
+    static final String URL = "jdbc:h2:mem:legacyidtest;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private AnimalImageRepository repository;
+
+    /* runs before the Spring context (and Hibernate's schema update) starts */
+    @BeforeAll
+    public static void createLegacyDatabase() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE animal_image (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                    + " animal_type VARCHAR(255), image_url VARCHAR(255), timestamp TIMESTAMP(6), image_data BLOB)");
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO animal_image (animal_type, image_url, timestamp) VALUES ('dog', ?, CURRENT_TIMESTAMP)")) {
+                for (int i = 0; i < 120; i++) {
+                    insert.setString(1, "http://legacy/" + i);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    @Test
+    public void shouldHandOutIdsAboveTheLegacyRows() {
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        for (int i = 0; i < 60; i++) { // more than one block of 50 ids
+            pending.add(batchWriter.submit(new AnimalImage("dog", "http://stub/" + i, LocalDateTime.now(), new byte[]{(byte) i})));
+        }
+        for (CompletableFuture<AnimalImage> future : pending) {
+            assertTrue(future.join().getId() > 120, "new ids must not reuse legacy ones");
+        }
+        assertEquals(180, repository.count());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * ImagePrefetchPool Test
+ * ----------------------
+ * Plain unit tests (no Spring context) for the warm prefetch pool against the shared
+ * UpstreamStub: the pool fills up to its size per type, requests are served from it
+ * (hits) with the shortfall reported as misses, and a disabled pool never downloads.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImagePrefetchPoolTest {
+
+    private UpstreamStub upstream;
+    private ImageUrlFactory urlFactory;
+
+    @BeforeEach
+    public void startStub() {
+        upstream = UpstreamStub.start();
+        urlFactory = new ImageUrlFactory(Map.of("dog", upstream.url("/dog/"), "cat", upstream.url("/cat/"),
+                "bear", upstream.url("/bear/"), "duck", upstream.url("/duck")));
+    }
+
+    @AfterEach
+    public void stopStub() {
+        upstream.close();
+    }
+
+    @Test
+    public void shouldFillPerTypeAndServeHitsBeforeMisses() throws Exception {
+        ImagePrefetchPool pool = new ImagePrefetchPool(new ImageDownloader(1_000, 2_000, 4, 8, ImageDownloaderTest.guard(3)), urlFactory, true, 3, 200);
+        try {
+            awaitFull(pool, 3);
+            List<ImageDownloader.Download> taken = pool.take("DOG", 5);
+
+            assertEquals(3, taken.size());
+            assertTrue(taken.stream().allMatch(download -> download.url().contains("/dog/")));
+            ImagePrefetchPool.Stats stats = pool.getStats();
+            assertEquals(3, stats.hits());
+            assertEquals(2, stats.misses());
+            assertEquals(0.6, stats.hitRate(), 0.001);
+
+            // the refiller tops the drained type up again
+            awaitFull(pool, 3);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldStayIdleWhenDisabled() throws Exception {
+        ImagePrefetchPool pool = new ImagePrefetchPool(new ImageDownloader(1_000, 2_000, 4, 8, ImageDownloaderTest.guard(3)), urlFactory, false, 3, 200);
+        Thread.sleep(200);
+
+        assertTrue(pool.take("cat", 2).isEmpty());
+        assertEquals(0, upstream.echoed());
+        assertEquals(0, pool.getStats().misses(), "A disabled pool is not asked, so nothing counts as a miss");
+    }
+
+    private static void awaitFull(ImagePrefetchPool pool, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (pool.getStats().depth().values().stream().allMatch(depth -> depth == size)) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("Pool did not fill up: " + pool.getStats().depth());
+    }
+}
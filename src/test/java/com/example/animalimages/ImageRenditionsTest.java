@@ -0,0 +1,141 @@
+/*
+ * ImageRenditions Test
+ * --------------------
+ * Plain unit tests (no Spring context) for the rendition cache in a temporary directory:
+ * scaled-down JPEGs keep the aspect ratio, repeated requests are cache hits (also after a
+ * restart), the directory stays within max-bytes, and new images are precomputed.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageRenditionsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldScaleDownKeepingAspectRatio() throws Exception {
+        byte[] original = jpeg(1600, 1200);
+
+        BufferedImage byWidth = decode(ImageRenditions.render(original, ImageRenditions.Spec.of(300, null, null)));
+        assertEquals(300, byWidth.getWidth());
+        assertEquals(225, byWidth.getHeight());
+
+        BufferedImage boxed = decode(ImageRenditions.render(original, ImageRenditions.Spec.of(200, 200, 50)));
+        assertEquals(200, boxed.getWidth());
+        assertEquals(150, boxed.getHeight());
+
+        // never scaled up
+        BufferedImage large = decode(ImageRenditions.render(original, ImageRenditions.Spec.of(2000, null, null)));
+        assertEquals(1600, large.getWidth());
+
+        assertNull(ImageRenditions.Spec.of(null, null, null));
+        assertThrows(IllegalArgumentException.class, () -> ImageRenditions.Spec.of(0, null, null));
+        assertThrows(IllegalArgumentException.class, () -> ImageRenditions.Spec.of(300, null, 101));
+        assertThrows(IllegalArgumentException.class, () -> ImageRenditions.Spec.of(null, null, 80));
+        assertThrows(UnsupportedImageFormatException.class,
+                () -> ImageRenditions.render("not an image".getBytes(), ImageRenditions.Spec.of(300, null, null)));
+    }
+
+    @Test
+    public void shouldServeRepeatsFromCacheAcrossRestarts() throws Exception {
+        byte[] original = jpeg(800, 600);
+        ImageRenditions.Spec spec = ImageRenditions.Spec.of(100, null, null);
+        AtomicInteger originalReads = new AtomicInteger();
+
+        ImageRenditions renditions = new ImageRenditions(directory, 1 << 20, "", 1, 4);
+        byte[] first = renditions.get("abc", spec, () -> {
+            originalReads.incrementAndGet();
+            return original;
+        });
+        byte[] second = renditions.get("abc", spec, () -> fail("The rendition should be cached"));
+        assertArrayEquals(first, second);
+        assertEquals(1, originalReads.get());
+        assertEquals(1, renditions.getStats().hits());
+        assertEquals(1, renditions.getStats().misses());
+        renditions.shutdown();
+
+        ImageRenditions restarted = new ImageRenditions(directory, 1 << 20, "", 1, 4);
+        assertEquals(1, restarted.getStats().entries());
+        assertArrayEquals(first, restarted.get("abc", spec, () -> fail("The rendition should survive a restart")));
+
+        restarted.evict("abc");
+        assertEquals(0, restarted.getStats().entries());
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedBeyondMaxBytes() throws Exception {
+        byte[] original = jpeg(800, 600);
+        ImageRenditions.Spec spec = ImageRenditions.Spec.of(200, null, null);
+        int size = ImageRenditions.render(original, spec).length;
+
+        ImageRenditions renditions = new ImageRenditions(directory, 2L * size, "", 1, 4);
+        renditions.get("a", spec, () -> original);
+        renditions.get("b", spec, () -> original);
+        renditions.get("a", spec, () -> original); // a is now more recent than b
+        renditions.get("c", spec, () -> original);
+
+        ImageRenditions.Stats stats = renditions.getStats();
+        assertEquals(2, stats.entries());
+        assertEquals(1, stats.evictions());
+        assertTrue(stats.bytes() <= 2L * size);
+        renditions.get("a", spec, () -> fail("a was used recently and should still be cached"));
+        AtomicInteger rerendered = new AtomicInteger();
+        renditions.get("b", spec, () -> {
+            rerendered.incrementAndGet();
+            return original;
+        });
+        assertEquals(1, rerendered.get(), "b was the least recently used and should have been evicted");
+        renditions.shutdown();
+    }
+
+    @Test
+    public void shouldPrecomputeConfiguredSizesForNewImages() throws Exception {
+        ImageRenditions renditions = new ImageRenditions(directory, 1 << 20, "300x0, 0x100", 1, 4);
+        AnimalImage image = new AnimalImage("cat", "http://stub/cat", LocalDateTime.now(), jpeg(1200, 800));
+        renditions.precompute(image);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (renditions.getStats().precomputed() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, renditions.getStats().precomputed());
+        byte[] thumbnail = renditions.get(image.getContentHash(), ImageRenditions.Spec.of(300, null, null),
+                () -> fail("The precomputed rendition should be used"));
+        assertEquals(200, decode(thumbnail).getHeight());
+        renditions.shutdown();
+    }
+
+    private static byte[] jpeg(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.ORANGE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLUE);
+        graphics.fillOval(width / 4, height / 4, width / 2, height / 2);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws Exception {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+}
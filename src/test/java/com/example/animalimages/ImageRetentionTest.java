@@ -0,0 +1,107 @@
+/*
+ * ImageRetention Test
+ * -------------------
+ * Stores a history of images through the batch writer into a file-based H2 database in a
+ * temporary directory, then runs the retention policy by hand (the schedule is pushed out):
+ * old images go first, then the oldest per type, then the oldest overall until the stored
+ * bytes fit. Also compacts the H2 file, checks the report and that an idle compaction is skipped.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "animal.retention.max-age-hours=24",
+        "animal.retention.max-per-type=3",
+        "animal.retention.max-total-bytes=163840", // 2.5 images
+        "animal.retention.batch-size=2",
+        "animal.retention.pause-ms=0",
+        "animal.retention.initial-delay-ms=3600000"
+})
+public class ImageRetentionTest {
+
+    private static final int IMAGE_BYTES = 65536;
+
+    @Autowired
+    private ImageRetention retention;
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private AnimalImageRepository repository;
+
+    @DynamicPropertySource
+    static void fileDatabase(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("retentiontest").toAbsolutePath().toString();
+        registry.add("spring.datasource.url", () -> "jdbc:h2:file:" + directory + "/animaldb");
+    }
+
+    @Test
+    public void shouldDeleteOldestImagesBeyondEachLimitAndCompact() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            pending.add(store("cat", now.minusMinutes(i), i));
+        }
+        pending.add(store("dog", now.minusHours(48), 6));
+        pending.add(store("dog", now.minusHours(49), 7));
+        pending.add(store("dog", now.minusSeconds(30), 8));
+        pending.forEach(CompletableFuture::join);
+
+        ImageRetention.RunReport report = retention.enforce();
+
+        assertEquals(2, report.deletedByAge());    // both 2-day-old dogs
+        assertEquals(2, report.deletedByCount());  // cats beyond the newest 3
+        assertEquals(2, report.deletedBySize());   // 4 images > 2.5: the oldest batch of 2
+        assertTrue(report.complete());
+        List<AnimalImage> left = repository.findAll();
+        assertEquals(2, left.size());
+        assertTrue(left.stream().anyMatch(image -> image.getAnimalType().equals("dog")));
+        assertTrue(left.stream().allMatch(image -> image.getTimestamp().isAfter(now.minusMinutes(2))));
+
+        // nothing left to do: a second run deletes nothing
+        ImageRetention.RunReport again = retention.enforce();
+        assertEquals(0, again.deletedByAge() + again.deletedByCount() + again.deletedBySize());
+        assertEquals(6, retention.getStats().deletedTotal());
+
+        // H2 drops the deleted BLOBs in the background, so the space may come back on a later compaction
+        ImageRetention.CompactionReport compaction = retention.compact();
+        assertNotNull(compaction, "A file database should be compacted");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (retention.getStats().reclaimedBytesTotal() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            retention.compact(); // null while nothing is left to compact
+        }
+        assertTrue(retention.getStats().reclaimedBytesTotal() > 4 * IMAGE_BYTES,
+                "The space of 6 deleted images should be given back");
+        compaction = retention.getStats().lastCompaction();
+        assertTrue(compaction.fileBytesAfter() <= compaction.fileBytesBefore());
+
+        // nothing deleted since and no sparse chunks left: the next compaction is skipped
+        assertNull(retention.compact());
+        assertEquals(compaction, retention.getStats().lastCompaction());
+    }
+
+    /* 64 KiB of distinct bytes per image, so every image owns its blob */
+    private CompletableFuture<AnimalImage> store(String type, LocalDateTime timestamp, int seed) {
+        byte[] payload = new byte[IMAGE_BYTES];
+        Arrays.fill(payload, (byte) seed);
+        return batchWriter.submit(new AnimalImage(type, "http://stub/" + type + "/" + seed, timestamp, payload));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * ImageUrlFactory Test
+ * --------------------
+ * Plain unit tests (no Spring context) for the animal type registry: every
+ * animal.image.url.{type} property registers a type (listed alphabetically), {width}/{height}
+ * templates and trailing-slash URLs get a random size, other URLs are used as they are, and
+ * unknown types are rejected.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageUrlFactoryTest {
+
+    @Test
+    public void shouldRegisterEveryConfiguredType() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("animal.image.url.goat", "https://placegoat.com/{width}/{height}")
+                .withProperty("animal.image.url.dog", "https://place.dog/")
+                .withProperty("animal.fetch.max-concurrency", "8");
+        ImageUrlFactory urlFactory = new ImageUrlFactory(environment);
+
+        assertEquals(List.of("dog", "goat"), urlFactory.types());
+        assertTrue(urlFactory.isSupported("GOAT"));
+        assertFalse(urlFactory.isSupported("unicorn"));
+        assertFalse(urlFactory.isSupported(null));
+    }
+
+    @Test
+    public void shouldBuildRandomSizeUrlsFromTemplates() {
+        Map<String, String> urls = new HashMap<>();
+        urls.put("dog", "https://place.dog/");
+        urls.put("goat", "https://placegoat.com/{width}/{height}?grey");
+        urls.put("duck", "https://random-d.uk/api/randomimg");
+        ImageUrlFactory urlFactory = new ImageUrlFactory(urls);
+
+        List<String> dogs = urlFactory.urlsFor("dog", 5);
+        assertEquals(5, dogs.size());
+        for (String url : dogs) {
+            assertTrue(url.matches("https://place\\.dog/2\\d\\d/2\\d\\d"), url);
+        }
+        assertTrue(urlFactory.urlsFor("Goat", 1).get(0).matches("https://placegoat\\.com/2\\d\\d/2\\d\\d\\?grey"));
+        assertEquals(List.of("https://random-d.uk/api/randomimg"), urlFactory.urlsFor("duck", 1));
+        assertEquals(List.of(), urlFactory.urlsFor("dog", 0));
+    }
+
+    @Test
+    public void shouldRejectUnsupportedTypes() {
+        ImageUrlFactory urlFactory = new ImageUrlFactory(Map.of("dog", "https://place.dog/"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> urlFactory.urlsFor("unicorn", 1));
+        assertEquals("Unsupported animal type: unicorn", e.getMessage());
+        assertThrows(IllegalStateException.class, () -> new ImageUrlFactory(new MockEnvironment()));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * LatestImageCache Test
+ * ---------------------
+ * Plain unit tests (no Spring context) for the latest-image-per-type cache:
+ * write-through updates, protection against stale loads (metadata and payloads),
+ * size-bounded payload eviction, and that only the latest image of a type is ever loaded
+ * into memory.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatestImageCacheTest {
+
+    private static AnimalImage image(long id, String type, LocalDateTime timestamp, int size) {
+        AnimalImage image = new AnimalImage(type, "http://stub/" + id, timestamp, new byte[size]);
+        image.setId(id);
+        return image;
+    }
+
+    @Test
+    public void shouldServeSavedImageWithoutLoading() {
+        LatestImageCache cache = new LatestImageCache(1_000, 500);
+        cache.onSaved(List.of(image(1, "dog", LocalDateTime.now(), 100)));
+
+        Optional<AnimalImage> latest = cache.getLatest("dog", () -> fail("Loader must not be called"));
+
+        assertEquals(1L, latest.orElseThrow().getId());
+        assertNull(latest.get().getImageData(), "Cached metadata must not carry the image bytes");
+        assertNotNull(cache.getPayload(latest.get(), () -> fail("Payload must be cached")));
+        assertEquals(1, cache.getStats().metadataHits());
+    }
+
+    @Test
+    public void shouldNotInstallLoadThatRacedWithSave() {
+        LatestImageCache cache = new LatestImageCache(1_000, 500);
+        LocalDateTime now = LocalDateTime.now();
+        AnimalImage older = image(1, "cat", now.minusMinutes(1), 10);
+
+        // the DB read returns the old row, but a newer image is saved while it is in flight
+        cache.getLatest("cat", () -> {
+            cache.onSaved(List.of(image(2, "cat", now, 10)));
+            return Optional.of(older);
+        });
+
+        assertEquals(2L, cache.getLatest("cat", Optional::empty).orElseThrow().getId());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedPayloadsWhenFull() {
+        LatestImageCache cache = new LatestImageCache(250, 200);
+        LocalDateTime now = LocalDateTime.now();
+        cache.onSaved(List.of(image(1, "dog", now, 100)));
+        cache.onSaved(List.of(image(2, "cat", now, 100)));
+        cache.onSaved(List.of(image(3, "bear", now, 100))); // 300 bytes > 250: dog payload goes
+
+        LatestImageCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.payloadEntries());
+        assertEquals(200, stats.payloadBytes());
+        assertEquals(1, stats.evictions());
+
+        AnimalImage dog = cache.getLatest("dog", Optional::empty).orElseThrow();
+        assertEquals(100, cache.getPayload(dog, () -> new byte[100]).length);
+        assertEquals(1, cache.getStats().payloadMisses());
+    }
+
+    @Test
+    public void shouldNotLoadPayloadsOfOlderImages() {
+        LatestImageCache cache = new LatestImageCache(1_000, 500);
+        LocalDateTime now = LocalDateTime.now();
+        AnimalImage older = image(1, "dog", now.minusMinutes(1), 100);
+        cache.onSaved(List.of(image(2, "dog", now, 100)));
+
+        assertNull(cache.getPayload(older, () -> fail("Older images must be streamed, not loaded")));
+        assertNull(cache.getPayload(image(3, "cat", now, 100), () -> fail("Unknown latest: stream")));
+        assertEquals(0, cache.getStats().payloadMisses());
+    }
+
+    @Test
+    public void shouldNotCachePayloadOfImageReplacedWhileLoading() {
+        LatestImageCache cache = new LatestImageCache(1_000, 500);
+        LocalDateTime now = LocalDateTime.now();
+        AnimalImage older = cache.getLatest("dog", () -> Optional.of(image(1, "dog", now.minusMinutes(1), 100))).orElseThrow();
+
+        // the BLOB read is in flight when a newer image is saved
+        byte[] loaded = cache.getPayload(older, () -> {
+            cache.onSaved(List.of(image(2, "dog", now, 100)));
+            return new byte[100];
+        });
+
+        assertEquals(100, loaded.length, "The caller still gets the bytes it loaded");
+        assertEquals(1, cache.getStats().payloadEntries(), "Only the newer image's payload is cached");
+        assertNull(cache.getPayload(older, () -> fail("Replaced image must be streamed, not cached")));
+    }
+
+    @Test
+    public void shouldKeepNewestWhenOlderImageIsSavedLater() {
+        LatestImageCache cache = new LatestImageCache(1_000, 500);
+        LocalDateTime now = LocalDateTime.now();
+        cache.onSaved(List.of(image(5, "duck", now, 10)));
+        cache.onSaved(List.of(image(4, "duck", now.minusSeconds(5), 10)));
+
+        assertEquals(5L, cache.getLatest("duck", Optional::empty).orElseThrow().getId());
+    }
+}
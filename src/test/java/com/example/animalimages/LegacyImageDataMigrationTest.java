@@ -0,0 +1,76 @@
+/*
+ * Legacy Image Data Migration Test
+ * --------------------------------
+ * Starts the application on a database written before the bytes moved out of animal_image
+ * (image_data column, no content_hash): the rows must be readable afterwards, share one
+ * blob per distinct payload and the old column must be gone.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + LegacyImageDataMigrationTest.URL,
+        "animal.persist.batch-size=2" // several batches
+})
+public class LegacyImageDataMigrationTest {
+
+    static final String URL = "jdbc:h2:mem:legacydatatest;DB_CLOSE_DELAY=-1";
+
+    private static final byte[] SHARED = {1, 2, 3, 4};
+    private static final byte[] OTHER = {9, 8, 7};
+
+    @Autowired
+    private AnimalImageService service;
+
+    @Autowired
+    private ImageBlobRepository blobRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /* runs before the Spring context (and Hibernate's schema update) starts */
+    @BeforeAll
+    public static void createLegacyDatabase() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE animal_image (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                    + " animal_type VARCHAR(255), image_url VARCHAR(255), timestamp TIMESTAMP(6), image_data BLOB)");
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO animal_image"
+                    + " (animal_type, image_url, timestamp, image_data) VALUES ('dog', ?, CURRENT_TIMESTAMP, ?)")) {
+                byte[][] payloads = {SHARED, OTHER, SHARED, SHARED, null};
+                for (int i = 0; i < payloads.length; i++) {
+                    insert.setString(1, "http://legacy/" + i);
+                    insert.setBytes(2, payloads[i]);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    @Test
+    public void shouldMoveLegacyBytesIntoBlobsOnStartup() {
+        assertArrayEquals(SHARED, service.getImageData(service.getImage(1L)));
+        assertArrayEquals(OTHER, service.getImageData(service.getImage(2L)));
+        assertArrayEquals(SHARED, service.getImageData(service.getImage(4L)));
+        assertEquals(4L, service.getImage(1L).getSizeBytes());
+        assertNull(service.getImage(5L).getContentHash(), "rows without bytes stay as they were");
+
+        assertEquals(3, blobRepository.findById(ContentHash.sha256Hex(SHARED)).orElseThrow().getRefCount());
+        assertEquals(1, blobRepository.findById(ContentHash.sha256Hex(OTHER)).orElseThrow().getRefCount());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE UPPER(TABLE_NAME) = 'ANIMAL_IMAGE' AND UPPER(COLUMN_NAME) = 'IMAGE_DATA'", Integer.class));
+    }
+}
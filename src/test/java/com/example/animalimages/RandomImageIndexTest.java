@@ -0,0 +1,181 @@
+/*
+ * RandomImageIndex Test
+ * ---------------------
+ * The primitive id index against a HashSet under random adds and removes, uniform sampling,
+ * sampling while writers change the index, and GET /api/animals/random(/image) on an
+ * in-memory H2 database: saved images are indexed, deleted ones are not drawn any more,
+ * and a rebuild picks up what is stored.
+ */
+package com.example.animalimages;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:randomtest;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+public class RandomImageIndexTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ImageBatchWriter batchWriter;
+
+    @Autowired
+    private AnimalImageService service;
+
+    @Autowired
+    private AnimalImageRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void positionsShouldMatchAHashMapUnderRandomAddsAndRemoves() {
+        RandomImageIndex.IdPositions positions = new RandomImageIndex.IdPositions();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long id = random.nextInt(5_000);
+            if (random.nextBoolean()) {
+                positions.put(id, i);
+                expected.put(id, i);
+            } else {
+                assertEquals(expected.containsKey(id) ? expected.remove(id) : -1, positions.remove(id));
+            }
+        }
+        assertEquals(expected.size(), positions.size());
+        for (long id = 0; id < 5_000; id++) {
+            assertEquals(expected.getOrDefault(id, -1), positions.get(id));
+        }
+    }
+
+    @Test
+    public void shouldSampleUniformlyAndNeverReturnRemovedIds() {
+        RandomImageIndex index = new RandomImageIndex(repository, transactionManager);
+        for (long id = 1; id <= 20; id++) {
+            index.add("dog", id);
+        }
+        for (long id = 11; id <= 20; id++) {
+            index.remove("dog", id);
+        }
+        index.add("dog", 5); // already there: no duplicate weight
+        assertEquals(10, index.size("dog"));
+
+        Map<Long, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            counts.merge(index.sample("dog"), 1, Integer::sum);
+        }
+        assertEquals(10, counts.size(), "Only the 10 remaining ids are drawn");
+        counts.forEach((id, count) -> {
+            assertTrue(id >= 1 && id <= 10);
+            assertTrue(Math.abs(count - 10_000) < 1_000, "id " + id + " drawn " + count + " times");
+        });
+        assertEquals(RandomImageIndex.NONE, index.sample("bear"));
+    }
+
+    @Test
+    public void readersShouldOnlySeeIndexedIdsWhileWritersChangeTheIndex() throws Exception {
+        RandomImageIndex index = new RandomImageIndex(repository, transactionManager);
+        for (long id = 1; id <= 1_000; id++) {
+            index.add("cat", id); // never removed: readers must always find something
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        Set<Long> invalid = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            long base = 1_000_000L * (w + 1);
+            threads.add(Thread.ofPlatform().start(() -> {
+                Random random = new Random(base);
+                while (running.get()) {
+                    long id = base + random.nextInt(10_000);
+                    if (random.nextBoolean()) {
+                        index.add("cat", id);
+                    } else {
+                        index.remove("cat", id);
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                while (running.get()) {
+                    long id = index.sample("cat");
+                    if (id < 1 || (id > 1_000 && id < 1_000_000)) {
+                        invalid.add(id);
+                    }
+                }
+            }));
+        }
+        Thread.sleep(500);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(invalid.isEmpty(), "Drawn ids that were never added: " + invalid);
+    }
+
+    @Test
+    public void shouldServeRandomStoredImagesAndForgetDeletedOnes() throws Exception {
+        List<CompletableFuture<AnimalImage>> pending = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            pending.add(batchWriter.submit(new AnimalImage("duck", "http://stub/duck/" + i, LocalDateTime.now(),
+                    ("duck " + i).getBytes(StandardCharsets.UTF_8))));
+        }
+        Set<Long> ids = new HashSet<>();
+        pending.forEach(future -> ids.add(future.join().getId()));
+
+        Set<Long> drawn = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            String json = mockMvc.perform(get("/api/animals/random?type=duck"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Cache-Control", "no-store"))
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode image = objectMapper.readTree(json);
+            assertEquals("duck", image.get("animalType").asText());
+            drawn.add(image.get("id").asLong());
+        }
+        assertEquals(ids, drawn, "100 draws out of 5 should hit every image");
+
+        String location = mockMvc.perform(get("/api/animals/random/image?type=duck&w=100"))
+                .andExpect(status().isFound())
+                .andReturn().getResponse().getHeader("Location");
+        assertTrue(location.matches("/api/animals/\\d+/image\\?w=100"), location);
+
+        // a fresh index rebuilt from the database finds the same ids
+        RandomImageIndex rebuilt = new RandomImageIndex(repository, transactionManager);
+        rebuilt.rebuild();
+        assertEquals(5, rebuilt.size("duck"));
+
+        service.deleteImages(ids);
+        mockMvc.perform(get("/api/animals/random?type=duck")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/animals/random?type=lion")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * StartupConfiguration Test
+ * -------------------------
+ * The fast-startup profile on an in-memory H2 database: db/schema.sql creates the schema and
+ * Hibernate validates it against the entities (so the two cannot drift apart), beans are lazy
+ * except the ones doing background work, and images are still stored and served.
+ */
+package com.example.animalimages;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:startuptest;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@ActiveProfiles("fast-startup")
+@AutoConfigureMockMvc
+public class StartupConfigurationTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void shouldStartLazilyOnTheFixedSchema() throws Exception {
+        assertTrue(context.getBeanFactory().containsSingleton("imageRetention"));
+        assertTrue(context.getBeanFactory().containsSingleton("imagePrefetchPool"));
+        assertFalse(context.getBeanFactory().containsSingleton("imageArchive"), "created on first use only");
+
+        AnimalImage saved = context.getBean(ImageBatchWriter.class).submit(
+                new AnimalImage("cat", "http://stub/cat/1", LocalDateTime.now(), new byte[] {1, 2, 3})).join();
+        mockMvc.perform(get("/api/animals/last?type=cat"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(saved.getId()))
+                .andExpect(jsonPath("$.sizeBytes").value(3));
+    }
+}
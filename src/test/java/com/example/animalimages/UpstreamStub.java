@@ -0,0 +1,88 @@
+/*
+ * Upstream Stub
+ * -------------
+ * Local JDK HttpServer standing in for the image upstreams, shared by every test that needs
+ * one, so no internet access is needed. Any path answers at once with the path itself as
+ * distinct image bytes; tests add routes for slow, failing or blocking upstreams. The load
+ * test has its own StubImageServer (real JPEGs, latency and error rates, loadtest profile only).
+ */
+package com.example.animalimages;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class UpstreamStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger echoed = new AtomicInteger();
+
+    private UpstreamStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            echoed.incrementAndGet();
+            echoPath(exchange);
+        });
+        server.start();
+    }
+
+    /* unchecked, so it can initialise a static field of a Spring test */
+    static UpstreamStub start() {
+        try {
+            return new UpstreamStub();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* answers paths starting with {@code prefix} with {@code handler} instead of the echo */
+    UpstreamStub route(String prefix, HttpHandler handler) {
+        server.createContext(prefix, handler);
+        return this;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /* e.g. url("/bear/") */
+    String url(String path) {
+        return "http://127.0.0.1:" + port() + path;
+    }
+
+    /* points animal.image.url.{type} at /{type}/ of this stub, for @DynamicPropertySource */
+    void registerImageUrls(DynamicPropertyRegistry registry, String... types) {
+        for (String type : types) {
+            registry.add("animal.image.url." + type, () -> url("/" + type + "/"));
+        }
+    }
+
+    /* requests answered by the default echo route */
+    int echoed() {
+        return echoed.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /* 200 with the request path as body, e.g. "/bear/300/200" */
+    static void echoPath(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}